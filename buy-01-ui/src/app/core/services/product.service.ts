@@ -1,6 +1,6 @@
 import { Injectable, inject, signal } from '@angular/core';
 import { HttpClient } from '@angular/common/http';
-import { Observable, tap, map } from 'rxjs';
+import { EMPTY, Observable, expand, reduce, take, tap } from 'rxjs';
 import { Auth } from './auth';
 import { environment } from '../../../environments/environment';
 
@@ -17,6 +17,36 @@ export interface Product {
   updatedAt?: string;
 }
 
+// One page of GET /api/products (cursor pagination)
+export interface ProductPage {
+  items: Product[];
+  nextCursor: string | null;
+}
+
+// Result of a batch lookup (matches backend ProductBatchResponse)
+export interface ProductBatch {
+  items: Product[];
+  missing: string[];
+}
+
+// Counts for a value range (matches backend ProductFacetsResponse.Bucket)
+export interface FacetBucket {
+  min: number;
+  max?: number;
+  count: number;
+}
+
+// Filter sidebar counts (matches backend ProductFacetsResponse)
+export interface ProductFacets {
+  total: number;
+  price: FacetBucket[];
+  priceOther: number;
+  stock: FacetBucket[];
+  stockOther: number;
+  sellers: { sellerId: string; count: number }[];
+  computedAt: string;
+}
+
 // DTO for creating/updating products (matches backend ProductRequest)
 export interface ProductRequest {
   name: string;
@@ -34,20 +64,44 @@ export class ProductService {
   
   // API URL from environment configuration
   private readonly API_URL = environment.productsUrl;
+
+  // Largest page the backend serves
+  private readonly PAGE_SIZE = 100;
+
+  // Most pages fetched by the list-everything helpers
+  private readonly MAX_PAGES = 5;
   
   // Signals for state management
   private readonly productsSignal = signal<Product[]>([]);
   readonly products = this.productsSignal.asReadonly();
   
   /**
-   * Get all products (public)
-   * Calls backend API: GET /api/products
+   * Get products (public), following the cursor for up to MAX_PAGES pages
+   * Calls backend API: GET /api/products?after={cursor}&limit=100
+   * Use getProductPage() to page through the whole catalog on demand
    */
   getAllProducts(): Observable<Product[]> {
-    return this.http.get<Product[]>(this.API_URL).pipe(
+    return this.getAllPages().pipe(
       tap(products => this.productsSignal.set(products))
     );
   }
+
+  /**
+   * Get one page of products (public)
+   * Calls backend API: GET /api/products?after={cursor}&limit={limit}
+   * Optional filters: minPrice, maxPrice, sellerId, inStock, sort
+   */
+  getProductPage(
+    after: string | null,
+    limit: number,
+    filters: Record<string, string> = {}
+  ): Observable<ProductPage> {
+    const params: Record<string, string> = { ...filters, limit: String(limit) };
+    if (after) {
+      params['after'] = after;
+    }
+    return this.http.get<ProductPage>(this.API_URL, { params });
+  }
   
   /**
    * Get product by ID
@@ -58,19 +112,59 @@ export class ProductService {
   }
   
   /**
-   * Get seller's products (authenticated)
-   * CSR APPROACH: Get all products, filter client-side by sellerId
+   * Get many products by id in one request
+   * Calls backend API: POST /api/products/batch
+   */
+  getProductsByIds(ids: string[]): Observable<ProductBatch> {
+    return this.http.post<ProductBatch>(`${this.API_URL}/batch`, ids);
+  }
+
+  /**
+   * Get price, stock and seller counts for the filter sidebar (public)
+   */
+  getFacets(): Observable<ProductFacets> {
+    return this.http.get<ProductFacets>(`${this.API_URL}/facets`);
+  }
+
+  /**
+   * Get seller's products (authenticated), up to MAX_PAGES pages
+   * Filtered server-side by sellerId
    */
   getSellerProducts(): Observable<Product[]> {
+    return this.getAllPages({ sellerId: this.requireUserId() });
+  }
+
+  /**
+   * Get one page of the seller's products (authenticated)
+   * Calls backend API: GET /api/products?sellerId={id}&after={cursor}&limit={limit}
+   */
+  getSellerProductPage(after: string | null, limit: number): Observable<ProductPage> {
+    return this.getProductPage(after, limit, { sellerId: this.requireUserId() });
+  }
+
+  /**
+   * Get the current user's id, failing if nobody is logged in
+   */
+  private requireUserId(): string {
     const currentUserId = this.authService.currentUser()?.id;
     
     if (!currentUserId) {
       throw new Error('User not authenticated');
     }
     
-    // Get all products and filter by sellerId (client-side filtering - CSR!)
-    return this.http.get<Product[]>(this.API_URL).pipe(
-      map(products => products.filter(p => p.sellerId === currentUserId))
+    return currentUserId;
+  }
+
+  /**
+   * Fetch up to MAX_PAGES pages of a listing and concatenate the items
+   */
+  private getAllPages(filters: Record<string, string> = {}): Observable<Product[]> {
+    return this.getProductPage(null, this.PAGE_SIZE, filters).pipe(
+      expand(page => page.nextCursor
+        ? this.getProductPage(page.nextCursor, this.PAGE_SIZE, filters)
+        : EMPTY),
+      take(this.MAX_PAGES),
+      reduce((all, page) => all.concat(page.items), [] as Product[])
     );
   }
   
@@ -106,6 +200,14 @@ export class ProductService {
     return this.http.post<Product>(`${this.API_URL}/${productId}/media/${mediaId}`, {});
   }
 
+  /**
+   * Associate several media with product in one request
+   * Calls backend API: POST /api/products/{productId}/media
+   */
+  associateMediaBatch(productId: string, mediaIds: string[]): Observable<Product> {
+    return this.http.post<Product>(`${this.API_URL}/${productId}/media`, mediaIds);
+  }
+
 
 
 
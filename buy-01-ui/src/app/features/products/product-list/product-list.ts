@@ -34,20 +34,26 @@ export class ProductList implements OnInit {
   // Signals for reactive state
   readonly products = signal<Product[]>([]);
   readonly isLoading = signal<boolean>(false);
+  readonly isLoadingMore = signal<boolean>(false);
+  readonly nextCursor = signal<string | null>(null);
+
+  // Products fetched per page
+  private readonly PAGE_SIZE = 24;
   
   ngOnInit(): void {
     this.loadProducts();
   }
   
   /**
-   * Load products from JSON Server API
+   * Load the first page of products
    */
   private loadProducts(): void {
     this.isLoading.set(true);
     
-    this.productService.getAllProducts().subscribe({
-      next: (products) => {
-        this.products.set(products);
+    this.productService.getProductPage(null, this.PAGE_SIZE).subscribe({
+      next: (page) => {
+        this.products.set(page.items);
+        this.nextCursor.set(page.nextCursor);
         this.isLoading.set(false);
       },
       error: (error) => {
@@ -56,6 +62,29 @@ export class ProductList implements OnInit {
       }
     });
   }
+
+  /**
+   * Append the next page of products
+   */
+  loadMore(): void {
+    const cursor = this.nextCursor();
+    if (!cursor || this.isLoadingMore()) {
+      return;
+    }
+    this.isLoadingMore.set(true);
+
+    this.productService.getProductPage(cursor, this.PAGE_SIZE).subscribe({
+      next: (page) => {
+        this.products.update(products => [...products, ...page.items]);
+        this.nextCursor.set(page.nextCursor);
+        this.isLoadingMore.set(false);
+      },
+      error: (error) => {
+        console.error('Error loading more products:', error);
+        this.isLoadingMore.set(false);
+      }
+    });
+  }
   
   /**
    * Navigate to product details
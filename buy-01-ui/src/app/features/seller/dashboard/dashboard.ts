@@ -41,7 +41,12 @@ export class Dashboard implements OnInit {
   readonly currentUser = this.authService.currentUser;
   readonly myProducts = signal<Product[]>([]);
   readonly isLoading = signal<boolean>(true);
+  readonly isLoadingMore = signal<boolean>(false);
+  readonly nextCursor = signal<string | null>(null);
   readonly errorMessage = signal<string>('');
+
+  // Products fetched per page
+  private readonly PAGE_SIZE = 50;
   
   // Computed signals for stats
   readonly totalProducts = computed(() => this.myProducts().length);
@@ -76,16 +81,17 @@ export class Dashboard implements OnInit {
   }
   
   /**
-   * Load seller's products
+   * Load the first page of the seller's products
    */
   loadMyProducts(): void {
     this.isLoading.set(true);
     this.errorMessage.set('');
     
-    // getSellerProducts() automatically uses current authenticated user
-    this.productService.getSellerProducts().subscribe({
-      next: (products) => {
-        this.myProducts.set(products);
+    // getSellerProductPage() automatically uses current authenticated user
+    this.productService.getSellerProductPage(null, this.PAGE_SIZE).subscribe({
+      next: (page) => {
+        this.myProducts.set(page.items);
+        this.nextCursor.set(page.nextCursor);
         this.isLoading.set(false);
       },
       error: (error) => {
@@ -96,6 +102,29 @@ export class Dashboard implements OnInit {
     });
   }
   
+  /**
+   * Append the next page of the seller's products
+   */
+  loadMore(): void {
+    const cursor = this.nextCursor();
+    if (!cursor || this.isLoadingMore()) {
+      return;
+    }
+    this.isLoadingMore.set(true);
+
+    this.productService.getSellerProductPage(cursor, this.PAGE_SIZE).subscribe({
+      next: (page) => {
+        this.myProducts.update(products => [...products, ...page.items]);
+        this.nextCursor.set(page.nextCursor);
+        this.isLoadingMore.set(false);
+      },
+      error: (error) => {
+        console.error('Error loading more products:', error);
+        this.isLoadingMore.set(false);
+      }
+    });
+  }
+  
   /**
    * Navigate to create product page
    */
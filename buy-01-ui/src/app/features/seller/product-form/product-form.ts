@@ -21,7 +21,6 @@ import {
   ValidationPresets,
 } from '../../../core/validators/file-upload.validator';
 import { DialogService } from '../../../shared/services/dialog.service';
-import { forkJoin } from 'rxjs';
 
 @Component({
   selector: 'app-product-form',
@@ -334,11 +333,7 @@ removeExistingImage(index: number): void {
   }
   
   private associateMediaWithProduct(productId: string, mediaIds: string[]): void {
-    const associations = mediaIds.map(mediaId => 
-      this.productService.associateMedia(productId, mediaId)
-    );
-    
-    forkJoin(associations).subscribe({
+    this.productService.associateMediaBatch(productId, mediaIds).subscribe({
       next: () => {
         this.successMessage.set('Product created successfully with images!');
         this.isSaving.set(false);
@@ -384,11 +379,7 @@ removeExistingImage(index: number): void {
         next: (mediaList) => {
           const newMediaIds = mediaList.map(m => m.id);
           
-          const associations = newMediaIds.map(mediaId => 
-            this.productService.associateMedia(id, mediaId)
-          );
-          
-          forkJoin(associations).subscribe({
+          this.productService.associateMediaBatch(id, newMediaIds).subscribe({
             next: () => {
               this.updateProductDetails(id, productData);
             },
@@ -47,8 +47,8 @@ public final class JwtAuthenticationFilter
         String path = request.getRequestURI();
         String method = request.getMethod();
 
-        // Skip JWT filter for GET requests to images
-        return "GET".equals(method)
+        // Skip JWT filter for GET and HEAD requests to images
+        return ("GET".equals(method) || "HEAD".equals(method))
                 && path.contains("/media/images/");
     }
 
@@ -43,8 +43,16 @@ public final class SecurityConfig {
                         .requestMatchers(HttpMethod.GET,
                                 "/media/images/**")
                         .permitAll()
+                        .requestMatchers(HttpMethod.HEAD,
+                                "/media/images/**")
+                        .permitAll()
                         .requestMatchers("/actuator/**")
                         .permitAll()
+                        // Inter-service existence check used by
+                        // Product Service cleanup
+                        .requestMatchers(HttpMethod.POST,
+                                "/media/images/exists")
+                        .permitAll()
 
                         // Protected endpoints - authenticated
                         // users can upload/modify images
@@ -13,6 +13,17 @@ public final class StorageProperties {
      */
     private String location = "uploads";
 
+    /**
+     * Levels of two-hex-digit directories new files are placed under.
+     */
+    private int fanOutLevels = 2;
+
+    /**
+     * Files per second moved into the fan-out layout in the
+     * background; 0 disables the migration.
+     */
+    private int fanOutMigrationRate = 20;
+
     /**
      * Gets the storage location.
      *
@@ -31,4 +42,40 @@ public final class StorageProperties {
         this.location = newLocation;
     }
 
+    /**
+     * Gets the number of fan-out directory levels.
+     *
+     * @return the levels
+     */
+    public int getFanOutLevels() {
+        return fanOutLevels;
+    }
+
+    /**
+     * Sets the number of fan-out directory levels.
+     *
+     * @param newFanOutLevels the levels to set
+     */
+    public void setFanOutLevels(final int newFanOutLevels) {
+        this.fanOutLevels = newFanOutLevels;
+    }
+
+    /**
+     * Gets the fan-out migration rate.
+     *
+     * @return files per second
+     */
+    public int getFanOutMigrationRate() {
+        return fanOutMigrationRate;
+    }
+
+    /**
+     * Sets the fan-out migration rate.
+     *
+     * @param newFanOutMigrationRate files per second to set
+     */
+    public void setFanOutMigrationRate(final int newFanOutMigrationRate) {
+        this.fanOutMigrationRate = newFanOutMigrationRate;
+    }
+
 }
@@ -1,11 +1,13 @@
 package ax.gritlab.buy_01.media.controller;
 
+import ax.gritlab.buy_01.media.exception.ResourceNotFoundException;
 import ax.gritlab.buy_01.media.model.Media;
 import ax.gritlab.buy_01.media.model.User;
+import ax.gritlab.buy_01.media.service.MediaFileSender;
 import ax.gritlab.buy_01.media.service.MediaService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -14,12 +16,16 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Set;
 
 /**
  * REST controller for media operations.
@@ -34,6 +40,11 @@ public final class MediaController {
      */
     private final MediaService mediaService;
 
+    /**
+     * Writes files to responses.
+     */
+    private final MediaFileSender mediaFileSender;
+
     /**
      * Gets all media for the authenticated user.
      *
@@ -67,25 +78,62 @@ public final class MediaController {
     }
 
     /**
-     * Serves an image by ID.
+     * Serves an image by ID, for GET and HEAD.
+     * Supports conditional requests and single byte ranges. A size
+     * picks a resized variant; the original is served until the
+     * variant has been generated, or if the image is already smaller.
      *
-     * @param id the media ID
-     * @return the image resource
+     * @param id       the media ID
+     * @param size     thumb, card or detail; omitted for the original
+     * @param request  the HTTP request
+     * @param response the HTTP response
+     * @throws IOException if the file cannot be sent
      */
     @GetMapping("/images/{id}")
-    public ResponseEntity<Resource> serveImage(
-            @PathVariable final String id) {
+    public void serveImage(
+            @PathVariable final String id,
+            @RequestParam(required = false) final String size,
+            final HttpServletRequest request,
+            final HttpServletResponse response) throws IOException {
+        MediaService.MediaFile file;
         try {
-            MediaService.MediaResource mediaResource = mediaService.getResourceById(id);
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_TYPE,
-                            mediaResource.getContentType())
-                    .body(mediaResource.getResource());
-        } catch (RuntimeException e) {
+            file = mediaService.getMediaFile(id, size);
+        } catch (ResourceNotFoundException e) {
             // Return 404 for missing images instead of
             // throwing exception
-            return ResponseEntity.notFound().build();
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        if (file == null) {
+            // Media stored as an external URL; proxy it as before
+            MediaService.MediaResource external =
+                    mediaService.getResourceById(id);
+            response.setContentType(external.getContentType());
+            if (!"HEAD".equals(request.getMethod())) {
+                try (InputStream in =
+                             external.getResource().getInputStream()) {
+                    in.transferTo(response.getOutputStream());
+                }
+            }
+            return;
         }
+        mediaFileSender.send(request, response, file.getPath(),
+                file.getContentType(), file.getChecksum(),
+                file.isPermanent());
+    }
+
+    /**
+     * Reports which of the given media IDs exist.
+     * Called by Product Service when cleaning up orphaned references.
+     *
+     * @param ids the media IDs to check
+     * @return the subset of IDs that exist
+     */
+    @PostMapping("/images/exists")
+    public ResponseEntity<Set<String>> findExistingMedia(
+            @RequestBody final List<String> ids) {
+        return ResponseEntity.ok(mediaService.findExistingIds(ids));
     }
 
     /**
@@ -105,6 +153,25 @@ public final class MediaController {
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * Associates several of the user's media with a product at once.
+     *
+     * @param productId      the product ID
+     * @param mediaIds       the media IDs
+     * @param authentication the authentication object
+     * @return number of media updated
+     */
+    @PutMapping("/images/product/{productId}")
+    @PreAuthorize("hasAuthority('SELLER')")
+    public ResponseEntity<Long> associateAllWithProduct(
+            @PathVariable final String productId,
+            @RequestBody final List<String> mediaIds,
+            final Authentication authentication) {
+        String userId = ((User) authentication.getPrincipal()).getId();
+        return ResponseEntity.ok(mediaService.associateAllWithProduct(
+                mediaIds, productId, userId));
+    }
+
     /**
      * Associates media with a product.
      *
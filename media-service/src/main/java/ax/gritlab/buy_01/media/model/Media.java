@@ -10,6 +10,7 @@ import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 
 /**
  * Represents a media entity stored in the database.
@@ -21,6 +22,45 @@ import java.time.LocalDateTime;
 @Document(collection = "media")
 public final class Media {
 
+    /**
+     * A resized copy of the image.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static final class Variant {
+        /**
+         * Path to the file, relative to the storage location.
+         */
+        private String filePath;
+
+        /**
+         * The content type of the file.
+         */
+        private String contentType;
+
+        /**
+         * Width in pixels.
+         */
+        private int width;
+
+        /**
+         * Height in pixels.
+         */
+        private int height;
+
+        /**
+         * The size of the file in bytes.
+         */
+        private long size;
+
+        /**
+         * Hex SHA-256 of the file's content.
+         */
+        private String checksum;
+    }
+
     /**
      * The unique identifier for the media.
      */
@@ -47,6 +87,16 @@ public final class Media {
      */
     private String filePath;
 
+    /**
+     * Hex SHA-256 of the file's content; the ETag when serving it.
+     */
+    private String checksum;
+
+    /**
+     * Resized copies by variant name; filled in after upload.
+     */
+    private Map<String, Variant> variants;
+
     /**
      * The user (seller) who owns this media.
      */
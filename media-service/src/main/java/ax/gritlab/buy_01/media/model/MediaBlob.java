@@ -0,0 +1,53 @@
+package ax.gritlab.buy_01.media.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * A stored file shared by every media with the same content.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "media_blobs")
+public final class MediaBlob {
+
+    /**
+     * Hex SHA-256 of the content.
+     */
+    @Id
+    private String id;
+
+    /**
+     * Path to the file, relative to the storage location.
+     */
+    private String filePath;
+
+    /**
+     * The size of the file in bytes.
+     */
+    private long size;
+
+    /**
+     * Number of media referencing the file.
+     */
+    private long refCount;
+
+    /**
+     * Set while the last reference is being removed; new references
+     * wait until the record is gone.
+     */
+    private boolean deleting;
+
+    /**
+     * The timestamp when the file was first stored.
+     */
+    private LocalDateTime createdAt;
+}
@@ -1,8 +1,10 @@
 package ax.gritlab.buy_01.media.repository;
 
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import ax.gritlab.buy_01.media.model.Media;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -25,10 +27,28 @@ public interface MediaRepository extends MongoRepository<Media, String> {
      */
     List<Media> findByProductId(String productId);
 
+    /**
+     * Find all media belonging to any of the given products.
+     *
+     * @param productIds the product IDs
+     * @return list of media
+     */
+    List<Media> findByProductIdIn(Collection<String> productIds);
+
     /**
      * Delete all media by product ID.
      *
      * @param productId the product ID
      */
     void deleteByProductId(String productId);
+
+    /**
+     * Find which of the given media IDs exist, in a single $in query.
+     * Only the id field is loaded.
+     *
+     * @param ids the media IDs to look up
+     * @return media entities carrying only their id
+     */
+    @Query(value = "{ '_id' : { '$in' : ?0 } }", fields = "{ '_id' : 1 }")
+    List<Media> findIdsByIdIn(Collection<String> ids);
 }
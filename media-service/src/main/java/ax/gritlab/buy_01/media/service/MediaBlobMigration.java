@@ -0,0 +1,149 @@
+package ax.gritlab.buy_01.media.service;
+
+import ax.gritlab.buy_01.media.config.StorageProperties;
+import ax.gritlab.buy_01.media.model.Media;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Moves files stored before content addressing into the blob store.
+ * Runs once per start in the background. Each media is switched to
+ * its blob with a compare-and-set on its old path, so replicas running
+ * the migration at the same time do not double-count references, and
+ * the old file is deleted only after the media points at the blob.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MediaBlobMigration {
+
+    /**
+     * Paths that are not local legacy files: URLs and blob names.
+     */
+    private static final Pattern MIGRATED = Pattern.compile(
+            "^https?://|(^|/)[0-9a-f]{64}(\\.[A-Za-z0-9]+)?$");
+
+    /**
+     * Mongo template for media updates.
+     */
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Storage configuration.
+     */
+    private final StorageProperties storageProperties;
+
+    /**
+     * Blob store receiving the files.
+     */
+    private final MediaBlobStore mediaBlobStore;
+
+    /**
+     * Regenerates variants under the blob's name.
+     */
+    private final MediaVariantService mediaVariantService;
+
+    /**
+     * Whether to run the migration.
+     */
+    @Value("${media.blobs.migrate-on-startup:true}")
+    private boolean enabled;
+
+    /**
+     * Start the migration once the application is up.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        Thread thread = new Thread(this::migrate, "media-blob-migration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Migrate every legacy media.
+     */
+    void migrate() {
+        Path root = Paths.get(storageProperties.getLocation());
+        Query query = new Query(Criteria.where("filePath").ne(null)
+                .not().regex(MIGRATED));
+        query.fields().include("filePath").include("contentType");
+        int migrated = 0;
+        int failed = 0;
+        try (Stream<Media> legacy = mongoTemplate.stream(query, Media.class)) {
+            for (Media media : (Iterable<Media>) legacy::iterator) {
+                try {
+                    if (migrate(root, media)) {
+                        migrated++;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failed++;
+                    log.warn("Failed to migrate media {}", media.getId(), e);
+                }
+            }
+        }
+        if (migrated > 0 || failed > 0) {
+            log.info("Blob migration finished: {} media migrated, {} failed",
+                    migrated, failed);
+        }
+    }
+
+    /**
+     * Migrate one media.
+     *
+     * @param root  the storage root
+     * @param media the media, with its path and content type
+     * @return true if the media now points at a blob
+     * @throws IOException if the file cannot be read or placed
+     */
+    private boolean migrate(final Path root, final Media media)
+            throws IOException {
+        String oldPath = media.getFilePath();
+        Path file = root.resolve(oldPath);
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        String checksum = MediaBlobStore.sha256(file);
+        int dot = oldPath.lastIndexOf('.');
+        MediaBlobStore.Stored stored = mediaBlobStore.adopt(file, checksum,
+                Files.size(file), dot >= 0 ? oldPath.substring(dot) : "",
+                true);
+
+        boolean switched = mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(media.getId())
+                        .and("filePath").is(oldPath)),
+                new Update()
+                        .set("filePath", stored.getFilePath())
+                        .set("checksum", checksum)
+                        .unset("variants"),
+                Media.class).getModifiedCount() == 1;
+        if (!switched) {
+            // Migrated or deleted concurrently; undo our reference
+            mediaBlobStore.release(stored.getFilePath());
+            return false;
+        }
+
+        Files.deleteIfExists(file);
+        mediaVariantService.deleteVariants(oldPath);
+        media.setFilePath(stored.getFilePath());
+        mediaVariantService.generate(media);
+        return true;
+    }
+}
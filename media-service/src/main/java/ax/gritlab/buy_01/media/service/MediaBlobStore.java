@@ -0,0 +1,358 @@
+package ax.gritlab.buy_01.media.service;
+
+import ax.gritlab.buy_01.media.model.MediaBlob;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed file storage.
+ * Each distinct content is stored once, named by its SHA-256 and placed
+ * by {@link MediaStorageLayout}, and reference counted in media_blobs.
+ * A file is unlinked only when the last media referencing it is
+ * deleted.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MediaBlobStore {
+
+    /**
+     * File names of blobs: the hex digest plus an optional extension.
+     */
+    private static final Pattern BLOB_NAME =
+            Pattern.compile("([0-9a-f]{64})(\\.[A-Za-z0-9]{1,10})?");
+
+    /**
+     * Accepted file extensions.
+     */
+    private static final Pattern EXTENSION =
+            Pattern.compile("\\.[A-Za-z0-9]{1,10}");
+
+    /**
+     * Attempts to reference a blob whose last reference is being
+     * removed at the same time.
+     */
+    private static final int MAX_ACQUIRE_ATTEMPTS = 50;
+
+    /**
+     * Pause between those attempts.
+     */
+    private static final long ACQUIRE_RETRY_MILLIS = 20;
+
+    /**
+     * Mongo template for reference counts.
+     */
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Where blob files are placed.
+     */
+    private final MediaStorageLayout layout;
+
+    /**
+     * Variants are deleted with their blob.
+     */
+    private final MediaVariantService mediaVariantService;
+
+    /**
+     * Result of storing content.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static final class Stored {
+        private final String filePath;
+        private final String checksum;
+        private final long size;
+        private final boolean created;
+    }
+
+    /**
+     * Store content, hashing it while it is copied, and take a
+     * reference to the blob holding it.
+     *
+     * @param in        the content
+     * @param extension file extension such as ".jpg"; ignored if unsafe
+     * @return the stored blob
+     * @throws IOException if the content cannot be written
+     */
+    public Stored store(
+            final InputStream in,
+            final String extension) throws IOException {
+        Path temp = Files.createTempFile(layout.root(), ".upload-", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            long size;
+            try (InputStream hashed = new DigestInputStream(in, digest)) {
+                size = Files.copy(hashed, temp,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            return adopt(temp, HexFormat.of().formatHex(digest.digest()),
+                    size, extension, false);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Take a reference to the blob for an existing file's content,
+     * placing the file as the blob if it is new.
+     *
+     * @param source    the file
+     * @param checksum  hex SHA-256 of the file
+     * @param size      the file size
+     * @param extension file extension; ignored if unsafe
+     * @param keep      true to hard-link or copy the file, leaving it in
+     *                  place; false to move it
+     * @return the stored blob
+     * @throws IOException if the blob cannot be written
+     */
+    public Stored adopt(
+            final Path source,
+            final String checksum,
+            final long size,
+            final String extension,
+            final boolean keep) throws IOException {
+        String suffix = extension != null
+                && EXTENSION.matcher(extension).matches()
+                ? extension.toLowerCase(Locale.ROOT)
+                : "";
+        String placement = layout.placement(checksum + suffix);
+        MediaBlob previous = acquire(checksum, placement, size);
+        String filePath = previous == null
+                ? placement
+                : previous.getFilePath();
+        Path target = previous == null
+                ? layout.root().resolve(filePath)
+                : layout.resolve(filePath);
+        if (previous == null || !Files.exists(target)) {
+            place(source, target, keep);
+        }
+        return new Stored(filePath, checksum, size, previous == null);
+    }
+
+    /**
+     * Drop a media's reference to its file, deleting the file and its
+     * variants once nothing references it. Files stored before
+     * content addressing are deleted directly.
+     *
+     * @param filePath the media's file path
+     */
+    public void release(final String filePath) {
+        if (filePath == null
+                || filePath.startsWith("http://")
+                || filePath.startsWith("https://")) {
+            return;
+        }
+        String checksum = checksumOf(filePath);
+        if (checksum == null) {
+            unlink(filePath);
+            mediaVariantService.deleteVariants(filePath);
+            return;
+        }
+
+        MediaBlob blob = mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(checksum)),
+                new Update().inc("refCount", -1),
+                FindAndModifyOptions.options().returnNew(true),
+                MediaBlob.class);
+        if (blob == null || blob.getRefCount() > 0) {
+            return;
+        }
+        // Only one releaser gets to delete, and only if no upload took
+        // a new reference in the meantime
+        MediaBlob claimed = mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(checksum)
+                        .and("refCount").lte(0)
+                        .and("deleting").ne(true)),
+                new Update().set("deleting", true),
+                FindAndModifyOptions.options().returnNew(true),
+                MediaBlob.class);
+        if (claimed == null) {
+            return;
+        }
+        unlink(claimed.getFilePath());
+        mediaVariantService.deleteVariants(claimed.getFilePath());
+        mongoTemplate.remove(new Query(Criteria.where("_id").is(checksum)),
+                MediaBlob.class);
+    }
+
+    /**
+     * Get the checksum a blob path is named after.
+     *
+     * @param filePath the file path
+     * @return the hex digest, or null if the path is not a blob
+     */
+    public static String checksumOf(final String filePath) {
+        if (filePath == null) {
+            return null;
+        }
+        String name = Paths.get(filePath).getFileName().toString();
+        Matcher matcher = BLOB_NAME.matcher(name);
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Compute the SHA-256 of a file.
+     *
+     * @param file the file
+     * @return hex digest
+     * @throws IOException if the file cannot be read
+     */
+    public static String sha256(final Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(
+                Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Increment a blob's reference count, creating the record if
+     * needed. Waits while a concurrent release is deleting the blob.
+     *
+     * @param checksum the blob's digest
+     * @param filePath path to use if the blob is new
+     * @param size     the content size
+     * @return the record before the increment, or null if it is new
+     */
+    private MediaBlob acquire(
+            final String checksum,
+            final String filePath,
+            final long size) {
+        Query query = new Query(Criteria.where("_id").is(checksum)
+                .and("deleting").ne(true));
+        Update update = new Update()
+                .inc("refCount", 1)
+                .setOnInsert("filePath", filePath)
+                .setOnInsert("size", size)
+                .setOnInsert("createdAt", LocalDateTime.now());
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return mongoTemplate.findAndModify(query, update,
+                        FindAndModifyOptions.options().upsert(true)
+                                .returnNew(false),
+                        MediaBlob.class);
+            } catch (DuplicateKeyException e) {
+                // The record exists but is being deleted
+                if (attempt == MAX_ACQUIRE_ATTEMPTS) {
+                    throw new IllegalStateException(
+                            "Blob " + checksum + " is busy", e);
+                }
+                try {
+                    Thread.sleep(ACQUIRE_RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(
+                            "Interrupted while storing blob", interrupted);
+                }
+            }
+        }
+    }
+
+    /**
+     * Put content at a blob's path.
+     *
+     * @param source the content
+     * @param target the blob's path
+     * @param keep   true to leave the source in place
+     * @throws IOException if the file cannot be written
+     */
+    private void place(
+            final Path source,
+            final Path target,
+            final boolean keep) throws IOException {
+        Files.createDirectories(target.getParent());
+        if (keep) {
+            try {
+                Files.createLink(target, source);
+                return;
+            } catch (FileAlreadyExistsException e) {
+                // Same name means same content
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                // Different file system, or no hard links; copy instead
+            }
+            Path temp = Files.createTempFile(target.getParent(),
+                    ".copy-", ".tmp");
+            try {
+                Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+                move(temp, target);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            return;
+        }
+        move(source, target);
+    }
+
+    /**
+     * Move a file into place, atomically where supported.
+     *
+     * @param source the file
+     * @param target the destination
+     * @throws IOException if the move fails
+     */
+    private static void move(
+            final Path source,
+            final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Delete a stored file.
+     *
+     * @param filePath the file path
+     */
+    private void unlink(final String filePath) {
+        try {
+            Files.deleteIfExists(layout.resolve(filePath));
+        } catch (IOException e) {
+            log.warn("Failed to delete file: {}", filePath, e);
+        }
+    }
+
+    /**
+     * Create a SHA-256 digest.
+     *
+     * @return the digest
+     */
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package ax.gritlab.buy_01.media.service;
+
+import ax.gritlab.buy_01.media.config.StorageProperties;
+import ax.gritlab.buy_01.media.model.Media;
+import ax.gritlab.buy_01.media.model.MediaBlob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Moves blobs stored in the flat layout into fan-out directories.
+ * Runs in the background after start, at a limited number of files per
+ * second so that serving traffic keeps the disk. Each blob is linked at
+ * its new path first, then switched with a compare-and-set on its old
+ * path, and the old file is removed last; reads in between find the
+ * file through {@link MediaStorageLayout#resolve(String)}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MediaFanOutMigration {
+
+    /**
+     * Mongo template for blob and media updates.
+     */
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Storage configuration.
+     */
+    private final StorageProperties storageProperties;
+
+    /**
+     * Where files belong.
+     */
+    private final MediaStorageLayout layout;
+
+    /**
+     * Start the migration once the application is up.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (storageProperties.getFanOutLevels() == 0
+                || storageProperties.getFanOutMigrationRate() <= 0) {
+            return;
+        }
+        Thread thread = new Thread(this::migrate, "media-fan-out-migration");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Move every flat blob, pausing between files.
+     */
+    void migrate() {
+        long interval = TimeUnit.SECONDS.toNanos(1)
+                / storageProperties.getFanOutMigrationRate();
+        Query query = new Query(Criteria.where("deleting").ne(true));
+        query.fields().include("filePath");
+        int moved = 0;
+        int failed = 0;
+        long next = System.nanoTime();
+        try (Stream<MediaBlob> blobs =
+                mongoTemplate.stream(query, MediaBlob.class)) {
+            for (MediaBlob blob : (Iterable<MediaBlob>) blobs::iterator) {
+                if (layout.isPlaced(blob.getFilePath())) {
+                    continue;
+                }
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                next = Math.max(next, System.nanoTime()) + interval;
+                try {
+                    if (migrate(blob)) {
+                        moved++;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failed++;
+                    log.warn("Failed to move blob {}", blob.getId(), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (moved > 0 || failed > 0) {
+            log.info("Fan-out migration finished: {} files moved, {} failed",
+                    moved, failed);
+        }
+    }
+
+    /**
+     * Move one blob and its variants.
+     *
+     * @param blob the blob, with its current path
+     * @return true if the blob now lives at its fanned-out path
+     * @throws IOException if the file cannot be linked
+     */
+    private boolean migrate(final MediaBlob blob) throws IOException {
+        String oldPath = blob.getFilePath();
+        Path oldFile = layout.root().resolve(oldPath);
+        if (!Files.isRegularFile(oldFile)) {
+            return false;
+        }
+        String newPath = layout.placement(
+                oldFile.getFileName().toString());
+        if (newPath.equals(oldPath) || !newPath.endsWith("/" + oldPath)) {
+            // Not a flat path; nothing to do with it
+            return false;
+        }
+        String prefix = newPath.substring(
+                0, newPath.length() - oldPath.length());
+
+        List<Path> linked = new ArrayList<>();
+        link(oldFile, layout.root().resolve(newPath), linked);
+        for (String variant : MediaVariantService.variantPaths(oldPath)) {
+            Path file = layout.root().resolve(variant);
+            if (Files.isRegularFile(file)) {
+                link(file, layout.root().resolve(prefix + variant), linked);
+            }
+        }
+
+        boolean switched = mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(blob.getId())
+                        .and("filePath").is(oldPath)
+                        .and("deleting").ne(true)),
+                new Update().set("filePath", newPath),
+                MediaBlob.class).getModifiedCount() == 1;
+        if (!switched) {
+            // Released, or moved by another replica
+            MediaBlob current = mongoTemplate.findById(blob.getId(),
+                    MediaBlob.class);
+            if (current == null || !newPath.equals(current.getFilePath())) {
+                delete(linked);
+            }
+            return false;
+        }
+
+        Query referencing = new Query(Criteria.where("filePath").is(oldPath));
+        referencing.fields().include("variants");
+        for (Media media : mongoTemplate.find(referencing, Media.class)) {
+            Update update = new Update().set("filePath", newPath);
+            if (media.getVariants() != null) {
+                Map<String, Media.Variant> variants = new LinkedHashMap<>();
+                media.getVariants().forEach((name, variant) -> {
+                    variant.setFilePath(prefix + variant.getFilePath());
+                    variants.put(name, variant);
+                });
+                update.set("variants", variants);
+            }
+            mongoTemplate.updateFirst(
+                    new Query(Criteria.where("_id").is(media.getId())
+                            .and("filePath").is(oldPath)),
+                    update, Media.class);
+        }
+
+        List<Path> old = new ArrayList<>();
+        old.add(oldFile);
+        for (String variant : MediaVariantService.variantPaths(oldPath)) {
+            old.add(layout.root().resolve(variant));
+        }
+        delete(old);
+        return true;
+    }
+
+    /**
+     * Give a file a second name, copying it if it cannot be linked.
+     *
+     * @param source the file
+     * @param target the new name
+     * @param linked receives the target once it exists
+     * @throws IOException if the file cannot be linked or copied
+     */
+    private static void link(
+            final Path source,
+            final Path target,
+            final List<Path> linked) throws IOException {
+        Files.createDirectories(target.getParent());
+        try {
+            Files.createLink(target, source);
+        } catch (FileAlreadyExistsException e) {
+            // Left by an earlier, interrupted run; same name, same content
+        } catch (IOException | UnsupportedOperationException e) {
+            Path temp = Files.createTempFile(target.getParent(),
+                    ".copy-", ".tmp");
+            try {
+                Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        linked.add(target);
+    }
+
+    /**
+     * Delete files, logging failures.
+     *
+     * @param files the files
+     */
+    private static void delete(final List<Path> files) {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Failed to delete {}", file, e);
+            }
+        }
+    }
+}
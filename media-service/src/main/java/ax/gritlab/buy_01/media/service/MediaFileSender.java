@@ -0,0 +1,228 @@
+package ax.gritlab.buy_01.media.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes stored files to HTTP responses.
+ * Media never change content under the same id, so responses carry a
+ * strong ETag from the content checksum and may be cached forever.
+ * Conditional requests are answered with 304, single byte ranges with
+ * 206, and bodies are handed to Tomcat's sendfile when the connector
+ * supports it, or copied with FileChannel.transferTo otherwise.
+ */
+@Component
+public final class MediaFileSender {
+
+    /**
+     * Request attribute set by Tomcat when sendfile is available.
+     */
+    private static final String SENDFILE_SUPPORT =
+            "org.apache.tomcat.sendfile.support";
+
+    /**
+     * Request attribute naming the file for Tomcat to send.
+     */
+    private static final String SENDFILE_FILENAME =
+            "org.apache.tomcat.sendfile.filename";
+
+    /**
+     * Request attribute with the first byte for Tomcat to send.
+     */
+    private static final String SENDFILE_START =
+            "org.apache.tomcat.sendfile.start";
+
+    /**
+     * Request attribute with the end (exclusive) for Tomcat to send.
+     */
+    private static final String SENDFILE_END =
+            "org.apache.tomcat.sendfile.end";
+
+    /**
+     * Caching policy for content that never changes.
+     */
+    private static final String IMMUTABLE =
+            "public, max-age=31536000, immutable";
+
+    /**
+     * Caching policy for a stand-in that will be replaced soon.
+     */
+    private static final String SHORT_LIVED = "public, max-age=60";
+
+    /**
+     * Bodies smaller than this are copied directly; handing them to
+     * sendfile costs more than it saves.
+     */
+    @Value("${media.serving.sendfile-min-size:49152}")
+    private long sendfileMinSize;
+
+    /**
+     * Answer a GET or HEAD request for a stored file.
+     *
+     * @param request     the request
+     * @param response    the response
+     * @param file        the file
+     * @param contentType the file's content type
+     * @param checksum    hex SHA-256 of the file's content
+     * @param permanent   whether the URL will always serve this file
+     * @throws IOException if the file cannot be read or sent
+     */
+    public void send(
+            final HttpServletRequest request,
+            final HttpServletResponse response,
+            final Path file,
+            final String contentType,
+            final String checksum,
+            final boolean permanent) throws IOException {
+        long length = Files.size(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        String etag = "\"" + checksum + "\"";
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.CACHE_CONTROL,
+                permanent ? IMMUTABLE : SHORT_LIVED);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (notModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long end = length;
+        HttpRange range = range(request, etag);
+        if (range != null) {
+            if (length == 0 || !satisfiable(range, length)) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE,
+                        "bytes */" + length);
+                response.setStatus(
+                        HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            start = range.getRangeStart(length);
+            end = range.getRangeEnd(length) + 1;
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start
+                    + "-" + (end - 1) + "/" + length);
+        }
+        response.setContentType(contentType);
+        response.setContentLengthLong(end - start);
+
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+        if (end - start >= sendfileMinSize
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME,
+                    file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            WritableByteChannel out =
+                    Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position < end) {
+                long sent = channel.transferTo(position, end - position, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+            }
+        }
+    }
+
+    /**
+     * Evaluate If-None-Match, or If-Modified-Since without it.
+     *
+     * @param request      the request
+     * @param etag         the file's ETag
+     * @param lastModified the file's modification time in millis
+     * @return true if the client's copy is current
+     */
+    private static boolean notModified(
+            final HttpServletRequest request,
+            final String etag,
+            final long lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        try {
+            long since = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+            return since >= 0 && lastModified / 1000 <= since / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the requested byte range, if one applies.
+     * Malformed, multiple and If-Range mismatched ranges are ignored,
+     * which means the whole file is sent.
+     *
+     * @param request the request
+     * @param etag    the file's ETag
+     * @return the range, or null for the whole file
+     */
+    private static HttpRange range(
+            final HttpServletRequest request,
+            final String etag) {
+        String header = request.getHeader(HttpHeaders.RANGE);
+        if (header == null) {
+            return null;
+        }
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.trim().equals(etag)) {
+            return null;
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(header);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether a range overlaps the file.
+     *
+     * @param range  the range
+     * @param length the file length
+     * @return true if at least one byte is in range
+     */
+    private static boolean satisfiable(
+            final HttpRange range,
+            final long length) {
+        try {
+            return range.getRangeStart(length) < length;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
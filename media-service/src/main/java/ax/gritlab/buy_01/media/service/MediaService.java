@@ -10,9 +10,14 @@ import ax.gritlab.buy_01.media.repository.MediaRepository;
 import jakarta.annotation.PostConstruct;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
@@ -23,11 +28,13 @@ import java.net.MalformedURLException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.UUID;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Service class for managing media operations.
@@ -40,9 +47,18 @@ public class MediaService {
      */
     private static final long MAX_FILE_SIZE = 2 * 1024 * 1024;
 
+    /**
+     * Maximum number of IDs accepted by a single existence check.
+     */
+    private static final int MAX_EXISTS_BATCH = 1000;
+
     private final MediaRepository mediaRepository;
+    private final MongoTemplate mongoTemplate;
     private final StorageProperties storageProperties;
     private final RestTemplate restTemplate;
+    private final MediaVariantService mediaVariantService;
+    private final MediaBlobStore mediaBlobStore;
+    private final MediaStorageLayout mediaStorageLayout;
     private Path rootLocation;
 
     @Value("${api.gateway.url:http://localhost:8080/api/media}")
@@ -61,6 +77,19 @@ public class MediaService {
         private final String contentType;
     }
 
+    /**
+     * A stored media file on local disk. It is not permanent when it
+     * stands in for a variant that does not exist yet.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static final class MediaFile {
+        private final Path path;
+        private final String contentType;
+        private final String checksum;
+        private final boolean permanent;
+    }
+
     /**
      * Initializes the storage location.
      */
@@ -76,21 +105,17 @@ public class MediaService {
     }
 
     /**
-     * Helper method to delete physical file.
+     * Helper method to delete physical file. Files shared with other
+     * media are only unlinked once the last of them is deleted.
      *
      * @param filePath the path of the file to delete
      */
     private void deletePhysicalFile(final String filePath) {
-        if (filePath != null
-                && !filePath.startsWith("http://")
-                && !filePath.startsWith("https://")) {
-            try {
-                Path file = rootLocation.resolve(filePath);
-                Files.deleteIfExists(file);
-            } catch (IOException e) {
-                System.err.println("Failed to delete file: "
-                        + filePath);
-            }
+        try {
+            mediaBlobStore.release(filePath);
+        } catch (RuntimeException e) {
+            System.err.println("Failed to delete file: "
+                    + filePath);
         }
     }
 
@@ -104,6 +129,26 @@ public class MediaService {
         return mediaRepository.findByUserId(userId);
     }
 
+    /**
+     * Find which of the given media IDs exist.
+     *
+     * @param ids the media IDs to check
+     * @return the subset of IDs that exist
+     */
+    public Set<String> findExistingIds(final Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Set.of();
+        }
+        if (ids.size() > MAX_EXISTS_BATCH) {
+            throw new IllegalArgumentException(
+                    "At most " + MAX_EXISTS_BATCH
+                            + " media IDs can be checked at once");
+        }
+        return mediaRepository.findIdsByIdIn(ids).stream()
+                .map(Media::getId)
+                .collect(Collectors.toSet());
+    }
+
     /**
      * Associate media with a product.
      *
@@ -129,6 +174,30 @@ public class MediaService {
         return updatedMedia;
     }
 
+    /**
+     * Associate several media owned by the user with a product in one
+     * update. Media the user does not own are left untouched.
+     *
+     * @param mediaIds  the media IDs
+     * @param productId the product ID
+     * @param userId    the user ID
+     * @return number of media updated
+     */
+    public long associateAllWithProduct(final List<String> mediaIds,
+            final String productId,
+            final String userId) {
+        if (mediaIds == null || mediaIds.isEmpty()) {
+            return 0;
+        }
+        return mongoTemplate.updateMulti(
+                new Query(Criteria.where("_id").in(mediaIds)
+                        .and("userId").is(userId)),
+                new Update()
+                        .set("productId", productId)
+                        .set("updatedAt", LocalDateTime.now()),
+                Media.class).getModifiedCount();
+    }
+
     /**
      * Delete all media associated with a product.
      *
@@ -136,14 +205,32 @@ public class MediaService {
      */
     public void deleteMediaByProductId(final String productId) {
         List<Media> medias = mediaRepository.findByProductId(productId);
+        // Remove records from DB before releasing their files
+        if (!medias.isEmpty()) {
+            mediaRepository.deleteAll(medias);
+        }
         for (Media media : medias) {
             deletePhysicalFile(media.getFilePath());
         }
+    }
 
-        // Remove records from DB
+    /**
+     * Delete all media associated with any of the given products.
+     *
+     * @param productIds the product IDs
+     */
+    public void deleteMediaByProductIds(final Collection<String> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return;
+        }
+
+        List<Media> medias = mediaRepository.findByProductIdIn(productIds);
         if (!medias.isEmpty()) {
             mediaRepository.deleteAll(medias);
         }
+        for (Media media : medias) {
+            deletePhysicalFile(media.getFilePath());
+        }
     }
 
     /**
@@ -157,13 +244,12 @@ public class MediaService {
         }
 
         List<Media> medias = mediaRepository.findAllById(ids);
-        for (Media media : medias) {
-            deletePhysicalFile(media.getFilePath());
-        }
-
         if (!medias.isEmpty()) {
             mediaRepository.deleteAll(medias);
         }
+        for (Media media : medias) {
+            deletePhysicalFile(media.getFilePath());
+        }
     }
 
     /**
@@ -177,13 +263,12 @@ public class MediaService {
         }
 
         List<Media> medias = mediaRepository.findByUserId(userId);
-        for (Media media : medias) {
-            deletePhysicalFile(media.getFilePath());
-        }
-
         if (!medias.isEmpty()) {
             mediaRepository.deleteAll(medias);
         }
+        for (Media media : medias) {
+            deletePhysicalFile(media.getFilePath());
+        }
     }
 
     /**
@@ -213,44 +298,46 @@ public class MediaService {
 
         try {
             String originalFilename = Objects.requireNonNull(file.getOriginalFilename());
-            String extension = originalFilename.substring(
-                    originalFilename.lastIndexOf("."));
-            String uniqueFilename = UUID.randomUUID() + extension;
-
-            Path destinationFile = this.rootLocation
-                    .resolve(Paths.get(uniqueFilename))
-                    .normalize()
-                    .toAbsolutePath();
-            if (!destinationFile.getParent()
-                    .equals(this.rootLocation.toAbsolutePath())) {
-                throw new InvalidFileTypeException(
-                        "Cannot store file outside "
-                                + "current directory.");
-            }
-
+            String extension = originalFilename.contains(".")
+                    ? originalFilename.substring(
+                            originalFilename.lastIndexOf("."))
+                    : "";
+            MediaBlobStore.Stored stored;
             try (InputStream inputStream = file.getInputStream()) {
-                Files.copy(inputStream, destinationFile,
-                        StandardCopyOption.REPLACE_EXISTING);
+                stored = mediaBlobStore.store(inputStream, extension);
             }
 
             LocalDateTime now = LocalDateTime.now();
+            // Assign the ID up front so the URL is part of the insert
+            String id = new ObjectId().toHexString();
 
             Media media = Media.builder()
+                    .id(id)
+                    .url(apiGatewayUrl + "/images/" + id)
                     .originalFilename(originalFilename)
                     .contentType(file.getContentType())
-                    .size(file.getSize())
-                    .filePath(uniqueFilename)
+                    .size(stored.getSize())
+                    .filePath(stored.getFilePath())
+                    .checksum(stored.getChecksum())
+                    .variants(stored.isCreated()
+                            ? null
+                            : sharedVariants(stored.getChecksum()))
                     .userId(user.getId())
                     .createdAt(now)
                     .updatedAt(now)
                     .build();
 
-            Media savedMedia = mediaRepository.save(media);
-
-            // Set the URL after saving to get the ID
-            savedMedia.setUrl(apiGatewayUrl + "/images/"
-                    + savedMedia.getId());
-            return mediaRepository.save(savedMedia);
+            Media savedMedia;
+            try {
+                savedMedia = mediaRepository.insert(media);
+            } catch (RuntimeException e) {
+                mediaBlobStore.release(stored.getFilePath());
+                throw e;
+            }
+            if (savedMedia.getVariants() == null) {
+                mediaVariantService.generateAsync(savedMedia);
+            }
+            return savedMedia;
 
         } catch (IOException e) {
             throw new RuntimeException("Failed to store file.", e);
@@ -272,6 +359,78 @@ public class MediaService {
         return new MediaResource(resource, media.getContentType());
     }
 
+    /**
+     * Get a media's file on local disk for serving.
+     * Media stored before checksums were recorded get one computed
+     * and saved on first use.
+     *
+     * @param id   the media ID
+     * @param size a variant name, or null for the original
+     * @return the file, or null if the media points at an external URL
+     */
+    public MediaFile getMediaFile(final String id, final String size) {
+        if (size != null && !MediaVariantService.SIZES.containsKey(size)) {
+            throw new IllegalArgumentException("Unknown size: " + size
+                    + "; expected one of "
+                    + MediaVariantService.SIZES.keySet());
+        }
+        Media media = mediaRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException(
+                        "Media not found with id: " + id));
+        String filePath = media.getFilePath();
+        if (filePath.startsWith("http://")
+                || filePath.startsWith("https://")) {
+            return null;
+        }
+        Media.Variant variant = size == null || media.getVariants() == null
+                ? null
+                : media.getVariants().get(size);
+        if (variant != null) {
+            Path file = mediaStorageLayout.resolve(variant.getFilePath());
+            if (Files.isReadable(file)) {
+                return new MediaFile(file, variant.getContentType(),
+                        variant.getChecksum(), true);
+            }
+        }
+        Path file = mediaStorageLayout.resolve(filePath);
+        if (!Files.isReadable(file)) {
+            throw new ResourceNotFoundException(
+                    "Could not read file: " + filePath);
+        }
+
+        String checksum = media.getChecksum();
+        if (checksum == null) {
+            try {
+                checksum = MediaBlobStore.sha256(file);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read file: "
+                        + filePath, e);
+            }
+            mongoTemplate.updateFirst(
+                    new Query(Criteria.where("_id").is(id)),
+                    new Update().set("checksum", checksum),
+                    Media.class);
+        }
+        // A requested variant that is still being generated
+        boolean pending = size != null && media.getVariants() == null;
+        return new MediaFile(file, media.getContentType(), checksum,
+                !pending);
+    }
+
+    /**
+     * Find the variants already generated for the same content.
+     *
+     * @param checksum the content's digest
+     * @return the variants, or null if none are recorded yet
+     */
+    private Map<String, Media.Variant> sharedVariants(final String checksum) {
+        Query query = new Query(Criteria.where("checksum").is(checksum)
+                .and("variants").ne(null));
+        query.fields().include("variants");
+        Media other = mongoTemplate.findOne(query, Media.class);
+        return other == null ? null : other.getVariants();
+    }
+
     /**
      * Load file as resource.
      *
@@ -288,7 +447,7 @@ public class MediaService {
             }
 
             // Otherwise, load from local filesystem
-            Path file = rootLocation.resolve(filename);
+            Path file = mediaStorageLayout.resolve(filename);
             Resource resource = new UrlResource(file.toUri());
             if (resource.exists() || resource.isReadable()) {
                 return resource;
@@ -347,11 +506,9 @@ public class MediaService {
             }
         }
 
-        // Delete physical file
-        deletePhysicalFile(media.getFilePath());
-
-        // Delete database record
+        // Delete database record, then release the physical file
         mediaRepository.delete(media);
+        deletePhysicalFile(media.getFilePath());
     }
 
 }
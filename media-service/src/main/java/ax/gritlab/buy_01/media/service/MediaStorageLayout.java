@@ -0,0 +1,140 @@
+package ax.gritlab.buy_01.media.service;
+
+import ax.gritlab.buy_01.media.config.StorageProperties;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.regex.Pattern;
+
+/**
+ * Placement of files under the storage root.
+ * Blob files are spread over directories named after the leading hex
+ * digits of their digest, so that no single directory grows to hold
+ * every upload: with two levels, "ab12..." is stored as
+ * "ab/12/ab12...". Paths recorded before the fan-out stay valid, and a
+ * file that has been moved since its path was read is still found.
+ */
+@Component
+@RequiredArgsConstructor
+public class MediaStorageLayout {
+
+    /**
+     * Most directory levels supported.
+     */
+    private static final int MAX_LEVELS = 4;
+
+    /**
+     * Hex digits naming each directory level.
+     */
+    private static final int DIGITS_PER_LEVEL = 2;
+
+    /**
+     * Names that can be fanned out: a hex digest plus anything.
+     */
+    private static final Pattern HEX_NAME =
+            Pattern.compile("^[0-9a-f]{64}.*");
+
+    /**
+     * Storage configuration.
+     */
+    private final StorageProperties storageProperties;
+
+    /**
+     * Storage root.
+     */
+    private Path rootLocation;
+
+    /**
+     * Directory levels for new files.
+     */
+    private int levels;
+
+    /**
+     * Resolve the storage root and check the configuration.
+     */
+    @PostConstruct
+    public void init() {
+        rootLocation = Paths.get(storageProperties.getLocation());
+        levels = storageProperties.getFanOutLevels();
+        if (levels < 0 || levels > MAX_LEVELS) {
+            throw new IllegalStateException("storage.fan-out-levels must be"
+                    + " between 0 and " + MAX_LEVELS + ", was " + levels);
+        }
+    }
+
+    /**
+     * Get the storage root.
+     *
+     * @return the root
+     */
+    public Path root() {
+        return rootLocation;
+    }
+
+    /**
+     * Get the path a file named after a digest is stored at.
+     *
+     * @param name the file name, starting with a hex digest
+     * @return the relative path; the name itself for other names or
+     *         when fan-out is disabled
+     */
+    public String placement(final String name) {
+        if (levels == 0 || !HEX_NAME.matcher(name).matches()) {
+            return name;
+        }
+        StringBuilder path = new StringBuilder();
+        for (int level = 0; level < levels; level++) {
+            int start = level * DIGITS_PER_LEVEL;
+            path.append(name, start, start + DIGITS_PER_LEVEL).append('/');
+        }
+        return path.append(name).toString();
+    }
+
+    /**
+     * Whether a stored path is where new files with its name go.
+     *
+     * @param filePath the relative path
+     * @return true if the file need not move
+     */
+    public boolean isPlaced(final String filePath) {
+        return placement(fileName(filePath)).equals(filePath);
+    }
+
+    /**
+     * Resolve a stored path. When nothing is at the path, the file's
+     * other location is tried, so reads work while files move between
+     * the flat and fanned-out layouts.
+     *
+     * @param filePath the relative path
+     * @return the file
+     */
+    public Path resolve(final String filePath) {
+        Path file = rootLocation.resolve(filePath);
+        if (Files.exists(file)) {
+            return file;
+        }
+        String name = fileName(filePath);
+        String other = name.equals(filePath) ? placement(name) : name;
+        if (!other.equals(filePath)) {
+            Path moved = rootLocation.resolve(other);
+            if (Files.exists(moved)) {
+                return moved;
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Get the last segment of a relative path.
+     *
+     * @param filePath the path
+     * @return the file name
+     */
+    private static String fileName(final String filePath) {
+        return filePath.substring(filePath.lastIndexOf('/') + 1);
+    }
+}
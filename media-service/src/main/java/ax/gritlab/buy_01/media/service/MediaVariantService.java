@@ -0,0 +1,479 @@
+package ax.gritlab.buy_01.media.service;
+
+import ax.gritlab.buy_01.media.model.Media;
+import ax.gritlab.buy_01.media.model.MediaBlob;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Service deriving resized variants of uploaded images.
+ * Variants are generated after the upload has been answered, on a
+ * fixed number of worker threads with a bounded queue, and are stored
+ * next to the original. Until a variant exists, the original is served
+ * in its place. Images that get no variants, because they are small,
+ * cannot be decoded or were not queued, are recorded with an empty
+ * variant map so their original is served as final.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MediaVariantService {
+
+    /**
+     * Variant names and their longest side in pixels, smallest first.
+     */
+    public static final Map<String, Integer> SIZES = sizes();
+
+    /**
+     * JPEG quality of variants.
+     */
+    private static final float JPEG_QUALITY = 0.85f;
+
+    /**
+     * File extensions variants are written with.
+     */
+    private static final List<String> FORMATS = List.of("jpg", "png");
+
+    /**
+     * Mongo template for recording variants.
+     */
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Where stored files are.
+     */
+    private final MediaStorageLayout layout;
+
+    /**
+     * Worker threads; generation is CPU bound.
+     */
+    @Value("${media.variants.threads:2}")
+    private int threads;
+
+    /**
+     * Uploads waiting for variants before new ones are skipped.
+     */
+    @Value("${media.variants.queue-size:500}")
+    private int queueSize;
+
+    /**
+     * Largest image, in pixels, that is decoded for resizing.
+     */
+    @Value("${media.variants.max-pixels:25000000}")
+    private long maxPixels;
+
+    /**
+     * Worker pool.
+     */
+    private ThreadPoolExecutor executor;
+
+    /**
+     * Start the worker pool.
+     */
+    @PostConstruct
+    public void init() {
+        ImageIO.setUseCache(false);
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads,
+                0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable,
+                            "media-variants-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                });
+    }
+
+    /**
+     * Stop the worker pool.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queue variant generation for a freshly stored image.
+     * When the queue is full the image keeps only its original.
+     *
+     * @param media the stored media
+     */
+    public void generateAsync(final Media media) {
+        try {
+            executor.execute(() -> generate(media));
+        } catch (RejectedExecutionException e) {
+            log.warn("Variant queue full; media {} served without variants",
+                    media.getId());
+            markOriginalOnly(media);
+        }
+    }
+
+    /**
+     * Delete the variant files of an original. Files are found by name
+     * rather than from {@link Media#getVariants()}, so variants that
+     * were being generated while the media was read are removed too.
+     *
+     * @param filePath the original's file path
+     */
+    public void deleteVariants(final String filePath) {
+        List<Path> files = new ArrayList<>();
+        for (String variant : variantPaths(filePath)) {
+            files.add(layout.resolve(variant));
+        }
+        deleteFiles(files);
+    }
+
+    /**
+     * List every path a variant of an original may have been written to.
+     *
+     * @param filePath the original's file path
+     * @return the candidate variant paths
+     */
+    static List<String> variantPaths(final String filePath) {
+        List<String> paths = new ArrayList<>();
+        for (String name : SIZES.keySet()) {
+            for (String format : FORMATS) {
+                paths.add(variantPath(filePath, name, format));
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Generate and record all variants smaller than the original.
+     *
+     * @param media the stored media
+     */
+    void generate(final Media media) {
+        Path original = layout.resolve(media.getFilePath());
+        BufferedImage source;
+        try {
+            source = decode(original, media.getId());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cannot decode media {}: {}", media.getId(),
+                    e.getMessage());
+            markOriginalOnly(media);
+            return;
+        }
+        if (source == null) {
+            markOriginalOnly(media);
+            return;
+        }
+
+        boolean alpha = source.getColorModel().hasAlpha();
+        String format = alpha ? "png" : "jpg";
+
+        Map<String, Media.Variant> variants = new LinkedHashMap<>();
+        List<Path> created = new ArrayList<>();
+        try {
+            for (Map.Entry<String, Integer> size : SIZES.entrySet()) {
+                int longest = Math.max(source.getWidth(), source.getHeight());
+                if (longest <= size.getValue()) {
+                    break;
+                }
+                BufferedImage scaled = scale(source,
+                        (double) size.getValue() / longest, alpha);
+                byte[] bytes = encode(scaled, format);
+                String filePath = variantPath(media.getFilePath(),
+                        size.getKey(), format);
+                Path target = layout.root().resolve(filePath);
+                if (place(target, bytes)) {
+                    created.add(target);
+                }
+                variants.put(size.getKey(), Media.Variant.builder()
+                        .filePath(filePath)
+                        .contentType(alpha ? "image/png" : "image/jpeg")
+                        .width(scaled.getWidth())
+                        .height(scaled.getHeight())
+                        .size(bytes.length)
+                        .checksum(sha256(bytes))
+                        .build());
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to generate variants for media {}",
+                    media.getId(), e);
+            deleteFiles(created);
+            markOriginalOnly(media);
+            return;
+        }
+        if (variants.isEmpty()) {
+            // Already no larger than the smallest variant
+            markOriginalOnly(media);
+            return;
+        }
+
+        long matched = mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(media.getId())),
+                new Update().set("variants", variants),
+                Media.class).getMatchedCount();
+        String checksum = MediaBlobStore.checksumOf(media.getFilePath());
+        if (matched == 0 && (checksum == null || !mongoTemplate.exists(
+                new Query(Criteria.where("_id").is(checksum)),
+                MediaBlob.class))) {
+            // Deleted while we were working, and no other media shares
+            // the file
+            deleteFiles(created);
+        }
+    }
+
+    /**
+     * Record that a media has no variants and never will, so that its
+     * original is served as final for every size.
+     *
+     * @param media the media
+     */
+    private void markOriginalOnly(final Media media) {
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(media.getId())
+                        .and("variants").is(null)),
+                new Update().set("variants", Map.of()),
+                Media.class);
+    }
+
+    /**
+     * Decode an image, checking its dimensions from the header first.
+     * A small file can declare a huge canvas; decoding it would
+     * allocate far more memory than the upload size suggests.
+     *
+     * @param file    the image file
+     * @param mediaId the media ID, for logging
+     * @return the image, or null if there is no reader for its format
+     *         or it has too many pixels
+     * @throws IOException if the file cannot be read
+     */
+    private BufferedImage decode(
+            final Path file,
+            final String mediaId) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(
+                file.toFile())) {
+            Iterator<ImageReader> readers = in == null
+                    ? Collections.emptyIterator()
+                    : ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                // No ImageIO reader for this format
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    log.warn("Media {} is {}x{}; not generating variants"
+                            + " above {} pixels", mediaId,
+                            reader.getWidth(0), reader.getHeight(0),
+                            maxPixels);
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Name a variant file after its original.
+     *
+     * @param original the original's path
+     * @param name     the variant name
+     * @param format   the variant's file extension
+     * @return the variant's path
+     */
+    private static String variantPath(
+            final String original,
+            final String name,
+            final String format) {
+        int dot = original.lastIndexOf('.');
+        String base = dot > 0 ? original.substring(0, dot) : original;
+        return base + "_" + name + "." + format;
+    }
+
+    /**
+     * Resize an image, halving repeatedly first so that large
+     * reductions stay sharp with bilinear filtering.
+     *
+     * @param source the image
+     * @param factor scale factor below 1
+     * @param alpha  whether to keep transparency
+     * @return the resized image
+     */
+    private static BufferedImage scale(
+            final BufferedImage source,
+            final double factor,
+            final boolean alpha) {
+        int targetWidth = Math.max(1, (int) Math.round(
+                source.getWidth() * factor));
+        int targetHeight = Math.max(1, (int) Math.round(
+                source.getHeight() * factor));
+        int type = alpha
+                ? BufferedImage.TYPE_INT_ARGB
+                : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    /**
+     * Encode an image.
+     *
+     * @param image  the image
+     * @param format "jpg" or "png"
+     * @return the encoded bytes
+     * @throws IOException if encoding fails
+     */
+    private static byte[] encode(
+            final BufferedImage image,
+            final String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format)
+                .next();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if ("jpg".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Put a variant file in place. The bytes go to a temporary file
+     * first, so a reader never sees a partial variant, and are then
+     * linked at the target name, which fails rather than replacing a
+     * file that a concurrent upload of the same content already put
+     * there; where links are unsupported the file is moved atomically.
+     *
+     * @param target the variant file
+     * @param bytes  the encoded variant
+     * @return true if this call created the file
+     * @throws IOException if the file cannot be written
+     */
+    private static boolean place(final Path target, final byte[] bytes)
+            throws IOException {
+        Path temp = Files.createTempFile(target.getParent(),
+                ".variant-", ".tmp");
+        try {
+            Files.write(temp, bytes);
+            try {
+                Files.createLink(target, temp);
+                return true;
+            } catch (FileAlreadyExistsException e) {
+                // Same content, same variant; leave it to its creator
+                return false;
+            } catch (UnsupportedOperationException e) {
+                if (Files.exists(target)) {
+                    return false;
+                }
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                return true;
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Delete files this call created before a failure.
+     *
+     * @param files the files
+     */
+    private static void deleteFiles(final List<Path> files) {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Failed to delete variant {}", file, e);
+            }
+        }
+    }
+
+    /**
+     * Hex SHA-256 of bytes.
+     *
+     * @param bytes the bytes
+     * @return hex digest
+     */
+    private static String sha256(final byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    /**
+     * Build the variant table.
+     *
+     * @return names to longest side, smallest first
+     */
+    private static Map<String, Integer> sizes() {
+        Map<String, Integer> sizes = new LinkedHashMap<>();
+        sizes.put("thumb", 200);
+        sizes.put("card", 400);
+        sizes.put("detail", 800);
+        return Collections.unmodifiableMap(sizes);
+    }
+}
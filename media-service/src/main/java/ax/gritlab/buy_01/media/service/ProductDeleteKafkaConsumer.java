@@ -30,6 +30,8 @@ public class ProductDeleteKafkaConsumer {
 
     /**
      * Consumes product deletion events and deletes associated media.
+     * Accepts a single product ({@code {"id", "mediaIds"}}), a batch
+     * ({@code {"ids", "mediaIds"}}) or a bare product ID.
      *
      * @param message the deletion event message
      */
@@ -57,6 +59,16 @@ public class ProductDeleteKafkaConsumer {
                     return;
                 }
 
+                // batch events from a seller cascade carry "ids"
+                if (node.has("ids") && node.get("ids").isArray()) {
+                    List<String> productIds = new ArrayList<>();
+                    for (JsonNode idNode : node.get("ids")) {
+                        productIds.add(idNode.asText());
+                    }
+                    mediaService.deleteMediaByProductIds(productIds);
+                    return;
+                }
+
                 // fallback to productId field if present
                 if (node.has("id")) {
                     String productId = node.get("id").asText();
@@ -0,0 +1,214 @@
+package ax.gritlab.buy_01.media.service;
+
+import ax.gritlab.buy_01.media.config.StorageProperties;
+import ax.gritlab.buy_01.media.model.MediaBlob;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks blob reference counting and how storing waits out a
+ * concurrent delete of the same content.
+ */
+public class MediaBlobStoreTest {
+
+    private static final byte[] CONTENT =
+            "same bytes".getBytes(StandardCharsets.UTF_8);
+    private static final String CHECKSUM = HexFormat.of().formatHex(
+            MediaBlobStore.sha256().digest(CONTENT));
+    private static final String PLACEMENT = CHECKSUM.substring(0, 2) + "/"
+            + CHECKSUM.substring(2, 4) + "/" + CHECKSUM + ".png";
+
+    @TempDir
+    private Path root;
+
+    private MongoTemplate mongoTemplate;
+    private MediaVariantService mediaVariantService;
+    private MediaBlobStore blobStore;
+
+    @BeforeEach
+    void setUp() {
+        StorageProperties properties = new StorageProperties();
+        properties.setLocation(root.toString());
+        MediaStorageLayout layout = new MediaStorageLayout(properties);
+        layout.init();
+        mongoTemplate = mock(MongoTemplate.class);
+        mediaVariantService = mock(MediaVariantService.class);
+        blobStore = new MediaBlobStore(mongoTemplate, layout,
+                mediaVariantService);
+    }
+
+    private static MediaBlob blob(final long refCount) {
+        return MediaBlob.builder().id(CHECKSUM).filePath(PLACEMENT)
+                .refCount(refCount).build();
+    }
+
+    private void findAndModifyReturns(final MediaBlob first,
+                                      final MediaBlob... rest) {
+        when(mongoTemplate.findAndModify(any(Query.class),
+                any(UpdateDefinition.class), any(FindAndModifyOptions.class),
+                eq(MediaBlob.class))).thenReturn(first, rest);
+    }
+
+    private MediaBlobStore.Stored store() throws IOException {
+        return blobStore.store(new ByteArrayInputStream(CONTENT), ".PNG");
+    }
+
+    private boolean leftoverTempFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.anyMatch(p -> p.getFileName().toString()
+                    .endsWith(".tmp"));
+        }
+    }
+
+    @Test
+    public void newContentIsPlacedUnderItsChecksum() throws IOException {
+        findAndModifyReturns(null);
+
+        MediaBlobStore.Stored stored = store();
+
+        assertTrue(stored.isCreated());
+        assertEquals(CHECKSUM, stored.getChecksum());
+        assertEquals(PLACEMENT, stored.getFilePath());
+        assertArrayEquals(CONTENT, Files.readAllBytes(root.resolve(PLACEMENT)));
+        assertFalse(leftoverTempFiles());
+    }
+
+    @Test
+    public void knownContentOnlyTakesAReference() throws IOException {
+        Files.createDirectories(root.resolve(PLACEMENT).getParent());
+        Files.write(root.resolve(PLACEMENT), CONTENT);
+        findAndModifyReturns(blob(1));
+
+        MediaBlobStore.Stored stored = store();
+
+        assertFalse(stored.isCreated());
+        assertEquals(PLACEMENT, stored.getFilePath());
+        assertFalse(leftoverTempFiles());
+    }
+
+    @Test
+    public void storeRetriesWhileTheBlobIsBeingDeleted() throws IOException {
+        DuplicateKeyException deleting =
+                new DuplicateKeyException("deleting");
+        when(mongoTemplate.findAndModify(any(Query.class),
+                any(UpdateDefinition.class), any(FindAndModifyOptions.class),
+                eq(MediaBlob.class)))
+                .thenThrow(deleting, deleting)
+                // The delete finished, so the upsert creates a new record
+                .thenReturn(null);
+
+        MediaBlobStore.Stored stored = store();
+
+        assertTrue(stored.isCreated());
+        assertTrue(Files.exists(root.resolve(PLACEMENT)));
+        verify(mongoTemplate, times(3)).findAndModify(any(Query.class),
+                any(UpdateDefinition.class), any(FindAndModifyOptions.class),
+                eq(MediaBlob.class));
+    }
+
+    @Test
+    public void storeGivesUpOnABlobThatStaysBusy() {
+        when(mongoTemplate.findAndModify(any(Query.class),
+                any(UpdateDefinition.class), any(FindAndModifyOptions.class),
+                eq(MediaBlob.class)))
+                .thenThrow(new DuplicateKeyException("deleting"));
+
+        assertThrows(IllegalStateException.class, this::store);
+    }
+
+    @Test
+    public void fileSurvivesWhileReferenced() throws IOException {
+        Files.createDirectories(root.resolve(PLACEMENT).getParent());
+        Files.write(root.resolve(PLACEMENT), CONTENT);
+        findAndModifyReturns(blob(1));
+
+        blobStore.release(PLACEMENT);
+
+        assertTrue(Files.exists(root.resolve(PLACEMENT)));
+        verify(mongoTemplate, times(1)).findAndModify(any(Query.class),
+                any(UpdateDefinition.class), any(FindAndModifyOptions.class),
+                eq(MediaBlob.class));
+        verify(mediaVariantService, never()).deleteVariants(PLACEMENT);
+    }
+
+    @Test
+    public void lastReleaseDeletesFileVariantsAndRecord() throws IOException {
+        Files.createDirectories(root.resolve(PLACEMENT).getParent());
+        Files.write(root.resolve(PLACEMENT), CONTENT);
+        findAndModifyReturns(blob(0), blob(0));
+
+        blobStore.release(PLACEMENT);
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).findAndModify(queries.capture(),
+                any(UpdateDefinition.class), any(FindAndModifyOptions.class),
+                eq(MediaBlob.class));
+        // Only an unreferenced blob nobody else is deleting is claimed
+        Document claim = queries.getAllValues().get(1).getQueryObject();
+        assertEquals(new Document("$lte", 0), claim.get("refCount"));
+        assertEquals(new Document("$ne", true), claim.get("deleting"));
+        assertFalse(Files.exists(root.resolve(PLACEMENT)));
+        verify(mediaVariantService).deleteVariants(PLACEMENT);
+        verify(mongoTemplate).remove(any(Query.class), eq(MediaBlob.class));
+    }
+
+    @Test
+    public void releaseThatLosesTheDeleteClaimKeepsTheFile()
+            throws IOException {
+        Files.createDirectories(root.resolve(PLACEMENT).getParent());
+        Files.write(root.resolve(PLACEMENT), CONTENT);
+        // An upload took a new reference between the two updates
+        findAndModifyReturns(blob(0), (MediaBlob) null);
+
+        blobStore.release(PLACEMENT);
+
+        assertTrue(Files.exists(root.resolve(PLACEMENT)));
+        verify(mediaVariantService, never()).deleteVariants(PLACEMENT);
+        verify(mongoTemplate, never()).remove(any(Query.class),
+                eq(MediaBlob.class));
+    }
+
+    @Test
+    public void filesFromBeforeContentAddressingAreDeletedDirectly()
+            throws IOException {
+        Files.write(root.resolve("legacy.png"), CONTENT);
+
+        blobStore.release("legacy.png");
+        blobStore.release("https://cdn.example/photo.png");
+
+        assertFalse(Files.exists(root.resolve("legacy.png")));
+        verify(mediaVariantService).deleteVariants("legacy.png");
+        verify(mongoTemplate, never()).findAndModify(any(Query.class),
+                any(UpdateDefinition.class), any(FindAndModifyOptions.class),
+                eq(MediaBlob.class));
+    }
+}
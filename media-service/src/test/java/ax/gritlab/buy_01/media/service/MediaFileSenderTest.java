@@ -0,0 +1,216 @@
+package ax.gritlab.buy_01.media.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks conditional and byte-range handling when serving files.
+ */
+public class MediaFileSenderTest {
+
+    private static final String CHECKSUM = "abc123";
+    private static final String ETAG = "\"" + CHECKSUM + "\"";
+    private static final long MODIFIED = 1_700_000_000_000L;
+
+    @TempDir
+    private Path dir;
+
+    private Path file;
+    private MediaFileSender sender;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = dir.resolve("photo.png");
+        Files.write(file, "0123456789".getBytes(StandardCharsets.US_ASCII));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(MODIFIED));
+        sender = new MediaFileSender();
+        ReflectionTestUtils.setField(sender, "sendfileMinSize", 49152L);
+        request = new MockHttpServletRequest("GET", "/images/1");
+        response = new MockHttpServletResponse();
+    }
+
+    private void send() throws IOException {
+        sender.send(request, response, file, "image/png", CHECKSUM, true);
+    }
+
+    @Test
+    public void wholeFileCarriesValidatorsAndCachingHeaders()
+            throws IOException {
+        send();
+
+        assertEquals(200, response.getStatus());
+        assertEquals("0123456789", response.getContentAsString());
+        assertEquals(10, response.getContentLengthLong());
+        assertEquals(ETAG, response.getHeader(HttpHeaders.ETAG));
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertEquals("public, max-age=31536000, immutable",
+                response.getHeader(HttpHeaders.CACHE_CONTROL));
+    }
+
+    @Test
+    public void matchingEtagIsNotModified() throws IOException {
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\", W/" + ETAG);
+
+        send();
+
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+        assertEquals(ETAG, response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    public void ifNoneMatchTakesPrecedenceOverIfModifiedSince()
+            throws IOException {
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\"");
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, MODIFIED + 60_000);
+
+        send();
+
+        assertEquals(200, response.getStatus());
+        assertEquals("0123456789", response.getContentAsString());
+    }
+
+    @Test
+    public void unchangedSinceIsNotModified() throws IOException {
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, MODIFIED);
+
+        send();
+
+        assertEquals(304, response.getStatus());
+    }
+
+    @Test
+    public void singleRangeIsPartialContent() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+
+        send();
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 2-5/10",
+                response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(4, response.getContentLengthLong());
+        assertEquals("2345", response.getContentAsString());
+    }
+
+    @Test
+    public void suffixRangeServesTheTail() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=-3");
+
+        send();
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 7-9/10",
+                response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("789", response.getContentAsString());
+    }
+
+    @Test
+    public void ifRangeMustMatchTheEtag() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"stale\"");
+
+        send();
+
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("0123456789", response.getContentAsString());
+
+        request.removeHeader(HttpHeaders.IF_RANGE);
+        request.addHeader(HttpHeaders.IF_RANGE, ETAG);
+        response = new MockHttpServletResponse();
+
+        send();
+
+        assertEquals(206, response.getStatus());
+        assertEquals("2345", response.getContentAsString());
+    }
+
+    @Test
+    public void rangePastTheEndIsNotSatisfiable() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=10-");
+
+        send();
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10",
+                response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    public void anyRangeOfAnEmptyFileIsNotSatisfiable() throws IOException {
+        Files.write(file, new byte[0]);
+        request.addHeader(HttpHeaders.RANGE, "bytes=-5");
+
+        send();
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */0",
+                response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    public void multipleOrMalformedRangesSendTheWholeFile()
+            throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1,4-5");
+
+        send();
+
+        assertEquals(200, response.getStatus());
+        assertEquals("0123456789", response.getContentAsString());
+
+        request.removeHeader(HttpHeaders.RANGE);
+        request.addHeader(HttpHeaders.RANGE, "pages=1");
+        response = new MockHttpServletResponse();
+
+        send();
+
+        assertEquals(200, response.getStatus());
+        assertEquals("0123456789", response.getContentAsString());
+    }
+
+    @Test
+    public void headSendsHeadersOnly() throws IOException {
+        request.setMethod("HEAD");
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+
+        send();
+
+        assertEquals(206, response.getStatus());
+        assertEquals(4, response.getContentLengthLong());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    public void largeRangesAreHandedToSendfile() throws IOException {
+        ReflectionTestUtils.setField(sender, "sendfileMinSize", 4L);
+        request.setAttribute("org.apache.tomcat.sendfile.support", true);
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+
+        send();
+
+        assertEquals(file.toAbsolutePath().toString(), request.getAttribute(
+                "org.apache.tomcat.sendfile.filename"));
+        assertEquals(2L, request.getAttribute(
+                "org.apache.tomcat.sendfile.start"));
+        assertEquals(6L, request.getAttribute(
+                "org.apache.tomcat.sendfile.end"));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+}
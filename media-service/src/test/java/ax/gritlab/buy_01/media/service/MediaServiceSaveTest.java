@@ -0,0 +1,95 @@
+package ax.gritlab.buy_01.media.service;
+
+import ax.gritlab.buy_01.media.config.StorageProperties;
+import ax.gritlab.buy_01.media.model.Media;
+import ax.gritlab.buy_01.media.model.User;
+import ax.gritlab.buy_01.media.repository.MediaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that storing an upload writes its media record exactly once.
+ */
+public class MediaServiceSaveTest {
+
+    private static final String GATEWAY = "http://gateway/api/media";
+    private static final String BLOB = "ab/cd/abcd.png";
+
+    private MediaRepository mediaRepository;
+    private MongoTemplate mongoTemplate;
+    private MediaVariantService mediaVariantService;
+    private MediaBlobStore mediaBlobStore;
+    private MediaService mediaService;
+
+    private final MockMultipartFile file = new MockMultipartFile(
+            "file", "photo.png", "image/png", new byte[] {1, 2, 3});
+    private final User user = User.builder().id("user-1").build();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        mediaRepository = mock(MediaRepository.class);
+        mongoTemplate = mock(MongoTemplate.class);
+        mediaVariantService = mock(MediaVariantService.class);
+        mediaBlobStore = mock(MediaBlobStore.class);
+        mediaService = new MediaService(mediaRepository, mongoTemplate,
+                new StorageProperties(), mock(RestTemplate.class),
+                mediaVariantService, mediaBlobStore,
+                mock(MediaStorageLayout.class));
+        ReflectionTestUtils.setField(mediaService, "apiGatewayUrl", GATEWAY);
+
+        when(mediaBlobStore.store(any(InputStream.class), anyString()))
+                .thenReturn(new MediaBlobStore.Stored(
+                        BLOB, "abcd", 3, true));
+    }
+
+    @Test
+    public void uploadIsASingleInsertWithItsUrl() {
+        when(mediaRepository.insert(any(Media.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        Media saved = mediaService.save(file, user);
+
+        ArgumentCaptor<Media> inserted = ArgumentCaptor.forClass(Media.class);
+        verify(mediaRepository, times(1)).insert(inserted.capture());
+        verify(mediaRepository, never()).save(any(Media.class));
+        verifyNoInteractions(mongoTemplate);
+
+        Media media = inserted.getValue();
+        assertNotNull(media.getId());
+        assertEquals(GATEWAY + "/images/" + media.getId(), media.getUrl());
+        assertEquals(BLOB, media.getFilePath());
+        assertEquals(media.getId(), saved.getId());
+        verify(mediaVariantService).generateAsync(saved);
+    }
+
+    @Test
+    public void failedInsertReleasesTheStoredFile() {
+        when(mediaRepository.insert(any(Media.class)))
+                .thenThrow(new IllegalStateException("write failed"));
+
+        assertThrows(IllegalStateException.class,
+                () -> mediaService.save(file, user));
+
+        verify(mediaBlobStore).release(BLOB);
+        verifyNoInteractions(mediaVariantService);
+    }
+}
@@ -54,7 +54,8 @@ public final class JwtAuthenticationFilter extends OncePerRequestFilter {
         // Skip JWT filter for inter-service calls and public endpoints
         return path.contains("/remove-media/")
                 || path.contains("/cleanup-orphaned-media")
-                || ("GET".equals(method) && path.startsWith("/products"));
+                || ("GET".equals(method) && path.startsWith("/products")
+                        && !path.startsWith("/products/imports/"));
     }
 
     /**
@@ -1,5 +1,7 @@
 package ax.gritlab.buy_01.product.config;
 
+import ax.gritlab.buy_01.product.service.ProductCache;
+import ax.gritlab.buy_01.product.service.ProductEvents;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -22,4 +24,20 @@ public class KafkaTopicConfig {
                 .replicas(1)
                 .build();
     }
+
+    @Bean
+    public NewTopic productInvalidatedTopic() {
+        return TopicBuilder.name(ProductCache.INVALIDATION_TOPIC)
+                .partitions(1)
+                .replicas(1)
+                .build();
+    }
+
+    @Bean
+    public NewTopic productEventsTopic() {
+        return TopicBuilder.name(ProductEvents.EVENTS_TOPIC)
+                .partitions(1)
+                .replicas(1)
+                .build();
+    }
 }
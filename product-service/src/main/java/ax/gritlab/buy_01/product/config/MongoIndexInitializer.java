@@ -0,0 +1,61 @@
+package ax.gritlab.buy_01.product.config;
+
+import ax.gritlab.buy_01.product.model.Product;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the indexes declared on mapped entities at startup.
+ * Automatic index creation is off by default in Spring Data MongoDB,
+ * so without this the declared indexes would never exist. Creating an
+ * index that already exists with the same definition is a no-op, so
+ * this also verifies them on every start.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MongoIndexInitializer {
+
+    /**
+     * Mongo template.
+     */
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Create or verify the product indexes.
+     */
+    @PostConstruct
+    public void init() {
+        int count = ensureIndexes(mongoTemplate, Product.class);
+        log.info("Verified {} indexes on {}", count,
+                mongoTemplate.getCollectionName(Product.class));
+    }
+
+    /**
+     * Create every index declared on an entity class.
+     *
+     * @param mongoTemplate the template to use
+     * @param type          the entity class
+     * @return number of declared indexes
+     */
+    public static int ensureIndexes(
+            final MongoTemplate mongoTemplate,
+            final Class<?> type) {
+        MongoPersistentEntityIndexResolver resolver =
+                new MongoPersistentEntityIndexResolver(
+                        mongoTemplate.getConverter().getMappingContext());
+        IndexOperations ops = mongoTemplate.indexOps(type);
+        int count = 0;
+        for (IndexDefinition index : resolver.resolveIndexFor(type)) {
+            ops.createIndex(index);
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,12 @@
+package ax.gritlab.buy_01.product.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables scheduled background jobs such as the outbox relay.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
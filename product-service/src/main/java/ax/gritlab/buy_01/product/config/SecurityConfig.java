@@ -50,6 +50,9 @@ public final class SecurityConfig {
                         .requestMatchers(
                                 "/products/*/remove-media/*")
                         .permitAll()
+                        .requestMatchers(HttpMethod.GET,
+                                "/products/*/similar")
+                        .permitAll()
                         .anyRequest().authenticated())
                 .addFilterBefore(jwtAuthFilter,
                         UsernamePasswordAuthenticationFilter.class);
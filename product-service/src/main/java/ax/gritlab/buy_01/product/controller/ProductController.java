@@ -1,11 +1,34 @@
 package ax.gritlab.buy_01.product.controller;
 
+import ax.gritlab.buy_01.product.dto.BulkProductResponse;
+import ax.gritlab.buy_01.product.dto.ProductBatchResponse;
+import ax.gritlab.buy_01.product.dto.ProductChangesResponse;
+import ax.gritlab.buy_01.product.dto.ProductFacetsResponse;
+import ax.gritlab.buy_01.product.dto.ProductFilter;
+import ax.gritlab.buy_01.product.dto.ProductPageResponse;
 import ax.gritlab.buy_01.product.dto.ProductRequest;
 import ax.gritlab.buy_01.product.dto.ProductResponse;
+import ax.gritlab.buy_01.product.dto.ProductSearchResponse;
+import ax.gritlab.buy_01.product.dto.StockDeltaRequest;
+import ax.gritlab.buy_01.product.dto.StockDeltaResponse;
+import ax.gritlab.buy_01.product.dto.StockReleaseRequest;
+import ax.gritlab.buy_01.product.dto.StockReservationRequest;
+import ax.gritlab.buy_01.product.dto.StockReservationResponse;
+import ax.gritlab.buy_01.product.model.ProductImport;
 import ax.gritlab.buy_01.product.model.User;
+import ax.gritlab.buy_01.product.service.ProductBulkService;
+import ax.gritlab.buy_01.product.service.ProductEventBroadcaster;
+import ax.gritlab.buy_01.product.service.ProductFacetService;
+import ax.gritlab.buy_01.product.service.ProductFieldSet;
+import ax.gritlab.buy_01.product.service.ProductImportService;
 import ax.gritlab.buy_01.product.service.ProductService;
+import ax.gritlab.buy_01.product.service.ProductStockService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -15,9 +38,15 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.time.Instant;
 import java.util.List;
 
 /**
@@ -31,31 +60,213 @@ public final class ProductController {
     /**
      * Product service.
      */
+    private final ProductService productService;
+
     /**
-     * Product service.
+     * Bulk product write service.
      */
-    private final ProductService productService;
+    private final ProductBulkService productBulkService;
+
+    /**
+     * Stock reservation service.
+     */
+    private final ProductStockService productStockService;
+
+    /**
+     * Live product event streams.
+     */
+    private final ProductEventBroadcaster productEventBroadcaster;
+
+    /**
+     * Facet count service.
+     */
+    private final ProductFacetService productFacetService;
+
+    /**
+     * Streaming import service.
+     */
+    private final ProductImportService productImportService;
 
     /**
-     * Get all products.
+     * Get one page of products, optionally filtered and sorted.
      *
-     * @return list of all products
+     * @param after    cursor from the previous page's nextCursor
+     * @param limit    maximum number of products to return
+     * @param minPrice lowest price to include
+     * @param maxPrice highest price to include
+     * @param sellerId only include this seller's products
+     * @param inStock  only include products with stock left
+     * @param sort     price, createdAt or viewCount, prefixed with -
+     *                 for descending order
+     * @param fields   comma-separated properties to return
+     * @return the page of products
      */
     @GetMapping
-    public ResponseEntity<List<ProductResponse>> getAllProducts() {
-        return ResponseEntity.ok(productService.getAllProducts());
+    public ResponseEntity<ProductPageResponse> getProducts(
+            @RequestParam(required = false) final String after,
+            @RequestParam(defaultValue = "20") final int limit,
+            @RequestParam(required = false) final Double minPrice,
+            @RequestParam(required = false) final Double maxPrice,
+            @RequestParam(required = false) final String sellerId,
+            @RequestParam(defaultValue = "false") final boolean inStock,
+            @RequestParam(required = false) final String sort,
+            @RequestParam(required = false) final String fields) {
+        ProductFilter filter = ProductFilter.builder()
+                .minPrice(minPrice)
+                .maxPrice(maxPrice)
+                .sellerId(sellerId)
+                .inStock(inStock)
+                .sort(sort)
+                .build();
+        return ResponseEntity.ok(
+                productService.getProducts(filter, after, limit, fields));
+    }
+
+    /**
+     * Full-text search over product name and description.
+     *
+     * @param q      the search query
+     * @param page   zero-based page number
+     * @param size   page size
+     * @param fields comma-separated properties to return
+     * @return the page of matching products
+     */
+    @GetMapping("/search")
+    public ResponseEntity<ProductSearchResponse> searchProducts(
+            @RequestParam(defaultValue = "") final String q,
+            @RequestParam(defaultValue = "0") final int page,
+            @RequestParam(defaultValue = "20") final int size,
+            @RequestParam(required = false) final String fields) {
+        return ResponseEntity.ok(
+                productService.searchProducts(q, page, size, fields));
+    }
+
+    /**
+     * Get products changed and deleted since the last poll.
+     *
+     * @param since nextCursor from the previous poll, omitted at first
+     * @param limit maximum changes per page
+     * @return the changes
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<ProductChangesResponse> getChanges(
+            @RequestParam(required = false) final String since,
+            @RequestParam(defaultValue = "500") final int limit) {
+        return ResponseEntity.ok(productService.getChanges(since, limit));
+    }
+
+    /**
+     * Stream product changes as Server-Sent Events.
+     * Event names are created, updated, deleted and stock; data is the
+     * event JSON. Clients that fall behind are disconnected and should
+     * reconnect and catch up through {@code /products/changes}.
+     *
+     * @return the event stream, or 503 when the connection limit is
+     *         reached
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamProductEvents() {
+        SseEmitter emitter = productEventBroadcaster.subscribe();
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * Export the catalog as newline-delimited JSON.
+     *
+     * @param since  only export products updated at or after this
+     *               ISO-8601 instant
+     * @param fields comma-separated properties to export
+     * @return streaming NDJSON response
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportProducts(
+            @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+            final Instant since,
+            @RequestParam(required = false) final String fields) {
+        // Reject bad fields now; once streaming starts the status is sent
+        ProductFieldSet.parse(fields);
+        StreamingResponseBody body =
+                out -> productService.exportProducts(since, fields, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
     }
 
     /**
      * Get product by ID.
      *
-     * @param id the product ID
+     * @param id     the product ID
+     * @param fields comma-separated properties to return
      * @return the product
      */
     @GetMapping("/{id}")
     public ResponseEntity<ProductResponse> getProductById(
-            @PathVariable final String id) {
-        return ResponseEntity.ok(productService.getProductById(id));
+            @PathVariable final String id,
+            @RequestParam(required = false) final String fields) {
+        return ResponseEntity.ok(
+                productService.getProductById(id, fields));
+    }
+
+    /**
+     * Get the products with the most recent views.
+     *
+     * @param limit  maximum number of products, at most 100
+     * @param fields comma-separated properties to return
+     * @return products, most popular first
+     */
+    @GetMapping("/trending")
+    public ResponseEntity<List<ProductResponse>> getTrendingProducts(
+            @RequestParam(defaultValue = "10") final int limit,
+            @RequestParam(required = false) final String fields) {
+        return ResponseEntity.ok(
+                productService.getTrendingProducts(limit, fields));
+    }
+
+    /**
+     * Get products similar to a product by name and description.
+     *
+     * @param id     the product ID
+     * @param limit  maximum number of products
+     * @param fields comma-separated properties to return
+     * @return similar products, most similar first
+     */
+    @GetMapping("/{id}/similar")
+    public ResponseEntity<List<ProductResponse>> getSimilarProducts(
+            @PathVariable final String id,
+            @RequestParam(defaultValue = "10") final int limit,
+            @RequestParam(required = false) final String fields) {
+        return ResponseEntity.ok(
+                productService.getSimilarProducts(id, limit, fields));
+    }
+
+    /**
+     * Get catalogue-wide counts per price range, stock range and seller.
+     *
+     * @return the counts
+     */
+    @GetMapping("/facets")
+    public ResponseEntity<ProductFacetsResponse> getFacets() {
+        return ResponseEntity.ok(productFacetService.getFacets());
+    }
+
+    /**
+     * Get many products by id in one request.
+     *
+     * @param ids    the product IDs, at most 100
+     * @param fields comma-separated properties to return
+     * @return found products and missing ids, in request order
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<ProductBatchResponse> getProductsByIds(
+            @RequestBody final List<String> ids,
+            @RequestParam(required = false) final String fields) {
+        return ResponseEntity.ok(
+                productService.getProductsByIds(ids, fields));
     }
 
     /**
@@ -75,6 +286,115 @@ public final class ProductController {
         return ResponseEntity.ok(createdProduct);
     }
 
+    /**
+     * Create or update many products in one request.
+     * Items without an id are created; items with an id update that
+     * product if the seller owns it.
+     *
+     * @param requests       the products to write
+     * @param authentication the authentication
+     * @return per-item results
+     */
+    @PostMapping("/bulk")
+    @PreAuthorize("hasAuthority('SELLER')")
+    public ResponseEntity<BulkProductResponse> bulkUpsertProducts(
+            @RequestBody final List<ProductRequest> requests,
+            final Authentication authentication) {
+        String userId = ((User) authentication.getPrincipal()).getId();
+        return ResponseEntity.ok(
+                productBulkService.upsertProducts(requests, userId));
+    }
+
+    /**
+     * Import products from a CSV or NDJSON upload. Uploading again with
+     * the id of an interrupted import resumes it.
+     *
+     * @param id             the import ID, or omitted for a new import
+     * @param contentType    text/csv or application/x-ndjson
+     * @param body           the upload
+     * @param authentication the authentication object
+     * @return the import's progress and row errors
+     */
+    @PostMapping(value = "/imports",
+            consumes = {"text/csv", "application/x-ndjson"})
+    @PreAuthorize("hasAuthority('SELLER')")
+    public ResponseEntity<ProductImport> importProducts(
+            @RequestParam(required = false) final String id,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) final String contentType,
+            final InputStream body,
+            final Authentication authentication) {
+        String userId = ((User) authentication.getPrincipal()).getId();
+        return ResponseEntity.ok(productImportService.importProducts(
+                id, contentType, body, userId));
+    }
+
+    /**
+     * Get the progress of an import.
+     *
+     * @param id             the import ID
+     * @param authentication the authentication object
+     * @return the import's progress and row errors
+     */
+    @GetMapping("/imports/{id}")
+    @PreAuthorize("hasAuthority('SELLER')")
+    public ResponseEntity<ProductImport> getImport(
+            @PathVariable final String id,
+            final Authentication authentication) {
+        String userId = ((User) authentication.getPrincipal()).getId();
+        return ResponseEntity.ok(productImportService.getImport(id, userId));
+    }
+
+    /**
+     * Reserve stock for all lines of a cart, or for none of them.
+     *
+     * @param request        the cart lines
+     * @param authentication the authentication object
+     * @return the reservation ID and remaining stock per product
+     */
+    @PostMapping("/stock/reserve")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<StockReservationResponse> reserveStock(
+            @Valid @RequestBody final StockReservationRequest request,
+            final Authentication authentication) {
+        String userId = ((User) authentication.getPrincipal()).getId();
+        return ResponseEntity.ok(
+                productStockService.reserve(request.getLines(), userId));
+    }
+
+    /**
+     * Release the stock of one of the caller's reservations.
+     *
+     * @param request        the reservation to release
+     * @param authentication the authentication object
+     * @return remaining stock per product
+     */
+    @PostMapping("/stock/release")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<StockReservationResponse> releaseStock(
+            @Valid @RequestBody final StockReleaseRequest request,
+            final Authentication authentication) {
+        String userId = ((User) authentication.getPrincipal()).getId();
+        return ResponseEntity.ok(productStockService.release(
+                request.getReservationId(), userId));
+    }
+
+    /**
+     * Apply a batch of stock deltas to the seller's products.
+     *
+     * @param request        the deltas
+     * @param authentication the authentication object
+     * @return new stock per product
+     */
+    @PostMapping("/stock/deltas")
+    @PreAuthorize("hasAuthority('SELLER')")
+    public ResponseEntity<StockDeltaResponse> applyStockDeltas(
+            @Valid @RequestBody final StockDeltaRequest request,
+            final Authentication authentication) {
+        String userId = ((User) authentication.getPrincipal()).getId();
+        return ResponseEntity.ok(productStockService.applyDeltas(
+                request.getDeltas(), userId));
+    }
+
     /**
      * Update an existing product.
      *
@@ -130,6 +450,26 @@ public final class ProductController {
         return ResponseEntity.ok(updatedProduct);
     }
 
+    /**
+     * Associate several media with a product in one request.
+     *
+     * @param productId      the product ID
+     * @param mediaIds       the media IDs
+     * @param authentication the authentication
+     * @return the updated product
+     */
+    @PostMapping("/{productId}/media")
+    @PreAuthorize("hasAuthority('SELLER')")
+    public ResponseEntity<ProductResponse> associateMediaBatch(
+            @PathVariable final String productId,
+            @RequestBody final List<String> mediaIds,
+            final Authentication authentication) {
+        String userId = ((User) authentication.getPrincipal()).getId();
+        ProductResponse updatedProduct = productService.associateMediaBatch(
+                productId, mediaIds, userId);
+        return ResponseEntity.ok(updatedProduct);
+    }
+
     /**
      * Remove media ID from product's mediaIds array.
      * Called by Media Service when media is deleted.
@@ -0,0 +1,37 @@
+package ax.gritlab.buy_01.product.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Summary of a bulk product write.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public final class BulkProductResponse {
+    /**
+     * Number of products created.
+     */
+    private int created;
+
+    /**
+     * Number of products updated.
+     */
+    private int updated;
+
+    /**
+     * Number of items that were not written.
+     */
+    private int failed;
+
+    /**
+     * Per-item results in request order.
+     */
+    private List<BulkProductResult> results;
+}
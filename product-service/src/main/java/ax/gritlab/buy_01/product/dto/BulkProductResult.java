@@ -0,0 +1,71 @@
+package ax.gritlab.buy_01.product.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one item in a bulk product write.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public final class BulkProductResult {
+
+    /**
+     * Outcome of a bulk item.
+     */
+    public enum Status {
+        /**
+         * A new product was inserted.
+         */
+        CREATED,
+
+        /**
+         * An existing product was updated.
+         */
+        UPDATED,
+
+        /**
+         * The item failed validation and was not written.
+         */
+        INVALID,
+
+        /**
+         * The item referenced a product that does not exist.
+         */
+        NOT_FOUND,
+
+        /**
+         * The item referenced a product owned by another seller.
+         */
+        FORBIDDEN,
+
+        /**
+         * The database rejected the write.
+         */
+        FAILED
+    }
+
+    /**
+     * Position of the item in the request.
+     */
+    private int index;
+
+    /**
+     * Product ID, when known.
+     */
+    private String id;
+
+    /**
+     * Outcome of the item.
+     */
+    private Status status;
+
+    /**
+     * Error message for items that were not written.
+     */
+    private String error;
+}
@@ -0,0 +1,27 @@
+package ax.gritlab.buy_01.product.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Products looked up by id in one request.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public final class ProductBatchResponse {
+    /**
+     * Products found, in request order.
+     */
+    private List<ProductResponse> items;
+
+    /**
+     * Requested ids with no matching product, in request order.
+     */
+    private List<String> missing;
+}
@@ -0,0 +1,43 @@
+package ax.gritlab.buy_01.product.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of the product change feed.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public final class ProductChangesResponse {
+    /**
+     * Products created or updated since the cursor, oldest change first.
+     */
+    private List<ProductResponse> changed;
+
+    /**
+     * IDs of products deleted since the cursor.
+     */
+    private List<String> deleted;
+
+    /**
+     * Cursor to pass as {@code since} on the next poll.
+     */
+    private String nextCursor;
+
+    /**
+     * Whether more changes are waiting; poll again right away if so.
+     */
+    private boolean hasMore;
+
+    /**
+     * Set when the cursor is older than the deletion log; the client
+     * must discard its copy and sync again without a cursor.
+     */
+    private boolean resyncRequired;
+}
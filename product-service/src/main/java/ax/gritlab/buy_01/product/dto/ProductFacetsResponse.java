@@ -0,0 +1,99 @@
+package ax.gritlab.buy_01.product.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Catalogue-wide counts for the storefront filter sidebar.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public final class ProductFacetsResponse {
+
+    /**
+     * Number of products in a value range.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static final class Bucket {
+        /**
+         * Inclusive lower bound.
+         */
+        private Double min;
+
+        /**
+         * Exclusive upper bound, or null for the open last bucket.
+         */
+        private Double max;
+
+        /**
+         * Number of products in the range.
+         */
+        private long count;
+    }
+
+    /**
+     * Number of products of one seller.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static final class Seller {
+        /**
+         * Seller's user ID.
+         */
+        private String sellerId;
+
+        /**
+         * Number of products.
+         */
+        private long count;
+    }
+
+    /**
+     * Total number of products.
+     */
+    private long total;
+
+    /**
+     * Products per price range, in ascending order.
+     */
+    private List<Bucket> price;
+
+    /**
+     * Products priced below the lowest range, or without a price.
+     */
+    private long priceOther;
+
+    /**
+     * Products per stock range, in ascending order.
+     */
+    private List<Bucket> stock;
+
+    /**
+     * Products with stock below the lowest range, or without stock.
+     */
+    private long stockOther;
+
+    /**
+     * Sellers with the most products, largest first.
+     */
+    private List<Seller> sellers;
+
+    /**
+     * Time the counts were computed.
+     */
+    private LocalDateTime computedAt;
+}
@@ -0,0 +1,41 @@
+package ax.gritlab.buy_01.product.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Filters and sort order for the product listing.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public final class ProductFilter {
+    /**
+     * Lowest price to include, or null for no lower bound.
+     */
+    private Double minPrice;
+
+    /**
+     * Highest price to include, or null for no upper bound.
+     */
+    private Double maxPrice;
+
+    /**
+     * Only include products of this seller, or null for all sellers.
+     */
+    private String sellerId;
+
+    /**
+     * Only include products with stock left.
+     */
+    private boolean inStock;
+
+    /**
+     * Sort field: {@code price}, {@code createdAt} or {@code viewCount},
+     * prefixed with {@code -} for descending order; null sorts by id.
+     */
+    private String sort;
+}
@@ -0,0 +1,28 @@
+package ax.gritlab.buy_01.product.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of a cursor-paginated product listing.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public final class ProductPageResponse {
+    /**
+     * Products on this page.
+     */
+    private List<ProductResponse> items;
+
+    /**
+     * Opaque cursor to pass as {@code after} for the next page,
+     * or null when this is the last page.
+     */
+    private String nextCursor;
+}
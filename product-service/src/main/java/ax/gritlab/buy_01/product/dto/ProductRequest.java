@@ -32,6 +32,12 @@ public final class ProductRequest {
      */
     private static final int MAX_DESCRIPTION_LENGTH = 500;
 
+    /**
+     * Product ID. Only read by bulk writes, where it selects the
+     * product to update; items without an ID are created.
+     */
+    private String id;
+
     /**
      * Product name.
      */
@@ -1,5 +1,6 @@
 package ax.gritlab.buy_01.product.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -9,8 +10,11 @@ import java.util.List;
 
 /**
  * Product response DTO.
+ * Null properties are left out, so sparse fieldsets only carry the
+ * requested fields.
  */
 @Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
@@ -55,6 +59,16 @@ public final class ProductResponse {
      */
     private List<String> imageUrls;
 
+    /**
+     * URL of the first image, or null if the product has none.
+     */
+    private String imageUrl;
+
+    /**
+     * Number of times the product was viewed.
+     */
+    private Long viewCount;
+
     /**
      * Creation timestamp.
      */
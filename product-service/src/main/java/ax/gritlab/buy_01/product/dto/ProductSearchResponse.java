@@ -0,0 +1,37 @@
+package ax.gritlab.buy_01.product.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of full-text search results.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public final class ProductSearchResponse {
+    /**
+     * Matching products, best match first.
+     */
+    private List<ProductResponse> items;
+
+    /**
+     * Total number of matching products.
+     */
+    private int total;
+
+    /**
+     * Zero-based page number.
+     */
+    private int page;
+
+    /**
+     * Page size.
+     */
+    private int size;
+}
@@ -0,0 +1,29 @@
+package ax.gritlab.buy_01.product.dto;
+
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A change to the stock of one product.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public final class StockDelta {
+
+    /**
+     * Product ID.
+     */
+    @NotNull(message = "Product ID is required")
+    private String productId;
+
+    /**
+     * Units added, or removed if negative.
+     */
+    @NotNull(message = "Delta is required")
+    private Integer delta;
+}
@@ -0,0 +1,34 @@
+package ax.gritlab.buy_01.product.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Batch of stock changes pushed by an inventory system.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public final class StockDeltaRequest {
+
+    /**
+     * Maximum number of deltas per request.
+     */
+    private static final int MAX_DELTAS = 10_000;
+
+    /**
+     * Stock changes; several may name the same product.
+     */
+    @Valid
+    @NotEmpty(message = "At least one delta is required")
+    @Size(max = MAX_DELTAS, message = "At most 10000 deltas are allowed")
+    private List<StockDelta> deltas;
+}
@@ -0,0 +1,87 @@
+package ax.gritlab.buy_01.product.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Result of a stock delta batch.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public final class StockDeltaResponse {
+
+    /**
+     * Outcome for one product.
+     */
+    public enum Status {
+        /**
+         * The delta was applied.
+         */
+        APPLIED,
+        /**
+         * No product with the given id exists.
+         */
+        NOT_FOUND,
+        /**
+         * The product belongs to another seller.
+         */
+        FORBIDDEN,
+        /**
+         * The delta would take the stock below zero; nothing was
+         * changed.
+         */
+        INSUFFICIENT
+    }
+
+    /**
+     * Per-product result.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static final class Result {
+        /**
+         * Product ID.
+         */
+        private String productId;
+
+        /**
+         * Sum of the deltas given for the product.
+         */
+        private int delta;
+
+        /**
+         * Stock after the change; null unless applied.
+         */
+        private Integer quantity;
+
+        /**
+         * Outcome.
+         */
+        private Status status;
+    }
+
+    /**
+     * Number of products changed.
+     */
+    private int applied;
+
+    /**
+     * Number of products not changed.
+     */
+    private int failed;
+
+    /**
+     * One entry per distinct product, in first-seen order.
+     */
+    private List<Result> results;
+}
@@ -0,0 +1,31 @@
+package ax.gritlab.buy_01.product.dto;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One product line of a stock reservation.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public final class StockLine {
+
+    /**
+     * Product ID.
+     */
+    @NotNull(message = "Product ID is required")
+    private String productId;
+
+    /**
+     * Number of units to reserve.
+     */
+    @NotNull(message = "Quantity is required")
+    @Min(value = 1, message = "Quantity must be at least 1")
+    private Integer quantity;
+}
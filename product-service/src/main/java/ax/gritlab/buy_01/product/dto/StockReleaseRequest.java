@@ -0,0 +1,23 @@
+package ax.gritlab.buy_01.product.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Request to give back the stock of an earlier reservation.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public final class StockReleaseRequest {
+
+    /**
+     * ID returned when the stock was reserved.
+     */
+    @NotBlank(message = "Reservation ID is required")
+    private String reservationId;
+}
@@ -0,0 +1,34 @@
+package ax.gritlab.buy_01.product.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Stock reservation request for a cart.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public final class StockReservationRequest {
+
+    /**
+     * Maximum number of lines per request.
+     */
+    private static final int MAX_LINES = 100;
+
+    /**
+     * Cart lines.
+     */
+    @Valid
+    @NotEmpty(message = "At least one line is required")
+    @Size(max = MAX_LINES, message = "At most 100 lines are allowed")
+    private List<StockLine> lines;
+}
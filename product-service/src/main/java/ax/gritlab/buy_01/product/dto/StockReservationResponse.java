@@ -0,0 +1,52 @@
+package ax.gritlab.buy_01.product.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Result of a stock reservation or release.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public final class StockReservationResponse {
+
+    /**
+     * Per-product result.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static final class Line {
+        /**
+         * Product ID.
+         */
+        private String productId;
+
+        /**
+         * Units reserved or released.
+         */
+        private int quantity;
+
+        /**
+         * Stock left after the operation.
+         */
+        private int remaining;
+    }
+
+    /**
+     * ID of the reservation, used to release it.
+     */
+    private String reservationId;
+
+    /**
+     * One entry per distinct product in the request.
+     */
+    private List<Line> lines;
+}
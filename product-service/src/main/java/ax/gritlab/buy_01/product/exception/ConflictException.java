@@ -0,0 +1,15 @@
+package ax.gritlab.buy_01.product.exception;
+
+/**
+ * Exception thrown when a request conflicts with the resource's state.
+ */
+public final class ConflictException extends RuntimeException {
+    /**
+     * Constructs a new ConflictException.
+     *
+     * @param message the error message
+     */
+    public ConflictException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package ax.gritlab.buy_01.product.exception;
+
+/**
+ * Exception thrown when a reservation asks for more stock than is left.
+ */
+public final class InsufficientStockException extends RuntimeException {
+    /**
+     * Constructs a new InsufficientStockException.
+     *
+     * @param message the error message
+     */
+    public InsufficientStockException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,96 @@
+package ax.gritlab.buy_01.product.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Event waiting in the outbox to be published to Kafka.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "product_outbox")
+public final class OutboxEvent {
+
+    /**
+     * Delivery state of an outbox event.
+     */
+    public enum Status {
+        /**
+         * Not yet published.
+         */
+        PENDING,
+        /**
+         * Published and acknowledged by Kafka.
+         */
+        SENT,
+        /**
+         * Dropped because the change it describes never happened.
+         */
+        DISCARDED
+    }
+
+    /**
+     * Event ID.
+     */
+    @Id
+    private String id;
+
+    /**
+     * Kafka topic.
+     */
+    private String topic;
+
+    /**
+     * Kafka record key.
+     */
+    private String key;
+
+    /**
+     * Kafka record value.
+     */
+    private String payload;
+
+    /**
+     * Products that must be gone before the event is published.
+     */
+    private List<String> productIds;
+
+    /**
+     * Delivery state.
+     */
+    private Status status;
+
+    /**
+     * Failed publish attempts.
+     */
+    private int attempts;
+
+    /**
+     * Relay instance currently publishing the event.
+     */
+    private String owner;
+
+    /**
+     * Time until which the owner's claim holds.
+     */
+    private LocalDateTime leaseUntil;
+
+    /**
+     * Creation timestamp.
+     */
+    private LocalDateTime createdAt;
+
+    /**
+     * Time the event was sent or discarded.
+     */
+    private LocalDateTime completedAt;
+}
@@ -9,6 +9,8 @@ import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
@@ -17,12 +19,31 @@ import java.util.List;
 
 /**
  * Product entity.
+ * Indexes follow equality, sort, range order and end in {@code _id} so
+ * every listing sort can page with a keyset cursor.
  */
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "products")
+@CompoundIndexes({
+    @CompoundIndex(name = "price_id", def = "{'price': 1, '_id': 1}"),
+    @CompoundIndex(name = "createdAt_id",
+            def = "{'createdAt': 1, '_id': 1}"),
+    @CompoundIndex(name = "updatedAt_id",
+            def = "{'updatedAt': 1, '_id': 1}"),
+    @CompoundIndex(name = "viewCount_id",
+            def = "{'viewCount': 1, '_id': 1}"),
+    @CompoundIndex(name = "userId_id", def = "{'userId': 1, '_id': 1}"),
+    @CompoundIndex(name = "userId_price_id",
+            def = "{'userId': 1, 'price': 1, '_id': 1}"),
+    @CompoundIndex(name = "userId_createdAt_id",
+            def = "{'userId': 1, 'createdAt': 1, '_id': 1}"),
+    @CompoundIndex(name = "importId_importRow",
+            def = "{'importId': 1, 'importRow': 1}", unique = true,
+            partialFilter = "{'importId': {'$exists': true}}")
+})
 public final class Product {
 
     /**
@@ -83,6 +104,22 @@ public final class Product {
     @Builder.Default
     private List<String> mediaIds = new ArrayList<>();
 
+    /**
+     * Number of times the product was viewed.
+     */
+    @Builder.Default
+    private Long viewCount = 0L;
+
+    /**
+     * ID of the import that created the product, if any.
+     */
+    private String importId;
+
+    /**
+     * Data row of the import that created the product, if any.
+     */
+    private Long importRow;
+
     /**
      * Creation timestamp.
      */
@@ -0,0 +1,121 @@
+package ax.gritlab.buy_01.product.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Progress of a streaming product import.
+ * An interrupted import is resumed by uploading the same file again
+ * under the same id; rows up to {@link #rowsCommitted} are skipped.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "product_imports")
+public final class ProductImport {
+
+    /**
+     * State of an import.
+     */
+    public enum Status {
+        /**
+         * An upload is being processed.
+         */
+        RUNNING,
+        /**
+         * The whole file was processed.
+         */
+        COMPLETED,
+        /**
+         * The upload stopped early; upload again to resume.
+         */
+        INTERRUPTED
+    }
+
+    /**
+     * A row that was not imported.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static final class RowError {
+        /**
+         * Data row number, starting at 1.
+         */
+        private long row;
+
+        /**
+         * Why the row was rejected.
+         */
+        private String error;
+    }
+
+    /**
+     * Import ID, chosen by the client or generated.
+     */
+    @Id
+    private String id;
+
+    /**
+     * Seller the products are created for.
+     */
+    private String userId;
+
+    /**
+     * Current state.
+     */
+    private Status status;
+
+    /**
+     * Upload currently processing the import.
+     */
+    @JsonIgnore
+    private String runId;
+
+    /**
+     * Every data row up to this one has been written.
+     */
+    private long rowsCommitted;
+
+    /**
+     * Products created.
+     */
+    private long created;
+
+    /**
+     * Rows rejected.
+     */
+    private long failed;
+
+    /**
+     * The first rejected rows; see {@link #failed} for the total.
+     */
+    @Builder.Default
+    private List<RowError> errors = new ArrayList<>();
+
+    /**
+     * Why the last upload stopped early, if it did.
+     */
+    private String message;
+
+    /**
+     * Time the import was first started; also seeds product ids.
+     */
+    private LocalDateTime startedAt;
+
+    /**
+     * Time of the last progress update.
+     */
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,62 @@
+package ax.gritlab.buy_01.product.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Precomputed most similar products of one product.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "product_similarities")
+public final class ProductSimilarity {
+
+    /**
+     * A similar product and its cosine similarity.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static final class Neighbour {
+        /**
+         * Product ID.
+         */
+        private String id;
+
+        /**
+         * Cosine similarity of the TF-IDF vectors, in (0, 1].
+         */
+        private double score;
+    }
+
+    /**
+     * Product ID.
+     */
+    @Id
+    private String id;
+
+    /**
+     * Most similar products, best first.
+     */
+    private List<Neighbour> similar;
+
+    /**
+     * The product's updatedAt when the list was computed.
+     */
+    private LocalDateTime sourceUpdatedAt;
+
+    /**
+     * Time the list was computed.
+     */
+    private LocalDateTime computedAt;
+}
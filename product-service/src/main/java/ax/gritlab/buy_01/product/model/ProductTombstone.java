@@ -0,0 +1,34 @@
+package ax.gritlab.buy_01.product.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Record of a deleted product, kept for the change feed.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "product_tombstones")
+@CompoundIndex(name = "deletedAt_id", def = "{'deletedAt': 1, '_id': 1}")
+public final class ProductTombstone {
+
+    /**
+     * ID of the deleted product.
+     */
+    @Id
+    private String id;
+
+    /**
+     * Deletion timestamp.
+     */
+    private LocalDateTime deletedAt;
+}
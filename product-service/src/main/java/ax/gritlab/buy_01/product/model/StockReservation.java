@@ -0,0 +1,86 @@
+package ax.gritlab.buy_01.product.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Stock taken by a cart, recorded so it can be given back exactly once.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "stock_reservations")
+public final class StockReservation {
+
+    /**
+     * State of a reservation.
+     */
+    public enum Status {
+        /**
+         * The stock is held.
+         */
+        RESERVED,
+        /**
+         * The stock was given back.
+         */
+        RELEASED
+    }
+
+    /**
+     * Units of one product held by the reservation.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static final class Line {
+        /**
+         * Product ID.
+         */
+        private String productId;
+
+        /**
+         * Units reserved.
+         */
+        private int quantity;
+    }
+
+    /**
+     * Reservation ID, handed to the caller to release it.
+     */
+    @Id
+    private String id;
+
+    /**
+     * ID of the user who reserved the stock.
+     */
+    private String userId;
+
+    /**
+     * Units reserved per product.
+     */
+    private List<Line> lines;
+
+    /**
+     * Current state.
+     */
+    private Status status;
+
+    /**
+     * Reservation timestamp.
+     */
+    private LocalDateTime createdAt;
+
+    /**
+     * Release timestamp.
+     */
+    private LocalDateTime releasedAt;
+}
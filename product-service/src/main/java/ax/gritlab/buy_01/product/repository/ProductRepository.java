@@ -1,6 +1,7 @@
 package ax.gritlab.buy_01.product.repository;
 
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import ax.gritlab.buy_01.product.model.Product;
 
 /**
@@ -23,4 +24,13 @@ public interface ProductRepository
 	 * @return list of products
 	 */
 	java.util.List<Product> findByUserId(String userId);
+
+	/**
+	 * Stream every product with only the searchable fields loaded.
+	 * The caller must close the stream.
+	 *
+	 * @return stream of products with id, name and description
+	 */
+	@Query(value = "{}", fields = "{ 'name' : 1, 'description' : 1 }")
+	java.util.stream.Stream<Product> streamAllForSearch();
 }
@@ -0,0 +1,321 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.dto.BulkProductResponse;
+import ax.gritlab.buy_01.product.dto.BulkProductResult;
+import ax.gritlab.buy_01.product.dto.ProductRequest;
+import ax.gritlab.buy_01.product.model.Product;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Service for bulk product writes.
+ * Each chunk of items costs one ownership lookup and one unordered
+ * bulk write, instead of a findById and a save per item.
+ */
+@Service
+@RequiredArgsConstructor
+public final class ProductBulkService {
+
+    /**
+     * Maximum number of items accepted by one bulk request.
+     */
+    private static final int MAX_BULK_ITEMS = 10_000;
+
+    /**
+     * Number of items written per bulk operation.
+     */
+    private static final int CHUNK_SIZE = 1000;
+
+    /**
+     * Mongo template for bulk operations.
+     */
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Bean validator for request items.
+     */
+    private final Validator validator;
+
+    /**
+     * Cache to invalidate for updated products.
+     */
+    private final ProductCache productCache;
+
+    /**
+     * Live change events for stream subscribers.
+     */
+    private final ProductEvents productEvents;
+
+    /**
+     * Create or update many products for one seller.
+     * Items without an id are created; items with an id update that
+     * product if the seller owns it.
+     *
+     * @param requests the items to write
+     * @param userId   the seller's user ID
+     * @return per-item results in request order
+     */
+    public BulkProductResponse upsertProducts(
+            final List<ProductRequest> requests,
+            final String userId) {
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("No products given");
+        }
+        if (requests.size() > MAX_BULK_ITEMS) {
+            throw new IllegalArgumentException("At most " + MAX_BULK_ITEMS
+                    + " products can be written at once");
+        }
+
+        List<BulkProductResult> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i += CHUNK_SIZE) {
+            results.addAll(writeChunk(requests.subList(i,
+                    Math.min(i + CHUNK_SIZE, requests.size())), i, userId));
+        }
+
+        return BulkProductResponse.builder()
+                .created(count(results, BulkProductResult.Status.CREATED))
+                .updated(count(results, BulkProductResult.Status.UPDATED))
+                .failed(results.size()
+                        - count(results, BulkProductResult.Status.CREATED)
+                        - count(results, BulkProductResult.Status.UPDATED))
+                .results(results)
+                .build();
+    }
+
+    /**
+     * Validate and write one chunk with a single unordered bulk write.
+     *
+     * @param chunk  the items to write
+     * @param offset index of the chunk's first item in the request
+     * @param userId the seller's user ID
+     * @return results for the chunk, in order
+     */
+    private List<BulkProductResult> writeChunk(
+            final List<ProductRequest> chunk,
+            final int offset,
+            final String userId) {
+        BulkProductResult[] results = new BulkProductResult[chunk.size()];
+        Map<String, String> owners = findOwners(chunk);
+        LocalDateTime now = ZonedDateTime.now(ZoneOffset.UTC)
+                .toLocalDateTime();
+
+        BulkOperations ops = mongoTemplate.bulkOps(
+                BulkOperations.BulkMode.UNORDERED, Product.class);
+        // Position in 'chunk' of each queued operation
+        List<Integer> queued = new ArrayList<>();
+
+        for (int i = 0; i < chunk.size(); i++) {
+            ProductRequest request = chunk.get(i);
+            String id = request.getId();
+            String error = validate(request);
+            if (error != null) {
+                results[i] = result(offset + i, id,
+                        BulkProductResult.Status.INVALID, error);
+            } else if (id == null) {
+                Product product = Product.builder()
+                        .id(new ObjectId().toHexString())
+                        .name(request.getName())
+                        .description(request.getDescription())
+                        .price(request.getPrice())
+                        .quantity(request.getQuantity())
+                        .userId(userId)
+                        .createdAt(now)
+                        .updatedAt(now)
+                        .build();
+                ops.insert(product);
+                queued.add(i);
+                results[i] = result(offset + i, product.getId(),
+                        BulkProductResult.Status.CREATED, null);
+            } else if (!owners.containsKey(id)) {
+                results[i] = result(offset + i, id,
+                        BulkProductResult.Status.NOT_FOUND,
+                        "Product not found with id: " + id);
+            } else if (!userId.equals(owners.get(id))) {
+                results[i] = result(offset + i, id,
+                        BulkProductResult.Status.FORBIDDEN,
+                        "You do not have permission to update this product");
+            } else {
+                ops.updateOne(
+                        new Query(Criteria.where("_id").is(id)
+                                .and("userId").is(userId)),
+                        new Update()
+                                .set("name", request.getName())
+                                .set("description", request.getDescription())
+                                .set("price", request.getPrice())
+                                .set("quantity", request.getQuantity())
+                                .set("updatedAt", now));
+                queued.add(i);
+                results[i] = result(offset + i, id,
+                        BulkProductResult.Status.UPDATED, null);
+            }
+        }
+
+        if (!queued.isEmpty()) {
+            BulkWriteResult written;
+            try {
+                written = ops.execute();
+            } catch (BulkOperationException e) {
+                written = e.getResult();
+                for (BulkWriteError error : e.getErrors()) {
+                    int i = queued.get(error.getIndex());
+                    results[i].setStatus(BulkProductResult.Status.FAILED);
+                    results[i].setError(error.getMessage());
+                }
+            }
+            markUnmatched(results, written, userId);
+        }
+
+        List<String> created = new ArrayList<>();
+        List<String> updated = new ArrayList<>();
+        for (BulkProductResult result : results) {
+            if (result.getStatus() == BulkProductResult.Status.UPDATED) {
+                updated.add(result.getId());
+            } else if (result.getStatus()
+                    == BulkProductResult.Status.CREATED) {
+                created.add(result.getId());
+            }
+        }
+        productCache.evictAll(updated);
+        productEvents.changed(ProductEvents.UPDATED, updated);
+        productEvents.changed(ProductEvents.CREATED, created);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Report updates that matched nothing, because the product was
+     * deleted or changed hands after its owner was read, as not found.
+     * The bulk result only counts matches, so the products are re-read
+     * with one $in query, and only when the count falls short.
+     *
+     * @param results the chunk's results
+     * @param written the bulk write result
+     * @param userId  the seller's user ID
+     */
+    private void markUnmatched(
+            final BulkProductResult[] results,
+            final BulkWriteResult written,
+            final String userId) {
+        List<BulkProductResult> updates = Arrays.stream(results)
+                .filter(result -> result.getStatus()
+                        == BulkProductResult.Status.UPDATED)
+                .toList();
+        if (updates.isEmpty() || written.getMatchedCount() >= updates.size()) {
+            return;
+        }
+        Query query = new Query(Criteria.where("_id")
+                .in(updates.stream().map(BulkProductResult::getId).toList())
+                .and("userId").is(userId));
+        query.fields().include("_id");
+        Set<String> present = mongoTemplate.find(query, Product.class)
+                .stream()
+                .map(Product::getId)
+                .collect(Collectors.toSet());
+        for (BulkProductResult result : updates) {
+            if (!present.contains(result.getId())) {
+                result.setStatus(BulkProductResult.Status.NOT_FOUND);
+                result.setError("Product not found with id: "
+                        + result.getId());
+            }
+        }
+    }
+
+    /**
+     * Look up the owners of every product referenced by the chunk in
+     * one $in query.
+     *
+     * @param chunk the items
+     * @return product ID to owning user ID, for products that exist
+     */
+    private Map<String, String> findOwners(final List<ProductRequest> chunk) {
+        Set<String> ids = chunk.stream()
+                .map(ProductRequest::getId)
+                .filter(id -> id != null && ObjectId.isValid(id))
+                .collect(Collectors.toSet());
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        Query query = new Query(Criteria.where("_id").in(ids));
+        query.fields().include("userId");
+        return mongoTemplate.find(query, Product.class).stream()
+                .collect(Collectors.toMap(Product::getId, Product::getUserId));
+    }
+
+    /**
+     * Validate an item against the ProductRequest constraints.
+     *
+     * @param request the item
+     * @return joined violation messages, or null if the item is valid
+     */
+    private String validate(final ProductRequest request) {
+        if (request == null) {
+            return "Product is required";
+        }
+        Set<ConstraintViolation<ProductRequest>> violations =
+                validator.validate(request);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    /**
+     * Build a result entry.
+     *
+     * @param index  position in the request
+     * @param id     product ID
+     * @param status outcome
+     * @param error  error message, or null
+     * @return the result
+     */
+    private static BulkProductResult result(
+            final int index,
+            final String id,
+            final BulkProductResult.Status status,
+            final String error) {
+        return BulkProductResult.builder()
+                .index(index)
+                .id(id)
+                .status(status)
+                .error(error)
+                .build();
+    }
+
+    /**
+     * Count results with a given status.
+     *
+     * @param results the results
+     * @param status  the status to count
+     * @return the count
+     */
+    private static int count(
+            final List<BulkProductResult> results,
+            final BulkProductResult.Status status) {
+        return (int) results.stream()
+                .filter(r -> r.getStatus() == status)
+                .count();
+    }
+}
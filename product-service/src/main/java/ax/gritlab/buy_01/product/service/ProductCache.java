@@ -0,0 +1,214 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.dto.ProductResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of product responses keyed by product id.
+ * Invalidations are applied locally and broadcast on the
+ * {@value #INVALIDATION_TOPIC} topic so every replica drops its copy.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public final class ProductCache {
+
+    /**
+     * Kafka topic carrying ids of products whose cached copy is stale.
+     */
+    public static final String INVALIDATION_TOPIC = "product.invalidated";
+
+    /**
+     * Kafka template for broadcasting invalidations.
+     */
+    private final KafkaTemplate<String, String> kafkaTemplate;
+
+    /**
+     * Registry for cache metrics.
+     */
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Maximum number of cached products.
+     */
+    @Value("${products.cache.max-size:10000}")
+    private int maxSize;
+
+    /**
+     * Access-ordered entries; guarded by its own monitor.
+     */
+    private Map<String, ProductResponse> entries;
+
+    /**
+     * Bumped on every invalidation, so a read that started before an
+     * invalidation cannot put its stale result back into the cache.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Cache hit counter.
+     */
+    private Counter hits;
+
+    /**
+     * Cache miss counter.
+     */
+    private Counter misses;
+
+    /**
+     * Entries dropped to stay within the size bound.
+     */
+    private Counter sizeEvictions;
+
+    /**
+     * Entries dropped because the product changed.
+     */
+    private Counter invalidations;
+
+    /**
+     * Create the backing map and register metrics.
+     */
+    @PostConstruct
+    public void init() {
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, ProductResponse> eldest) {
+                boolean evict = size() > maxSize;
+                if (evict) {
+                    sizeEvictions.increment();
+                }
+                return evict;
+            }
+        };
+        hits = Counter.builder("product.cache.requests")
+                .tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("product.cache.requests")
+                .tag("result", "miss").register(meterRegistry);
+        sizeEvictions = Counter.builder("product.cache.evictions")
+                .tag("cause", "size").register(meterRegistry);
+        invalidations = Counter.builder("product.cache.evictions")
+                .tag("cause", "invalidation").register(meterRegistry);
+        meterRegistry.gauge("product.cache.size", entries, m -> {
+            synchronized (m) {
+                return m.size();
+            }
+        });
+    }
+
+    /**
+     * Look up a cached product.
+     *
+     * @param productId the product ID
+     * @return the cached response, or null on a miss
+     */
+    public ProductResponse get(final String productId) {
+        ProductResponse cached;
+        synchronized (entries) {
+            cached = entries.get(productId);
+        }
+        if (cached != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return cached;
+    }
+
+    /**
+     * Current invalidation generation. Take it before reading from the
+     * database and pass it to {@link #put}.
+     *
+     * @return the generation
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Cache a product unless anything was invalidated since the caller
+     * read it.
+     *
+     * @param productId      the product ID
+     * @param response       the product response
+     * @param readGeneration generation taken before the database read
+     */
+    public void put(
+            final String productId,
+            final ProductResponse response,
+            final long readGeneration) {
+        synchronized (entries) {
+            if (generation.get() == readGeneration) {
+                entries.put(productId, response);
+            }
+        }
+    }
+
+    /**
+     * Drop a product here and on every other replica.
+     *
+     * @param productId the product ID
+     */
+    public void evict(final String productId) {
+        evictLocal(productId);
+        kafkaTemplate.send(INVALIDATION_TOPIC, productId, productId);
+    }
+
+    /**
+     * Drop products here and on every other replica with a single
+     * broadcast.
+     *
+     * @param productIds the product IDs
+     */
+    public void evictAll(final Collection<String> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        productIds.forEach(this::evictLocal);
+        String ids = String.join(",", productIds);
+        kafkaTemplate.send(INVALIDATION_TOPIC, ids, ids);
+    }
+
+    /**
+     * Drop a product from this replica only.
+     *
+     * @param productId the product ID
+     */
+    public void evictLocal(final String productId) {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            if (entries.remove(productId) != null) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Apply invalidations published by any replica, including this one.
+     * Each instance joins its own consumer group so it sees every message.
+     *
+     * @param productIds one product ID, or several separated by commas
+     */
+    @KafkaListener(topics = INVALIDATION_TOPIC,
+            groupId = "product-cache-#{T(java.util.UUID).randomUUID()}",
+            properties = "auto.offset.reset=latest")
+    public void onInvalidation(final String productIds) {
+        log.debug("Invalidating cached products {}", productIds);
+        for (String productId : productIds.split(",")) {
+            evictLocal(productId);
+        }
+    }
+}
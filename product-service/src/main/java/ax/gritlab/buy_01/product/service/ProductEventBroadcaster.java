@@ -0,0 +1,245 @@
+package ax.gritlab.buy_01.product.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fans product events out to Server-Sent Events subscribers.
+ * Each subscriber has a bounded queue drained by a small shared pool,
+ * so a publisher never blocks on a client. A subscriber whose queue
+ * fills up is disconnected; the client reconnects and catches up
+ * through the change feed.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public final class ProductEventBroadcaster {
+
+    /**
+     * Registry for stream metrics.
+     */
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Maximum concurrent subscribers on this instance.
+     */
+    @Value("${products.stream.max-connections:1000}")
+    private int maxConnections;
+
+    /**
+     * Events buffered per subscriber before it counts as too slow.
+     */
+    @Value("${products.stream.buffer-size:256}")
+    private int bufferSize;
+
+    /**
+     * Threads writing events to subscribers.
+     */
+    @Value("${products.stream.sender-threads:4}")
+    private int senderThreads;
+
+    /**
+     * Lifetime of a connection; clients reconnect after it.
+     */
+    @Value("${products.stream.timeout:PT30M}")
+    private Duration timeout;
+
+    /**
+     * Connected subscribers.
+     */
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Pool draining subscriber queues.
+     */
+    private ExecutorService sender;
+
+    /**
+     * Subscribers disconnected for falling behind.
+     */
+    private Counter slowConsumers;
+
+    /**
+     * Connections refused because the limit was reached.
+     */
+    private Counter rejected;
+
+    /**
+     * Start the sender pool and register metrics.
+     */
+    @PostConstruct
+    public void init() {
+        sender = Executors.newFixedThreadPool(senderThreads);
+        slowConsumers = Counter.builder("product.stream.disconnects")
+                .tag("cause", "slow").register(meterRegistry);
+        rejected = Counter.builder("product.stream.rejected")
+                .register(meterRegistry);
+        meterRegistry.gauge("product.stream.connections", subscribers,
+                Set::size);
+    }
+
+    /**
+     * Close every stream and stop the sender pool.
+     */
+    @PreDestroy
+    public void shutdown() {
+        subscribers.forEach(s -> s.emitter.complete());
+        sender.shutdownNow();
+    }
+
+    /**
+     * Open a stream for a new subscriber.
+     *
+     * @return the emitter, or null if the connection limit is reached
+     */
+    public SseEmitter subscribe() {
+        if (subscribers.size() >= maxConnections) {
+            rejected.increment();
+            return null;
+        }
+        Subscriber subscriber = new Subscriber(
+                new SseEmitter(timeout.toMillis()), bufferSize);
+        subscriber.emitter.onCompletion(() -> subscribers.remove(subscriber));
+        subscriber.emitter.onTimeout(() -> subscribers.remove(subscriber));
+        subscriber.emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        return subscriber.emitter;
+    }
+
+    /**
+     * Send an event to every subscriber.
+     * The event is serialized once and shared by all queues.
+     *
+     * @param type event name
+     * @param json event data
+     */
+    public void broadcast(final String type, final String json) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        try {
+            offerAll(SseEmitter.event().name(type)
+                    .data(json, MediaType.APPLICATION_JSON).build());
+        } catch (RuntimeException e) {
+            log.warn("Failed to broadcast {} event", type, e);
+        }
+    }
+
+    /**
+     * Keep idle connections open through proxies.
+     */
+    @Scheduled(fixedRateString = "${products.stream.heartbeat:PT15S}")
+    public void heartbeat() {
+        if (!subscribers.isEmpty()) {
+            offerAll(SseEmitter.event().comment("heartbeat").build());
+        }
+    }
+
+    /**
+     * Queue an event for every subscriber.
+     *
+     * @param event the serialized event
+     */
+    private void offerAll(final Set<DataWithMediaType> event) {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(event);
+        }
+    }
+
+    /**
+     * One connected client.
+     */
+    private final class Subscriber {
+
+        /**
+         * The client's stream.
+         */
+        private final SseEmitter emitter;
+
+        /**
+         * Events not yet written to the client.
+         */
+        private final BlockingQueue<Set<DataWithMediaType>> queue;
+
+        /**
+         * Whether a drain task is queued or running.
+         */
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        /**
+         * Create a subscriber.
+         *
+         * @param emitter  the client's stream
+         * @param capacity queue capacity
+         */
+        Subscriber(final SseEmitter emitter, final int capacity) {
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        /**
+         * Queue an event, disconnecting the client if its queue is full.
+         *
+         * @param event the event
+         */
+        void offer(final Set<DataWithMediaType> event) {
+            if (!queue.offer(event)) {
+                if (subscribers.remove(this)) {
+                    slowConsumers.increment();
+                    emitter.complete();
+                }
+                return;
+            }
+            scheduleDrain();
+        }
+
+        /**
+         * Start a drain task unless one is already pending.
+         */
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        /**
+         * Write queued events until the queue is empty.
+         */
+        private void drain() {
+            try {
+                Set<DataWithMediaType> event;
+                while ((event = queue.poll()) != null) {
+                    emitter.send(event);
+                }
+            } catch (IOException | IllegalStateException e) {
+                subscribers.remove(this);
+                queue.clear();
+            } finally {
+                draining.set(false);
+            }
+            if (!queue.isEmpty() && subscribers.contains(this)) {
+                scheduleDrain();
+            }
+        }
+    }
+}
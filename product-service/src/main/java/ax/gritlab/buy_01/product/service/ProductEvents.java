@@ -0,0 +1,264 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.dto.ProductResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Publishes product change events for live streams.
+ * Events go through the {@value #EVENTS_TOPIC} topic so subscribers on
+ * every replica see changes made on any of them. Every event also
+ * updates each replica's search index, and every event but a stock
+ * change invalidates its cached facet counts; stock buckets catch up
+ * when the facet TTL passes. The publishing replica applies its own
+ * events before sending them, so a failed send cannot leave it stale,
+ * and skips them when they come back from the topic.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public final class ProductEvents {
+
+    /**
+     * Kafka topic carrying product change events.
+     */
+    public static final String EVENTS_TOPIC = "product.events";
+
+    /**
+     * Event type for a new product.
+     */
+    public static final String CREATED = "created";
+
+    /**
+     * Event type for a changed product.
+     */
+    public static final String UPDATED = "updated";
+
+    /**
+     * Event type for a deleted product.
+     */
+    public static final String DELETED = "deleted";
+
+    /**
+     * Event type for a stock level change.
+     */
+    public static final String STOCK = "stock";
+
+    /**
+     * Identifies events published by this replica.
+     */
+    private final String origin = UUID.randomUUID().toString();
+
+    /**
+     * Kafka template for publishing.
+     */
+    private final KafkaTemplate<String, String> kafkaTemplate;
+
+    /**
+     * Object mapper for event payloads.
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Local stream fan-out.
+     */
+    private final ProductEventBroadcaster broadcaster;
+
+    /**
+     * Facet counts to invalidate on change.
+     */
+    private final ProductFacetService facets;
+
+    /**
+     * Search index to keep current.
+     */
+    private final ProductSearchIndex searchIndex;
+
+    /**
+     * Publish a created or updated product with its new state.
+     *
+     * @param type    {@link #CREATED} or {@link #UPDATED}
+     * @param product the product
+     */
+    public void changed(final String type, final ProductResponse product) {
+        ObjectNode node = event(type, product.getId());
+        node.set("product", objectMapper.valueToTree(product));
+        send(product.getId(), node);
+    }
+
+    /**
+     * Publish a change without the new state; clients refetch.
+     *
+     * @param type      the event type
+     * @param productId the product ID
+     */
+    public void changed(final String type, final String productId) {
+        send(productId, event(type, productId));
+    }
+
+    /**
+     * Publish one change for many products without their new state;
+     * the event carries an "ids" array instead of "id".
+     *
+     * @param type       the event type
+     * @param productIds the product IDs
+     */
+    public void changed(final String type, final List<String> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("type", type);
+        productIds.forEach(node.putArray("ids")::add);
+        send(productIds.get(0), node);
+    }
+
+    /**
+     * Publish a new stock level.
+     *
+     * @param productId the product ID
+     * @param stock     the stock left
+     */
+    public void stock(final String productId, final int stock) {
+        ObjectNode node = event(STOCK, productId);
+        node.put("stock", stock);
+        send(productId, node);
+    }
+
+    /**
+     * Publish new stock levels for many products in one event; the
+     * event carries an "ids" array and a "stock" object by product ID.
+     *
+     * @param levels product ID to stock left
+     */
+    public void stock(final Map<String, Integer> levels) {
+        if (levels.isEmpty()) {
+            return;
+        }
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("type", STOCK);
+        ArrayNode ids = node.putArray("ids");
+        ObjectNode stock = node.putObject("stock");
+        levels.forEach((id, level) -> {
+            ids.add(id);
+            stock.put(id, level);
+        });
+        send(levels.keySet().iterator().next(), node);
+    }
+
+    /**
+     * Forward events from any replica to this replica's subscribers.
+     * Each instance joins its own consumer group so it sees every event.
+     *
+     * @param message the event JSON
+     */
+    @KafkaListener(topics = EVENTS_TOPIC,
+            groupId = "product-events-#{T(java.util.UUID).randomUUID()}",
+            properties = "auto.offset.reset=latest")
+    public void onEvent(final String message) {
+        try {
+            JsonNode node = objectMapper.readTree(message);
+            String type = node.path("type").asText();
+            if (!origin.equals(node.path("origin").asText())) {
+                apply(type, node);
+            }
+            broadcaster.broadcast(type, message);
+        } catch (JsonProcessingException e) {
+            log.warn("Ignoring malformed product event: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Apply an event to this replica's facet cache and search index.
+     *
+     * @param type the event type
+     * @param node the event
+     */
+    private void apply(final String type, final JsonNode node) {
+        if (!STOCK.equals(type)) {
+            facets.invalidate();
+        }
+        try {
+            updateSearchIndex(type, node);
+        } catch (RuntimeException e) {
+            log.warn("Failed to update search index for {} event", type, e);
+        }
+    }
+
+    /**
+     * Apply an event to the search index. Events carrying the product
+     * are indexed from the payload; others are re-read.
+     *
+     * @param type the event type
+     * @param node the event
+     */
+    private void updateSearchIndex(final String type, final JsonNode node) {
+        List<String> ids = new ArrayList<>();
+        if (node.hasNonNull("id")) {
+            ids.add(node.get("id").asText());
+        }
+        node.path("ids").forEach(id -> ids.add(id.asText()));
+
+        switch (type) {
+            case DELETED -> ids.forEach(searchIndex::remove);
+            case CREATED, UPDATED -> {
+                JsonNode product = node.path("product");
+                if (product.hasNonNull("id")) {
+                    searchIndex.index(product.get("id").asText(),
+                            product.path("name").asText(null),
+                            product.path("description").asText(null));
+                } else {
+                    searchIndex.refresh(ids);
+                }
+            }
+            default -> {
+                // Stock changes do not touch indexed text
+            }
+        }
+    }
+
+    /**
+     * Start an event payload.
+     *
+     * @param type      the event type
+     * @param productId the product ID
+     * @return the payload
+     */
+    private ObjectNode event(final String type, final String productId) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("type", type);
+        node.put("id", productId);
+        return node;
+    }
+
+    /**
+     * Send an event keyed by product, so events for one product stay
+     * in order.
+     *
+     * @param productId the product ID
+     * @param node      the payload
+     */
+    private void send(final String productId, final ObjectNode node) {
+        node.put("origin", origin);
+        apply(node.path("type").asText(), node);
+        try {
+            kafkaTemplate.send(EVENTS_TOPIC, productId,
+                    objectMapper.writeValueAsString(node));
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("Failed to publish product event for {}", productId, e);
+        }
+    }
+}
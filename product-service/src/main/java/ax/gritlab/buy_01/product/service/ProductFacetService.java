@@ -0,0 +1,279 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.dto.ProductFacetsResponse;
+import ax.gritlab.buy_01.product.model.Product;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service computing facet counts for the storefront filter sidebar.
+ * All counts come from one $facet aggregation. The result is cached
+ * until a product changes or the TTL passes, and concurrent misses
+ * share a single aggregation. A result is kept for a minimum age even
+ * when products change, so a burst of writes costs one aggregation per
+ * interval rather than one per request.
+ */
+@Service
+@RequiredArgsConstructor
+public final class ProductFacetService {
+
+    /**
+     * $bucket id for values below the first boundary, missing or not
+     * numeric.
+     */
+    private static final String OTHER_BUCKET = "other";
+
+    /**
+     * Mongo template for the aggregation.
+     */
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Ascending lower bounds of the price buckets.
+     */
+    @Value("${products.facets.price-boundaries:0,10,25,50,100,250,500,1000}")
+    private double[] priceBoundaries;
+
+    /**
+     * Ascending lower bounds of the stock buckets.
+     */
+    @Value("${products.facets.stock-boundaries:0,1,10}")
+    private double[] stockBoundaries;
+
+    /**
+     * Maximum number of sellers listed.
+     */
+    @Value("${products.facets.max-sellers:50}")
+    private int maxSellers;
+
+    /**
+     * Longest time a result is served without recomputing.
+     */
+    @Value("${products.facets.ttl:PT30S}")
+    private Duration ttl;
+
+    /**
+     * Shortest time a result is served, even after product changes.
+     */
+    @Value("${products.facets.min-age:PT2S}")
+    private Duration minAge;
+
+    /**
+     * Bumped by every product change.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Last computed result, or null.
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * A computed result and when it stops being fresh.
+     *
+     * @param response   the counts
+     * @param generation change generation the aggregation started at
+     * @param computedAt System.nanoTime() when the aggregation started
+     * @param expiresAt  System.nanoTime() deadline
+     */
+    private record Snapshot(
+            ProductFacetsResponse response,
+            long generation,
+            long computedAt,
+            long expiresAt) {
+    }
+
+    /**
+     * Get facet counts, computing them if the cached result is stale.
+     *
+     * @return the counts
+     */
+    public ProductFacetsResponse getFacets() {
+        Snapshot current = snapshot;
+        if (isFresh(current)) {
+            return current.response();
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (isFresh(current)) {
+                return current.response();
+            }
+            long started = generation.get();
+            long startedAt = System.nanoTime();
+            ProductFacetsResponse response = aggregate();
+            snapshot = new Snapshot(response, started, startedAt,
+                    startedAt + ttl.toNanos());
+            return response;
+        }
+    }
+
+    /**
+     * Mark the cached result stale after a product change.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Whether a snapshot can still be served.
+     *
+     * @param candidate the snapshot, may be null
+     * @return true if the TTL has not passed and either no product
+     *         changed since or the snapshot is younger than the minimum
+     *         age
+     */
+    private boolean isFresh(final Snapshot candidate) {
+        if (candidate == null) {
+            return false;
+        }
+        long now = System.nanoTime();
+        return now - candidate.expiresAt() < 0
+                && (candidate.generation() == generation.get()
+                        || now - candidate.computedAt() < minAge.toNanos());
+    }
+
+    /**
+     * Run the $facet aggregation.
+     *
+     * @return the counts
+     */
+    private ProductFacetsResponse aggregate() {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.facet(bucket("price", priceBoundaries))
+                        .as("price")
+                        .and(bucket("quantity", stockBoundaries))
+                        .as("stock")
+                        .and(Aggregation.sortByCount("userId"),
+                                Aggregation.limit(maxSellers))
+                        .as("sellers")
+                        .and(Aggregation.count().as("total"))
+                        .as("total"));
+        Document result = mongoTemplate.aggregate(aggregation,
+                Product.class, Document.class).getUniqueMappedResult();
+        if (result == null) {
+            result = new Document();
+        }
+
+        List<ProductFacetsResponse.Seller> sellers = new ArrayList<>();
+        for (Document seller : result.getList("sellers", Document.class,
+                List.of())) {
+            if (seller.get("_id") != null) {
+                sellers.add(new ProductFacetsResponse.Seller(
+                        seller.get("_id").toString(), count(seller)));
+            }
+        }
+        List<Document> total = result.getList("total", Document.class,
+                List.of());
+
+        return ProductFacetsResponse.builder()
+                .total(total.isEmpty() ? 0 : total.get(0)
+                        .get("total", Number.class).longValue())
+                .price(buckets(result, "price", priceBoundaries))
+                .priceOther(other(result, "price"))
+                .stock(buckets(result, "stock", stockBoundaries))
+                .stockOther(other(result, "stock"))
+                .sellers(sellers)
+                .computedAt(ProductOutbox.now())
+                .build();
+    }
+
+    /**
+     * Build a $bucket stage. An infinite upper boundary closes the last
+     * range, so only values below the first boundary, missing or not
+     * numeric land in the default bucket.
+     *
+     * @param field      the field to bucket
+     * @param boundaries ascending lower bounds
+     * @return the stage
+     */
+    static AggregationOperation bucket(
+            final String field,
+            final double[] boundaries) {
+        Object[] bounds = new Object[boundaries.length + 1];
+        for (int i = 0; i < boundaries.length; i++) {
+            bounds[i] = boundaries[i];
+        }
+        bounds[boundaries.length] = Double.POSITIVE_INFINITY;
+        return Aggregation.bucket(field)
+                .withBoundaries(bounds)
+                .withDefaultBucket(OTHER_BUCKET)
+                .andOutputCount().as("count");
+    }
+
+    /**
+     * Turn $bucket output into one entry per range, including empty
+     * ranges, which $bucket leaves out.
+     *
+     * @param result     the aggregation result
+     * @param facet      the facet name
+     * @param boundaries ascending lower bounds
+     * @return the buckets in ascending order
+     */
+    static List<ProductFacetsResponse.Bucket> buckets(
+            final Document result,
+            final String facet,
+            final double[] boundaries) {
+        Map<Object, Long> counts = counts(result, facet);
+        List<ProductFacetsResponse.Bucket> buckets = new ArrayList<>();
+        for (int i = 0; i < boundaries.length; i++) {
+            buckets.add(new ProductFacetsResponse.Bucket(boundaries[i],
+                    i + 1 < boundaries.length ? boundaries[i + 1] : null,
+                    counts.getOrDefault(boundaries[i], 0L)));
+        }
+        return buckets;
+    }
+
+    /**
+     * Read the count of values outside every range.
+     *
+     * @param result the aggregation result
+     * @param facet  the facet name
+     * @return the count of the default bucket
+     */
+    static long other(final Document result, final String facet) {
+        return counts(result, facet).getOrDefault(OTHER_BUCKET, 0L);
+    }
+
+    /**
+     * Index $bucket output by bucket id, numbers as doubles.
+     *
+     * @param result the aggregation result
+     * @param facet  the facet name
+     * @return count per bucket id
+     */
+    private static Map<Object, Long> counts(
+            final Document result,
+            final String facet) {
+        Map<Object, Long> counts = new HashMap<>();
+        for (Document bucket : result.getList(facet, Document.class,
+                List.of())) {
+            Object id = bucket.get("_id");
+            counts.put(id instanceof Number n ? (Object) n.doubleValue() : id,
+                    count(bucket));
+        }
+        return counts;
+    }
+
+    /**
+     * Read the count of a grouped document.
+     *
+     * @param document the document
+     * @return its count
+     */
+    private static long count(final Document document) {
+        Number count = document.get("count", Number.class);
+        return count == null ? 0 : count.longValue();
+    }
+}
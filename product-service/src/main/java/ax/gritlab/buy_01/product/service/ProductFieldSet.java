@@ -0,0 +1,148 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.dto.ProductResponse;
+import org.springframework.data.mongodb.core.query.Field;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Sparse fieldset requested through the {@code fields} parameter.
+ * Maps response properties to the document fields they are built
+ * from, so the same selection drives both the Mongo projection and
+ * the trimmed response. The id is always included.
+ */
+public final class ProductFieldSet {
+
+    /**
+     * Document fields needed for each response property.
+     */
+    private static final Map<String, String> DOCUMENT_FIELDS;
+
+    static {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("id", "_id");
+        fields.put("name", "name");
+        fields.put("description", "description");
+        fields.put("price", "price");
+        fields.put("stock", "quantity");
+        fields.put("sellerId", "userId");
+        fields.put("mediaIds", "mediaIds");
+        fields.put("imageUrls", "mediaIds");
+        fields.put("imageUrl", "mediaIds");
+        fields.put("viewCount", "viewCount");
+        fields.put("createdAt", "createdAt");
+        fields.put("updatedAt", "updatedAt");
+        DOCUMENT_FIELDS = fields;
+    }
+
+    /**
+     * Requested response properties.
+     */
+    private final Set<String> properties;
+
+    private ProductFieldSet(final Set<String> properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Parse a comma-separated {@code fields} parameter.
+     *
+     * @param fields e.g. {@code name,price,imageUrl}
+     * @return the fieldset, or null when all fields are wanted
+     */
+    public static ProductFieldSet parse(final String fields) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+        Set<String> properties = new LinkedHashSet<>();
+        properties.add("id");
+        for (String name : fields.split(",")) {
+            String property = name.trim();
+            if (property.isEmpty()) {
+                continue;
+            }
+            if (!DOCUMENT_FIELDS.containsKey(property)) {
+                throw new IllegalArgumentException("Unknown field: "
+                        + property + " (allowed: "
+                        + String.join(", ", DOCUMENT_FIELDS.keySet()) + ")");
+            }
+            properties.add(property);
+        }
+        return new ProductFieldSet(properties);
+    }
+
+    /**
+     * Restrict a query to the document fields this fieldset needs.
+     * When only the first image is wanted, the media array is sliced
+     * to one element in the database.
+     *
+     * @param query     the query to project
+     * @param alsoLoad  extra document fields the caller needs, such as
+     *                  the sort field for a page cursor
+     */
+    void project(final Query query, final String... alsoLoad) {
+        Field projection = query.fields();
+        Set<String> documentFields = properties.stream()
+                .filter(p -> !"imageUrl".equals(p))
+                .map(DOCUMENT_FIELDS::get)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        documentFields.addAll(Arrays.asList(alsoLoad));
+        documentFields.forEach(projection::include);
+        if (properties.contains("imageUrl")
+                && !documentFields.contains("mediaIds")) {
+            projection.slice("mediaIds", 1);
+        }
+    }
+
+    /**
+     * Copy only the requested properties of a response.
+     * The source is left untouched, so cached responses can be trimmed.
+     *
+     * @param full the complete response
+     * @return a response with unrequested properties left null
+     */
+    ProductResponse trim(final ProductResponse full) {
+        ProductResponse.ProductResponseBuilder builder =
+                ProductResponse.builder().id(full.getId());
+        if (properties.contains("name")) {
+            builder.name(full.getName());
+        }
+        if (properties.contains("description")) {
+            builder.description(full.getDescription());
+        }
+        if (properties.contains("price")) {
+            builder.price(full.getPrice());
+        }
+        if (properties.contains("stock")) {
+            builder.stock(full.getStock());
+        }
+        if (properties.contains("sellerId")) {
+            builder.sellerId(full.getSellerId());
+        }
+        if (properties.contains("mediaIds")) {
+            builder.mediaIds(full.getMediaIds());
+        }
+        if (properties.contains("imageUrls")) {
+            builder.imageUrls(full.getImageUrls());
+        }
+        if (properties.contains("imageUrl")) {
+            builder.imageUrl(full.getImageUrl());
+        }
+        if (properties.contains("viewCount")) {
+            builder.viewCount(full.getViewCount());
+        }
+        if (properties.contains("createdAt")) {
+            builder.createdAt(full.getCreatedAt());
+        }
+        if (properties.contains("updatedAt")) {
+            builder.updatedAt(full.getUpdatedAt());
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,350 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.dto.ProductRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Incremental reader of CSV or NDJSON product rows.
+ * Holds at most one record in memory; records longer than
+ * {@link #MAX_RECORD_LENGTH} are skipped and reported as row errors.
+ */
+final class ProductImportReader {
+
+    /**
+     * Supported upload formats.
+     */
+    enum Format {
+        /**
+         * Comma-separated values with a header row naming the columns.
+         */
+        CSV,
+        /**
+         * One JSON ProductRequest object per line.
+         */
+        NDJSON
+    }
+
+    /**
+     * A parsed data row.
+     *
+     * @param number  data row number, starting at 1
+     * @param request the parsed product, or null if unparseable
+     * @param error   the parse error, or null
+     */
+    record Row(long number, ProductRequest request, String error) {
+    }
+
+    /**
+     * Longest record accepted, in characters.
+     */
+    static final int MAX_RECORD_LENGTH = 64 * 1024;
+
+    /**
+     * Columns a CSV header must contain.
+     */
+    private static final List<String> REQUIRED_COLUMNS =
+            List.of("name", "price", "quantity");
+
+    /**
+     * The upload.
+     */
+    private final Reader in;
+
+    /**
+     * Format of the upload.
+     */
+    private final Format format;
+
+    /**
+     * Parser for NDJSON rows.
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * CSV column positions by lower-case name.
+     */
+    private Map<String, Integer> columns;
+
+    /**
+     * Number of the last row returned.
+     */
+    private long rowNumber;
+
+    /**
+     * Character pushed back by the CSV parser, or -2 if none.
+     */
+    private int pushedBack = -2;
+
+    /**
+     * Whether the end of input was reached.
+     */
+    private boolean eof;
+
+    /**
+     * Create a reader.
+     *
+     * @param in           the upload, ideally buffered
+     * @param format       the upload format
+     * @param objectMapper parser for NDJSON rows
+     */
+    ProductImportReader(final Reader in, final Format format,
+            final ObjectMapper objectMapper) {
+        this.in = in;
+        this.format = format;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Read the next data row, skipping blank lines.
+     *
+     * @return the row, or null at the end of input
+     * @throws IOException if reading fails or the CSV header is invalid
+     */
+    Row next() throws IOException {
+        if (format == Format.CSV && columns == null) {
+            readHeader();
+        }
+        while (!eof) {
+            List<String> fields = new ArrayList<>();
+            boolean tooLong = format == Format.CSV
+                    ? !readCsvRecord(fields)
+                    : !readLine(fields);
+            if (!tooLong && isBlank(fields)) {
+                continue;
+            }
+            rowNumber++;
+            if (tooLong) {
+                return new Row(rowNumber, null, "Row is longer than "
+                        + MAX_RECORD_LENGTH + " characters");
+            }
+            return format == Format.CSV
+                    ? parseCsv(fields)
+                    : parseJson(fields.get(0));
+        }
+        return null;
+    }
+
+    /**
+     * Skip rows without parsing them, for resuming an import.
+     *
+     * @param rows number of data rows to skip
+     * @return the number of rows actually skipped
+     * @throws IOException if reading fails
+     */
+    long skip(final long rows) throws IOException {
+        if (format == Format.CSV && columns == null) {
+            readHeader();
+        }
+        long skipped = 0;
+        while (skipped < rows && !eof) {
+            List<String> fields = new ArrayList<>();
+            boolean tooLong = format == Format.CSV
+                    ? !readCsvRecord(fields)
+                    : !readLine(fields);
+            if (tooLong || !isBlank(fields)) {
+                rowNumber++;
+                skipped++;
+            }
+        }
+        return skipped;
+    }
+
+    /**
+     * Read and check the CSV header.
+     *
+     * @throws IOException if reading fails or columns are missing
+     */
+    private void readHeader() throws IOException {
+        List<String> header = new ArrayList<>();
+        if (!readCsvRecord(header) || isBlank(header)) {
+            throw new IllegalArgumentException("CSV header row is missing");
+        }
+        columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (String column : REQUIRED_COLUMNS) {
+            if (!columns.containsKey(column)) {
+                throw new IllegalArgumentException(
+                        "CSV header is missing column: " + column);
+            }
+        }
+    }
+
+    /**
+     * Map CSV fields onto a product.
+     *
+     * @param fields the record's fields
+     * @return the row
+     */
+    private Row parseCsv(final List<String> fields) {
+        try {
+            ProductRequest request = new ProductRequest();
+            request.setName(field(fields, "name"));
+            request.setDescription(field(fields, "description"));
+            String price = field(fields, "price");
+            request.setPrice(price == null ? null : Double.valueOf(price));
+            String quantity = field(fields, "quantity");
+            request.setQuantity(quantity == null
+                    ? null : Integer.valueOf(quantity));
+            return new Row(rowNumber, request, null);
+        } catch (NumberFormatException e) {
+            return new Row(rowNumber, null,
+                    "Invalid number: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get a CSV column's trimmed value.
+     *
+     * @param fields the record's fields
+     * @param column the column name
+     * @return the value, or null if absent or empty
+     */
+    private String field(final List<String> fields, final String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Parse an NDJSON line.
+     *
+     * @param line the line
+     * @return the row
+     */
+    private Row parseJson(final String line) {
+        try {
+            return new Row(rowNumber,
+                    objectMapper.readValue(line, ProductRequest.class), null);
+        } catch (JsonProcessingException e) {
+            return new Row(rowNumber, null,
+                    "Invalid JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    /**
+     * Read one line as a single field.
+     *
+     * @param fields receives the line
+     * @return false if the line was too long and was skipped
+     * @throws IOException if reading fails
+     */
+    private boolean readLine(final List<String> fields) throws IOException {
+        StringBuilder line = new StringBuilder();
+        boolean tooLong = false;
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (line.length() < MAX_RECORD_LENGTH) {
+                line.append((char) c);
+            } else {
+                tooLong = true;
+            }
+        }
+        eof = c == -1;
+        fields.add(line.toString().strip());
+        return !tooLong;
+    }
+
+    /**
+     * Read one RFC 4180 record; quoted fields may span lines.
+     *
+     * @param fields receives the fields
+     * @return false if the record was too long and was skipped
+     * @throws IOException if reading fails
+     */
+    private boolean readCsvRecord(final List<String> fields)
+            throws IOException {
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int length = 0;
+        int c;
+        while ((c = read()) != -1) {
+            if (++length > MAX_RECORD_LENGTH) {
+                skipRecord(quoted);
+                return false;
+            }
+            if (quoted) {
+                if (c == '"') {
+                    int next = read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        pushedBack = next;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+        eof = c == -1;
+        fields.add(field.toString());
+        return true;
+    }
+
+    /**
+     * Discard the rest of an overlong record.
+     *
+     * @param quoted whether the record is inside a quoted field
+     * @throws IOException if reading fails
+     */
+    private void skipRecord(final boolean quoted) throws IOException {
+        boolean inQuotes = quoted;
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '"') {
+                inQuotes = !inQuotes;
+            } else if (c == '\n' && !inQuotes) {
+                return;
+            }
+        }
+        eof = true;
+    }
+
+    /**
+     * Read a character, honouring a pushed-back one.
+     *
+     * @return the character, or -1 at the end of input
+     * @throws IOException if reading fails
+     */
+    private int read() throws IOException {
+        if (pushedBack != -2) {
+            int c = pushedBack;
+            pushedBack = -2;
+            return c;
+        }
+        return in.read();
+    }
+
+    /**
+     * Whether a record has no content.
+     *
+     * @param fields the record's fields
+     * @return true for an empty line
+     */
+    private static boolean isBlank(final List<String> fields) {
+        return fields.size() == 1 && fields.get(0).isBlank();
+    }
+}
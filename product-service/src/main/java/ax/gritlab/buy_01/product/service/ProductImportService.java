@@ -0,0 +1,394 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.dto.ProductRequest;
+import ax.gritlab.buy_01.product.exception.ConflictException;
+import ax.gritlab.buy_01.product.exception.ResourceNotFoundException;
+import ax.gritlab.buy_01.product.exception.UnauthorizedException;
+import ax.gritlab.buy_01.product.model.Product;
+import ax.gritlab.buy_01.product.model.ProductImport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Service for streaming product imports.
+ * Rows are parsed one at a time from the request body and written in
+ * unordered bulk chunks, so memory stays bounded by the chunk size and
+ * a slow database slows down reading the upload instead of buffering
+ * it. Progress is saved after every chunk. Every product records its
+ * import and row under a unique index, so a chunk that was written but
+ * not recorded is recognised by its duplicate keys when resumed.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public final class ProductImportService {
+
+    /**
+     * Rows written per bulk operation and progress update.
+     */
+    private static final int CHUNK_SIZE = 1000;
+
+    /**
+     * Row errors kept in the import document.
+     */
+    private static final int MAX_STORED_ERRORS = 1000;
+
+    /**
+     * Mongo error code for a duplicate key.
+     */
+    private static final int DUPLICATE_KEY = 11000;
+
+    /**
+     * Accepted client-chosen import ids.
+     */
+    private static final Pattern IMPORT_ID = Pattern.compile(
+            "[A-Za-z0-9_-]{1,64}");
+
+    /**
+     * Read buffer size for the upload.
+     */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Mongo template for bulk writes and progress.
+     */
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Bean validator for rows.
+     */
+    private final Validator validator;
+
+    /**
+     * Parser for NDJSON rows.
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Live change events for stream subscribers.
+     */
+    private final ProductEvents productEvents;
+
+    /**
+     * A running import without progress for this long is taken over by
+     * a new upload.
+     */
+    @Value("${products.import.lease-timeout:PT5M}")
+    private Duration leaseTimeout;
+
+    /**
+     * Import products from a CSV or NDJSON upload, or resume an
+     * interrupted import with the same id.
+     *
+     * @param importId    the import ID, or null to start a new import
+     * @param contentType the upload's content type
+     * @param body        the upload
+     * @param userId      the seller's user ID
+     * @return the import's progress when the upload ends
+     */
+    public ProductImport importProducts(
+            final String importId,
+            final String contentType,
+            final InputStream body,
+            final String userId) {
+        ProductImportReader.Format format = format(contentType);
+        String id = importId == null ? new ObjectId().toHexString() : importId;
+        if (!IMPORT_ID.matcher(id).matches()) {
+            throw new IllegalArgumentException("Invalid import id: " + id);
+        }
+        ProductImport state = claim(id, userId);
+        long resumedAt = state.getRowsCommitted();
+
+        try (Reader reader = new BufferedReader(new InputStreamReader(
+                body, StandardCharsets.UTF_8), READ_BUFFER_SIZE)) {
+            ProductImportReader rows =
+                    new ProductImportReader(reader, format, objectMapper);
+            rows.skip(resumedAt);
+            List<ProductImportReader.Row> chunk =
+                    new ArrayList<>(CHUNK_SIZE);
+            ProductImportReader.Row row;
+            while ((row = rows.next()) != null) {
+                chunk.add(row);
+                if (chunk.size() == CHUNK_SIZE) {
+                    commit(state, chunk);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                commit(state, chunk);
+            }
+        } catch (IOException e) {
+            interrupt(state, "Upload interrupted: " + e.getMessage());
+            throw new RuntimeException("Import " + id
+                    + " interrupted; upload again to resume", e);
+        } catch (RuntimeException e) {
+            interrupt(state, e.getMessage());
+            throw e;
+        }
+
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(id)
+                        .and("runId").is(state.getRunId())),
+                new Update()
+                        .set("status", ProductImport.Status.COMPLETED)
+                        .set("updatedAt", ProductOutbox.now()),
+                ProductImport.class);
+        ProductImport done = mongoTemplate.findById(id, ProductImport.class);
+        log.info("Import {} for seller {} completed: {} created, {} failed,"
+                        + " resumed at row {}", id, userId, done.getCreated(),
+                done.getFailed(), resumedAt);
+        return done;
+    }
+
+    /**
+     * Get an import's progress.
+     *
+     * @param id     the import ID
+     * @param userId the seller's user ID
+     * @return the import
+     */
+    public ProductImport getImport(final String id, final String userId) {
+        ProductImport found = mongoTemplate.findById(id, ProductImport.class);
+        if (found == null) {
+            throw new ResourceNotFoundException(
+                    "Import not found with id: " + id);
+        }
+        if (!found.getUserId().equals(userId)) {
+            throw new UnauthorizedException(
+                    "You do not have permission to view this import");
+        }
+        return found;
+    }
+
+    /**
+     * Create the import, or take over an interrupted one or one whose
+     * upload stopped renewing its lease, in one upsert. A completed
+     * import is never resumed: its committed row count would make a new
+     * file lose its first rows.
+     *
+     * @param id     the import ID
+     * @param userId the seller's user ID
+     * @return the claimed import
+     */
+    private ProductImport claim(final String id, final String userId) {
+        LocalDateTime now = ProductOutbox.now();
+        Query query = new Query(Criteria.where("_id").is(id)
+                .and("userId").is(userId)
+                .orOperator(
+                        Criteria.where("status")
+                                .is(ProductImport.Status.INTERRUPTED),
+                        Criteria.where("status")
+                                .is(ProductImport.Status.RUNNING)
+                                .and("updatedAt")
+                                .lt(now.minus(leaseTimeout))));
+        Update update = new Update()
+                .set("status", ProductImport.Status.RUNNING)
+                .set("runId", UUID.randomUUID().toString())
+                .set("updatedAt", now)
+                .unset("message")
+                .setOnInsert("rowsCommitted", 0L)
+                .setOnInsert("created", 0L)
+                .setOnInsert("failed", 0L)
+                .setOnInsert("errors", List.of())
+                .setOnInsert("startedAt", now);
+        try {
+            return mongoTemplate.findAndModify(query, update,
+                    FindAndModifyOptions.options().upsert(true)
+                            .returnNew(true),
+                    ProductImport.class);
+        } catch (DuplicateKeyException e) {
+            ProductImport existing = getImport(id, userId);
+            if (existing.getStatus() == ProductImport.Status.COMPLETED) {
+                throw new ConflictException("Import " + existing.getId()
+                        + " is already completed; start a new import");
+            }
+            throw new ConflictException("Import " + existing.getId()
+                    + " is already running");
+        }
+    }
+
+    /**
+     * Validate and write one chunk, then record progress.
+     *
+     * @param state the claimed import
+     * @param chunk the rows
+     */
+    private void commit(
+            final ProductImport state,
+            final List<ProductImportReader.Row> chunk) {
+        LocalDateTime now = ProductOutbox.now();
+
+        BulkOperations ops = mongoTemplate.bulkOps(
+                BulkOperations.BulkMode.UNORDERED, Product.class);
+        List<Product> queued = new ArrayList<>();
+        List<Long> queuedRows = new ArrayList<>();
+        List<ProductImport.RowError> errors = new ArrayList<>();
+        for (ProductImportReader.Row row : chunk) {
+            String error = row.error() != null
+                    ? row.error()
+                    : validate(row.request());
+            if (error != null) {
+                errors.add(new ProductImport.RowError(row.number(), error));
+                continue;
+            }
+            ProductRequest request = row.request();
+            Product product = Product.builder()
+                    .id(new ObjectId().toHexString())
+                    .name(request.getName())
+                    .description(request.getDescription())
+                    .price(request.getPrice())
+                    .quantity(request.getQuantity())
+                    .userId(state.getUserId())
+                    .importId(state.getId())
+                    .importRow(row.number())
+                    .createdAt(now)
+                    .updatedAt(now)
+                    .build();
+            ops.insert(product);
+            queued.add(product);
+            queuedRows.add(row.number());
+        }
+
+        // Rows of a chunk written before an interruption already exist
+        Set<Integer> existing = new HashSet<>();
+        Set<Integer> rejected = new HashSet<>();
+        if (!queued.isEmpty()) {
+            try {
+                ops.execute();
+            } catch (BulkOperationException e) {
+                for (BulkWriteError error : e.getErrors()) {
+                    if (error.getCode() == DUPLICATE_KEY) {
+                        existing.add(error.getIndex());
+                    } else {
+                        rejected.add(error.getIndex());
+                        errors.add(new ProductImport.RowError(
+                                queuedRows.get(error.getIndex()),
+                                error.getMessage()));
+                    }
+                }
+            }
+        }
+
+        List<String> created = new ArrayList<>(queued.size());
+        for (int i = 0; i < queued.size(); i++) {
+            if (!rejected.contains(i) && !existing.contains(i)) {
+                created.add(queued.get(i).getId());
+            }
+        }
+        productEvents.changed(ProductEvents.CREATED, created);
+
+        Update update = new Update()
+                .set("rowsCommitted", chunk.get(chunk.size() - 1).number())
+                .set("updatedAt", now)
+                .inc("created", queued.size() - rejected.size())
+                .inc("failed", errors.size());
+        if (!errors.isEmpty()) {
+            update.push("errors").slice(MAX_STORED_ERRORS)
+                    .each(errors.toArray());
+        }
+        if (mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(state.getId())
+                        .and("runId").is(state.getRunId())),
+                update, ProductImport.class).getMatchedCount() == 0) {
+            throw new IllegalStateException("Import " + state.getId()
+                    + " was taken over by another upload");
+        }
+    }
+
+    /**
+     * Record that an upload stopped early.
+     *
+     * @param state   the claimed import
+     * @param message why it stopped
+     */
+    private void interrupt(final ProductImport state, final String message) {
+        try {
+            mongoTemplate.updateFirst(
+                    new Query(Criteria.where("_id").is(state.getId())
+                            .and("runId").is(state.getRunId())),
+                    new Update()
+                            .set("status", ProductImport.Status.INTERRUPTED)
+                            .set("message", message)
+                            .set("updatedAt", ProductOutbox.now()),
+                    ProductImport.class);
+        } catch (RuntimeException e) {
+            log.warn("Failed to record interruption of import {}",
+                    state.getId(), e);
+        }
+    }
+
+    /**
+     * Map a content type to an upload format.
+     *
+     * @param contentType the content type
+     * @return the format
+     */
+    private static ProductImportReader.Format format(
+            final String contentType) {
+        String type = contentType == null
+                ? ""
+                : contentType.toLowerCase(Locale.ROOT);
+        if (type.startsWith("text/csv")) {
+            return ProductImportReader.Format.CSV;
+        }
+        if (type.startsWith("application/x-ndjson")
+                || type.startsWith("application/jsonl")) {
+            return ProductImportReader.Format.NDJSON;
+        }
+        throw new IllegalArgumentException(
+                "Upload must be text/csv or application/x-ndjson");
+    }
+
+    /**
+     * Validate a row against the ProductRequest constraints.
+     *
+     * @param request the row
+     * @return joined violation messages, or null if the row is valid
+     */
+    private String validate(final ProductRequest request) {
+        if (request == null) {
+            return "Product is required";
+        }
+        Set<ConstraintViolation<ProductRequest>> violations =
+                validator.validate(request);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+}
@@ -0,0 +1,140 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.model.OutboxEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * Writes product events to the outbox collection.
+ * Mongo runs standalone here, so the outbox row cannot share a
+ * transaction with the delete. Callers append the event first and
+ * delete second; {@link ProductOutboxRelay} only publishes an event
+ * once all of its products are gone, and discards it if they are
+ * still there after a grace period.
+ */
+@Component
+@RequiredArgsConstructor
+public final class ProductOutbox {
+
+    /**
+     * Topic for product deletion events.
+     */
+    public static final String PRODUCT_DELETED_TOPIC = "product.deleted";
+
+    /**
+     * Mongo template for outbox writes.
+     */
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Object mapper for event payloads.
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Record that a product is about to be deleted.
+     *
+     * @param productId the product ID
+     * @param mediaIds  the product's media IDs
+     * @return the stored event
+     */
+    public OutboxEvent productDeleted(
+            final String productId,
+            final List<String> mediaIds) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("id", productId);
+        ArrayNode arr = node.putArray("mediaIds");
+        if (mediaIds != null) {
+            mediaIds.forEach(arr::add);
+        }
+        return append(PRODUCT_DELETED_TOPIC, productId, node,
+                List.of(productId));
+    }
+
+    /**
+     * Record that a group of one seller's products is about to be
+     * deleted, as a single batch event.
+     *
+     * @param userId     the seller's user ID, used as the record key
+     * @param productIds the product IDs
+     * @param mediaIds   media IDs of all those products
+     * @return the stored event
+     */
+    public OutboxEvent productsDeleted(
+            final String userId,
+            final List<String> productIds,
+            final List<String> mediaIds) {
+        ObjectNode node = objectMapper.createObjectNode();
+        productIds.forEach(node.putArray("ids")::add);
+        mediaIds.forEach(node.putArray("mediaIds")::add);
+        return append(PRODUCT_DELETED_TOPIC, userId, node, productIds);
+    }
+
+    /**
+     * Mark an event as discarded because its change failed.
+     *
+     * @param event the event
+     */
+    public void discard(final OutboxEvent event) {
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(event.getId())
+                        .and("status").is(OutboxEvent.Status.PENDING)),
+                new Update()
+                        .set("status", OutboxEvent.Status.DISCARDED)
+                        .set("completedAt", now()),
+                OutboxEvent.class);
+    }
+
+    /**
+     * Store a pending event.
+     *
+     * @param topic      the Kafka topic
+     * @param key        the record key
+     * @param payload    the record value
+     * @param productIds products the event refers to
+     * @return the stored event
+     */
+    private OutboxEvent append(
+            final String topic,
+            final String key,
+            final ObjectNode payload,
+            final List<String> productIds) {
+        String value;
+        try {
+            value = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(
+                    "Failed to serialize outbox event", e);
+        }
+        return mongoTemplate.insert(OutboxEvent.builder()
+                .topic(topic)
+                .key(key)
+                .payload(value)
+                .productIds(productIds)
+                .status(OutboxEvent.Status.PENDING)
+                .createdAt(now())
+                .build());
+    }
+
+    /**
+     * Current UTC time, matching the timestamps written elsewhere.
+     *
+     * @return now
+     */
+    static LocalDateTime now() {
+        return ZonedDateTime.now(ZoneOffset.UTC).toLocalDateTime();
+    }
+}
@@ -0,0 +1,345 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.model.OutboxEvent;
+import ax.gritlab.buy_01.product.model.Product;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Publishes pending outbox events to Kafka in batches.
+ * Each run claims a batch with a lease, so replicas do not publish the
+ * same rows, checks in one query that the events' products are gone,
+ * sends every record without waiting in between, and then waits once
+ * for the whole batch before marking rows as sent.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public final class ProductOutboxRelay {
+
+    /**
+     * How long a claim on a batch lasts before another relay may take it.
+     */
+    private static final Duration LEASE = Duration.ofSeconds(30);
+
+    /**
+     * Time to wait for Kafka to acknowledge a batch.
+     */
+    private static final long SEND_TIMEOUT_SECONDS = 10;
+
+    /**
+     * Mongo template for outbox and product queries.
+     */
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Kafka template for publishing.
+     */
+    private final KafkaTemplate<String, String> kafkaTemplate;
+
+    /**
+     * Registry for relay metrics.
+     */
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Rows claimed per run.
+     */
+    @Value("${products.outbox.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * Time after which an event whose products still exist is treated
+     * as belonging to a failed delete.
+     */
+    @Value("${products.outbox.grace-period:PT5M}")
+    private Duration gracePeriod;
+
+    /**
+     * How long sent and discarded rows are kept.
+     */
+    @Value("${products.outbox.retention:P7D}")
+    private Duration retention;
+
+    /**
+     * Identifies this relay in row claims.
+     */
+    private final String instanceId = UUID.randomUUID().toString();
+
+    /**
+     * Age in milliseconds of the oldest pending event at the last run.
+     */
+    private final AtomicLong lagMillis = new AtomicLong();
+
+    /**
+     * Events published.
+     */
+    private Counter sent;
+
+    /**
+     * Events dropped because their products were never deleted.
+     */
+    private Counter discarded;
+
+    /**
+     * Events that failed to publish and will be retried.
+     */
+    private Counter failures;
+
+    /**
+     * Time per relay run.
+     */
+    private Timer runTimer;
+
+    /**
+     * Create outbox indexes and register metrics.
+     */
+    @PostConstruct
+    public void init() {
+        mongoTemplate.indexOps(OutboxEvent.class).createIndex(new Index()
+                .on("status", Sort.Direction.ASC)
+                .on("createdAt", Sort.Direction.ASC));
+        mongoTemplate.indexOps(OutboxEvent.class).createIndex(new Index()
+                .on("completedAt", Sort.Direction.ASC)
+                .expire(retention));
+
+        sent = Counter.builder("product.outbox.events")
+                .tag("result", "sent").register(meterRegistry);
+        discarded = Counter.builder("product.outbox.events")
+                .tag("result", "discarded").register(meterRegistry);
+        failures = Counter.builder("product.outbox.events")
+                .tag("result", "failed").register(meterRegistry);
+        runTimer = Timer.builder("product.outbox.relay.duration")
+                .register(meterRegistry);
+        meterRegistry.gauge("product.outbox.lag.seconds", lagMillis,
+                lag -> lag.get() / 1000.0);
+    }
+
+    /**
+     * Drain the outbox until it is empty or a batch makes no progress.
+     */
+    @Scheduled(fixedDelayString = "${products.outbox.poll-interval:PT1S}")
+    public void relay() {
+        runTimer.record(() -> {
+            try {
+                updateLag();
+                while (relayBatch() == batchSize) {
+                    updateLag();
+                }
+            } catch (RuntimeException e) {
+                log.error("Outbox relay run failed", e);
+            }
+        });
+    }
+
+    /**
+     * Claim, check and publish one batch.
+     *
+     * @return number of rows claimed
+     */
+    private int relayBatch() {
+        List<OutboxEvent> batch = claim();
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        Set<String> remaining = existingProducts(batch);
+        LocalDateTime discardBefore = ProductOutbox.now().minus(gracePeriod);
+        List<OutboxEvent> ready = new ArrayList<>(batch.size());
+        List<String> discardIds = new ArrayList<>();
+        List<String> retryIds = new ArrayList<>();
+        for (OutboxEvent event : batch) {
+            if (event.getProductIds().stream()
+                    .noneMatch(remaining::contains)) {
+                ready.add(event);
+            } else if (event.getCreatedAt().isBefore(discardBefore)) {
+                discardIds.add(event.getId());
+            } else {
+                retryIds.add(event.getId());
+            }
+        }
+
+        List<CompletableFuture<?>> futures = new ArrayList<>(ready.size());
+        for (OutboxEvent event : ready) {
+            futures.add(kafkaTemplate.send(event.getTopic(), event.getKey(),
+                    event.getPayload()));
+        }
+        kafkaTemplate.flush();
+
+        List<String> sentIds = new ArrayList<>(ready.size());
+        List<String> failedIds = new ArrayList<>();
+        for (int i = 0; i < ready.size(); i++) {
+            if (await(futures.get(i))) {
+                sentIds.add(ready.get(i).getId());
+            } else {
+                failedIds.add(ready.get(i).getId());
+            }
+        }
+
+        complete(sentIds, OutboxEvent.Status.SENT);
+        complete(discardIds, OutboxEvent.Status.DISCARDED);
+        release(retryIds, false);
+        release(failedIds, true);
+        sent.increment(sentIds.size());
+        discarded.increment(discardIds.size());
+        failures.increment(failedIds.size());
+        if (!discardIds.isEmpty()) {
+            log.warn("Discarded {} outbox events whose products still exist",
+                    discardIds.size());
+        }
+        return sentIds.isEmpty() && discardIds.isEmpty() ? 0 : batch.size();
+    }
+
+    /**
+     * Claim up to one batch of pending rows that nobody else holds.
+     *
+     * @return the claimed rows, oldest first
+     */
+    private List<OutboxEvent> claim() {
+        LocalDateTime now = ProductOutbox.now();
+        Criteria claimable = Criteria.where("status")
+                .is(OutboxEvent.Status.PENDING)
+                .orOperator(Criteria.where("leaseUntil").is(null),
+                        Criteria.where("leaseUntil").lt(now));
+        Query candidates = new Query(claimable)
+                .with(Sort.by(Sort.Direction.ASC, "createdAt"))
+                .limit(batchSize);
+        candidates.fields().include("_id");
+        List<String> ids = mongoTemplate.find(candidates, OutboxEvent.class)
+                .stream().map(OutboxEvent::getId).toList();
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        mongoTemplate.updateMulti(
+                new Query(new Criteria().andOperator(
+                        Criteria.where("_id").in(ids), claimable)),
+                new Update()
+                        .set("owner", instanceId)
+                        .set("leaseUntil", now.plus(LEASE)),
+                OutboxEvent.class);
+        return mongoTemplate.find(
+                new Query(Criteria.where("_id").in(ids)
+                        .and("owner").is(instanceId)
+                        .and("status").is(OutboxEvent.Status.PENDING))
+                        .with(Sort.by(Sort.Direction.ASC, "createdAt")),
+                OutboxEvent.class);
+    }
+
+    /**
+     * Find which of the batch's products still exist, in one query.
+     *
+     * @param batch the claimed rows
+     * @return IDs of products that still exist
+     */
+    private Set<String> existingProducts(final List<OutboxEvent> batch) {
+        Set<String> ids = batch.stream()
+                .flatMap(e -> e.getProductIds().stream())
+                .collect(Collectors.toSet());
+        Query query = new Query(Criteria.where("_id").in(ids));
+        query.fields().include("_id");
+        return mongoTemplate.find(query, Product.class).stream()
+                .map(Product::getId)
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+
+    /**
+     * Wait for one send to be acknowledged.
+     *
+     * @param future the send result
+     * @return true if Kafka acknowledged the record
+     */
+    private boolean await(final CompletableFuture<?> future) {
+        try {
+            future.get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            log.warn("Failed to publish outbox event: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Mark rows as finished.
+     *
+     * @param ids    the row IDs
+     * @param status SENT or DISCARDED
+     */
+    private void complete(final List<String> ids,
+                          final OutboxEvent.Status status) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        mongoTemplate.updateMulti(
+                new Query(Criteria.where("_id").in(ids)),
+                new Update()
+                        .set("status", status)
+                        .set("completedAt", ProductOutbox.now())
+                        .unset("owner")
+                        .unset("leaseUntil"),
+                OutboxEvent.class);
+    }
+
+    /**
+     * Give up the claim on rows so a later run picks them up again.
+     *
+     * @param ids    the row IDs
+     * @param failed whether a publish attempt failed
+     */
+    private void release(final List<String> ids, final boolean failed) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Update update = new Update().unset("owner").unset("leaseUntil");
+        if (failed) {
+            update.inc("attempts", 1);
+        }
+        mongoTemplate.updateMulti(
+                new Query(Criteria.where("_id").in(ids)), update,
+                OutboxEvent.class);
+    }
+
+    /**
+     * Record the age of the oldest pending event.
+     */
+    private void updateLag() {
+        Query oldest = new Query(Criteria.where("status")
+                .is(OutboxEvent.Status.PENDING))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt"))
+                .limit(1);
+        oldest.fields().include("createdAt");
+        OutboxEvent event = mongoTemplate.findOne(oldest, OutboxEvent.class);
+        lagMillis.set(event == null ? 0
+                : Duration.between(event.getCreatedAt(), ProductOutbox.now())
+                        .toMillis());
+    }
+}
@@ -0,0 +1,578 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.model.Product;
+import ax.gritlab.buy_01.product.repository.ProductRepository;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * In-memory inverted index over product name and description.
+ * Posting lists are kept in primitive int arrays and results are ranked
+ * with BM25. The index is built from the repository at startup and kept
+ * current from the product events every replica receives, so writes
+ * made on any replica reach every replica's index.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public final class ProductSearchIndex {
+
+    /**
+     * BM25 term frequency saturation.
+     */
+    private static final double K1 = 1.2;
+
+    /**
+     * BM25 document length normalisation.
+     */
+    private static final double B = 0.75;
+
+    /**
+     * Name tokens count this many times as description tokens.
+     */
+    private static final int NAME_WEIGHT = 2;
+
+    /**
+     * Tokens shorter than this are not indexed.
+     */
+    private static final int MIN_TOKEN_LENGTH = 2;
+
+    /**
+     * Initial capacity of the per-document and per-term arrays.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Deleted documents tolerated before postings are compacted.
+     */
+    private static final int COMPACTION_THRESHOLD = 1024;
+
+    /**
+     * Common words that carry no ranking signal.
+     */
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for",
+            "in", "is", "it", "of", "on", "or", "the", "to", "with");
+
+    /**
+     * Product repository used to build the index.
+     */
+    private final ProductRepository productRepository;
+
+    /**
+     * Mongo template for re-reading changed products.
+     */
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Guards {@link #state}; searches share, mutations are exclusive.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * The live index.
+     */
+    private IndexState state = new IndexState();
+
+    /**
+     * Mutations seen while a rebuild is running, replayed on the new
+     * state before it is swapped in. Null when no rebuild is running.
+     */
+    private List<String[]> pendingDuringRebuild;
+
+    /**
+     * Result of a search: one page of product ids plus the total hit count.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static final class SearchHits {
+        /**
+         * Product ids on the requested page, best match first.
+         */
+        private final List<String> productIds;
+
+        /**
+         * Number of products matching at least one query term.
+         */
+        private final int total;
+    }
+
+    /**
+     * Rebuild the index from the database once the application is up.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            pendingDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        IndexState fresh = new IndexState();
+        try (Stream<Product> products =
+                productRepository.streamAllForSearch()) {
+            products.forEach(p -> fresh.index(
+                    p.getId(), p.getName(), p.getDescription()));
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pendingDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.error("Failed to build product search index", e);
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            // Writes that raced with the snapshot are re-applied on top
+            for (String[] op : pendingDuringRebuild) {
+                if (op[1] == null && op[2] == null) {
+                    fresh.remove(op[0]);
+                } else {
+                    fresh.index(op[0], op[1], op[2]);
+                }
+            }
+            pendingDuringRebuild = null;
+            state = fresh;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Product search index built with {} documents",
+                fresh.liveDocs);
+    }
+
+    /**
+     * Add a product to the index, replacing any previous version.
+     *
+     * @param productId   the product ID
+     * @param name        the product name
+     * @param description the product description
+     */
+    public void index(
+            final String productId,
+            final String name,
+            final String description) {
+        lock.writeLock().lock();
+        try {
+            state.index(productId, name, description);
+            if (pendingDuringRebuild != null) {
+                pendingDuringRebuild.add(
+                        new String[] {productId, name, description});
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a product from the index.
+     *
+     * @param productId the product ID
+     */
+    public void remove(final String productId) {
+        lock.writeLock().lock();
+        try {
+            state.remove(productId);
+            if (pendingDuringRebuild != null) {
+                pendingDuringRebuild.add(
+                        new String[] {productId, null, null});
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-read products and index their current text, removing those
+     * that no longer exist.
+     *
+     * @param productIds the product IDs
+     */
+    public void refresh(final Collection<String> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        Query query = new Query(Criteria.where("_id").in(productIds));
+        query.fields().include("name").include("description");
+        Map<String, Product> found = new HashMap<>();
+        for (Product product : mongoTemplate.find(query, Product.class)) {
+            found.put(product.getId(), product);
+        }
+        for (String productId : productIds) {
+            Product product = found.get(productId);
+            if (product == null) {
+                remove(productId);
+            } else {
+                index(productId, product.getName(), product.getDescription());
+            }
+        }
+    }
+
+    /**
+     * Search the index.
+     *
+     * @param query  free-text query
+     * @param offset number of top hits to skip
+     * @param limit  maximum number of hits to return
+     * @return matching product ids, best match first
+     */
+    public SearchHits search(
+            final String query,
+            final int offset,
+            final int limit) {
+        List<String> terms = new ArrayList<>(
+                new LinkedHashSet<>(tokenize(query)));
+        if (offset < 0) {
+            throw new IllegalArgumentException(
+                    "Offset must not be negative: " + offset);
+        }
+        if (terms.isEmpty() || limit <= 0) {
+            return new SearchHits(Collections.emptyList(), 0);
+        }
+        lock.readLock().lock();
+        try {
+            return state.search(terms, offset, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Split text into lower-case index terms.
+     *
+     * @param text the text to tokenize, may be null
+     * @return the terms in order of appearance
+     */
+    static List<String> tokenize(final String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length()
+                    && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String token = lower.substring(start, i);
+                if (token.length() >= MIN_TOKEN_LENGTH
+                        && !STOP_WORDS.contains(token)) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Index data structures. Not thread-safe; callers hold the lock.
+     * Documents get dense int ids; deleted documents are tombstoned and
+     * reclaimed by {@link #compact()}.
+     */
+    private static final class IndexState {
+
+        /**
+         * Term dictionary: term to dense term id.
+         */
+        private final Map<String, Integer> termIds = new HashMap<>();
+
+        /**
+         * Document ids per term, ascending.
+         */
+        private int[][] postingDocs = new int[INITIAL_CAPACITY][];
+
+        /**
+         * Weighted term frequency per posting, parallel to postingDocs.
+         */
+        private int[][] postingFreqs = new int[INITIAL_CAPACITY][];
+
+        /**
+         * Used length of each posting list.
+         */
+        private int[] postingSizes = new int[INITIAL_CAPACITY];
+
+        /**
+         * Number of live documents containing each term.
+         */
+        private int[] docFreqs = new int[INITIAL_CAPACITY];
+
+        /**
+         * Product id to document id.
+         */
+        private final Map<String, Integer> docIds = new HashMap<>();
+
+        /**
+         * Document id to product id; null for deleted documents.
+         */
+        private String[] productIds = new String[INITIAL_CAPACITY];
+
+        /**
+         * Weighted token count per document.
+         */
+        private int[] docLengths = new int[INITIAL_CAPACITY];
+
+        /**
+         * Distinct term ids per document, used to maintain docFreqs.
+         */
+        private int[][] docTerms = new int[INITIAL_CAPACITY][];
+
+        /**
+         * Number of allocated document ids.
+         */
+        private int docCount;
+
+        /**
+         * Number of live documents.
+         */
+        private int liveDocs;
+
+        /**
+         * Number of tombstoned documents.
+         */
+        private int deadDocs;
+
+        /**
+         * Sum of live document lengths.
+         */
+        private long totalLength;
+
+        /**
+         * Index a document, replacing any previous version.
+         *
+         * @param productId   the product ID
+         * @param name        the product name
+         * @param description the product description
+         */
+        void index(final String productId,
+                final String name,
+                final String description) {
+            remove(productId);
+
+            Map<String, Integer> freqs = new LinkedHashMap<>();
+            for (String token : tokenize(name)) {
+                freqs.merge(token, NAME_WEIGHT, Integer::sum);
+            }
+            for (String token : tokenize(description)) {
+                freqs.merge(token, 1, Integer::sum);
+            }
+
+            int doc = docCount++;
+            ensureDocCapacity(docCount);
+            int length = 0;
+            int[] terms = new int[freqs.size()];
+            int i = 0;
+            for (Map.Entry<String, Integer> e : freqs.entrySet()) {
+                int term = termId(e.getKey());
+                appendPosting(term, doc, e.getValue());
+                docFreqs[term]++;
+                terms[i++] = term;
+                length += e.getValue();
+            }
+            productIds[doc] = productId;
+            docLengths[doc] = length;
+            docTerms[doc] = terms;
+            docIds.put(productId, doc);
+            liveDocs++;
+            totalLength += length;
+        }
+
+        /**
+         * Tombstone a document.
+         *
+         * @param productId the product ID
+         */
+        void remove(final String productId) {
+            Integer doc = docIds.remove(productId);
+            if (doc == null) {
+                return;
+            }
+            for (int term : docTerms[doc]) {
+                docFreqs[term]--;
+            }
+            totalLength -= docLengths[doc];
+            productIds[doc] = null;
+            docTerms[doc] = null;
+            liveDocs--;
+            deadDocs++;
+            if (deadDocs > COMPACTION_THRESHOLD && deadDocs > liveDocs) {
+                compact();
+            }
+        }
+
+        /**
+         * Score all documents matching any term and return one page.
+         *
+         * @param terms  distinct query terms
+         * @param offset number of top hits to skip
+         * @param limit  maximum number of hits to return
+         * @return the page of hits
+         */
+        SearchHits search(final List<String> terms,
+                final int offset,
+                final int limit) {
+            if (liveDocs == 0) {
+                return new SearchHits(Collections.emptyList(), 0);
+            }
+            double avgLength = (double) totalLength / liveDocs;
+            float[] scores = new float[docCount];
+            int[] matched = new int[docCount];
+            int total = 0;
+
+            for (String t : terms) {
+                Integer term = termIds.get(t);
+                if (term == null || docFreqs[term] == 0) {
+                    continue;
+                }
+                double df = docFreqs[term];
+                double idf = Math.log(1 + (liveDocs - df + 0.5) / (df + 0.5));
+                int[] docs = postingDocs[term];
+                int[] tfs = postingFreqs[term];
+                for (int p = 0; p < postingSizes[term]; p++) {
+                    int doc = docs[p];
+                    if (productIds[doc] == null) {
+                        continue;
+                    }
+                    double tf = tfs[p];
+                    double norm = 1 - B + B * docLengths[doc] / avgLength;
+                    if (scores[doc] == 0) {
+                        matched[total++] = doc;
+                    }
+                    scores[doc] += (float) (idf * tf * (K1 + 1)
+                            / (tf + K1 * norm));
+                }
+            }
+
+            int wanted = (int) Math.min(total, (long) offset + limit);
+            if (offset >= wanted) {
+                return new SearchHits(Collections.emptyList(), total);
+            }
+            // Min-heap of the best 'wanted' docs; ties go to the older doc
+            PriorityQueue<Integer> top = new PriorityQueue<>(wanted + 1,
+                    (a, b) -> scores[a] != scores[b]
+                            ? Float.compare(scores[a], scores[b])
+                            : Integer.compare(b, a));
+            for (int i = 0; i < total; i++) {
+                top.offer(matched[i]);
+                if (top.size() > wanted) {
+                    top.poll();
+                }
+            }
+            String[] ranked = new String[top.size()];
+            for (int i = ranked.length - 1; i >= 0; i--) {
+                ranked[i] = productIds[top.poll()];
+            }
+            return new SearchHits(
+                    Arrays.asList(ranked).subList(offset, ranked.length),
+                    total);
+        }
+
+        private int termId(final String term) {
+            Integer id = termIds.get(term);
+            if (id != null) {
+                return id;
+            }
+            int next = termIds.size();
+            if (next == postingSizes.length) {
+                int capacity = next * 2;
+                postingDocs = Arrays.copyOf(postingDocs, capacity);
+                postingFreqs = Arrays.copyOf(postingFreqs, capacity);
+                postingSizes = Arrays.copyOf(postingSizes, capacity);
+                docFreqs = Arrays.copyOf(docFreqs, capacity);
+            }
+            postingDocs[next] = new int[2];
+            postingFreqs[next] = new int[2];
+            termIds.put(term, next);
+            return next;
+        }
+
+        private void appendPosting(final int term, final int doc,
+                final int freq) {
+            int size = postingSizes[term];
+            if (size == postingDocs[term].length) {
+                postingDocs[term] = Arrays.copyOf(postingDocs[term], size * 2);
+                postingFreqs[term] = Arrays.copyOf(postingFreqs[term], size * 2);
+            }
+            postingDocs[term][size] = doc;
+            postingFreqs[term][size] = freq;
+            postingSizes[term] = size + 1;
+        }
+
+        private void ensureDocCapacity(final int capacity) {
+            if (capacity <= productIds.length) {
+                return;
+            }
+            int grown = Math.max(capacity, productIds.length * 2);
+            productIds = Arrays.copyOf(productIds, grown);
+            docLengths = Arrays.copyOf(docLengths, grown);
+            docTerms = Arrays.copyOf(docTerms, grown);
+        }
+
+        /**
+         * Drop tombstoned documents and renumber the survivors. The
+         * renumbering is monotonic, so posting lists stay sorted.
+         */
+        private void compact() {
+            int[] remap = new int[docCount];
+            int next = 0;
+            for (int doc = 0; doc < docCount; doc++) {
+                if (productIds[doc] == null) {
+                    remap[doc] = -1;
+                } else {
+                    remap[doc] = next;
+                    productIds[next] = productIds[doc];
+                    docLengths[next] = docLengths[doc];
+                    docTerms[next] = docTerms[doc];
+                    docIds.put(productIds[next], next);
+                    next++;
+                }
+            }
+            Arrays.fill(productIds, next, docCount, null);
+            Arrays.fill(docTerms, next, docCount, null);
+
+            for (int term = 0; term < termIds.size(); term++) {
+                int[] docs = postingDocs[term];
+                int[] tfs = postingFreqs[term];
+                int kept = 0;
+                for (int p = 0; p < postingSizes[term]; p++) {
+                    int mapped = remap[docs[p]];
+                    if (mapped >= 0) {
+                        docs[kept] = mapped;
+                        tfs[kept] = tfs[p];
+                        kept++;
+                    }
+                }
+                postingSizes[term] = kept;
+            }
+            docCount = next;
+            deadDocs = 0;
+        }
+    }
+}
@@ -1,41 +1,125 @@
 package ax.gritlab.buy_01.product.service;
 
+import ax.gritlab.buy_01.product.dto.ProductBatchResponse;
+import ax.gritlab.buy_01.product.dto.ProductChangesResponse;
+import ax.gritlab.buy_01.product.dto.ProductFilter;
+import ax.gritlab.buy_01.product.dto.ProductPageResponse;
 import ax.gritlab.buy_01.product.dto.ProductRequest;
 import ax.gritlab.buy_01.product.dto.ProductResponse;
+import ax.gritlab.buy_01.product.dto.ProductSearchResponse;
 import ax.gritlab.buy_01.product.exception.ResourceNotFoundException;
 import ax.gritlab.buy_01.product.exception.UnauthorizedException;
+import ax.gritlab.buy_01.product.model.OutboxEvent;
 import ax.gritlab.buy_01.product.model.Product;
+import ax.gritlab.buy_01.product.model.ProductSimilarity;
+import ax.gritlab.buy_01.product.model.ProductTombstone;
 import ax.gritlab.buy_01.product.repository.ProductRepository;
+import com.mongodb.client.result.UpdateResult;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
 import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 /**
  * Service for managing products.
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public final class ProductService {
 
     /**
-     * HTTP status code for not found.
+     * Largest page a client may request.
      */
-    private static final int HTTP_NOT_FOUND = 404;
+    private static final int MAX_PAGE_SIZE = 100;
 
     /**
-     * HTTP status code for forbidden.
+     * Length in bytes of an ObjectId in a page cursor.
      */
-    private static final int HTTP_FORBIDDEN = 403;
+    private static final int OBJECT_ID_LENGTH = 12;
+
+    /**
+     * Largest change feed page a client may request.
+     */
+    private static final int MAX_CHANGES_PAGE_SIZE = 1000;
+
+    /**
+     * How far behind the clock the change feed reads.
+     */
+    private static final Duration CHANGES_SETTLE_TIME =
+            Duration.ofSeconds(2);
+
+    /**
+     * Documents fetched per cursor round trip during export.
+     */
+    private static final int EXPORT_BATCH_SIZE = 500;
+
+    /**
+     * Number of exported lines between explicit flushes.
+     */
+    private static final int EXPORT_FLUSH_INTERVAL = 500;
+
+    /**
+     * Products scanned per page during orphaned media cleanup.
+     */
+    private static final int CLEANUP_PAGE_SIZE = 1000;
+
+    /**
+     * Media IDs sent per existence check request.
+     */
+    private static final int CLEANUP_BATCH_SIZE = 500;
+
+    /**
+     * Concurrent existence check requests during cleanup.
+     */
+    private static final int CLEANUP_PARALLELISM = 4;
+
+    /**
+     * Products per product.deleted event in a seller cascade.
+     */
+    private static final int CASCADE_CHUNK_SIZE = 500;
+
+    /**
+     * Maximum number of media IDs attached by one batch request.
+     */
+    private static final int MAX_MEDIA_BATCH = 50;
 
     /**
      * Product repository.
@@ -43,20 +127,55 @@ public final class ProductService {
     private final ProductRepository productRepository;
 
     /**
-     * REST template for service calls.
+     * Mongo template for cursor and update operations.
      */
-    private final RestTemplate restTemplate;
+    private final MongoTemplate mongoTemplate;
 
     /**
-     * Kafka template for event publishing.
+     * REST template for service calls.
      */
-    private final org.springframework.kafka.core.KafkaTemplate<String, String> kafkaTemplate;
+    private final RestTemplate restTemplate;
 
     /**
      * Object mapper for JSON operations.
      */
     private final ObjectMapper objectMapper;
 
+    /**
+     * Full-text index over product name and description.
+     */
+    private final ProductSearchIndex searchIndex;
+
+    /**
+     * Read-through cache for single product lookups.
+     */
+    private final ProductCache productCache;
+
+    /**
+     * Outbox for events that must survive a crash after a write.
+     */
+    private final ProductOutbox productOutbox;
+
+    /**
+     * Deletion log for the change feed.
+     */
+    private final ProductTombstones productTombstones;
+
+    /**
+     * Live change events for stream subscribers.
+     */
+    private final ProductEvents productEvents;
+
+    /**
+     * In-memory view counters.
+     */
+    private final ProductViewCounter viewCounter;
+
+    /**
+     * Time-decayed popularity ranking.
+     */
+    private final ProductTrending trending;
+
     /**
      * Media service URL.
      */
@@ -70,14 +189,710 @@ public final class ProductService {
     private String mediaPublicUrl;
 
     /**
-     * Get all products.
+     * Get one filtered page of products.
+     * Uses keyset pagination on the sort field and {@code _id}, so page
+     * N costs the same as page 1 regardless of catalog size, and every
+     * filter and sort combination is served by an index declared on
+     * {@link Product}.
      *
-     * @return list of all products
+     * @param filter filters and sort order
+     * @param after  cursor returned as nextCursor by the previous page,
+     *               or null for the first page
+     * @param limit  requested page size, clamped to [1, 100]
+     * @param fields comma-separated response properties, or null for all
+     * @return the page of products
      */
-    public List<ProductResponse> getAllProducts() {
-        return productRepository.findAll().stream()
-                .map(this::toProductResponse)
+    public ProductPageResponse getProducts(
+            final ProductFilter filter,
+            final String after,
+            final int limit,
+            final String fields) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        SortKey sortKey = SortKey.parse(filter.getSort());
+        ProductFieldSet fieldSet = ProductFieldSet.parse(fields);
+        // Fetch one extra row to know whether another page exists
+        Query query = listQuery(filter, after, pageSize + 1);
+        if (fieldSet != null) {
+            // The cursor needs the sort field even if it is not returned
+            fieldSet.project(query, sortKey.field == null
+                    ? new String[0]
+                    : new String[] {sortKey.field});
+        }
+        List<Product> products = mongoTemplate.find(query, Product.class);
+
+        boolean hasMore = products.size() > pageSize;
+        List<Product> pageItems = hasMore
+                ? products.subList(0, pageSize)
+                : products;
+        String nextCursor = hasMore
+                ? encodeCursor(sortKey, pageItems.get(pageSize - 1))
+                : null;
+
+        return ProductPageResponse.builder()
+                .items(pageItems.stream()
+                        .map(p -> toProductResponse(p, fieldSet))
+                        .collect(Collectors.toList()))
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    /**
+     * Build the listing query for a filter and cursor.
+     *
+     * @param filter filters and sort order
+     * @param after  cursor from the previous page, or null
+     * @param limit  maximum number of rows to fetch
+     * @return the query
+     */
+    static Query listQuery(
+            final ProductFilter filter,
+            final String after,
+            final int limit) {
+        SortKey sortKey = SortKey.parse(filter.getSort());
+        List<Criteria> criteria = new ArrayList<>();
+        if (filter.getSellerId() != null && !filter.getSellerId().isBlank()) {
+            criteria.add(Criteria.where("userId").is(filter.getSellerId()));
+        }
+        if (filter.getMinPrice() != null || filter.getMaxPrice() != null) {
+            if (filter.getMinPrice() != null && filter.getMaxPrice() != null
+                    && filter.getMinPrice() > filter.getMaxPrice()) {
+                throw new IllegalArgumentException(
+                        "minPrice must not be greater than maxPrice");
+            }
+            Criteria price = Criteria.where("price");
+            if (filter.getMinPrice() != null) {
+                price.gte(filter.getMinPrice());
+            }
+            if (filter.getMaxPrice() != null) {
+                price.lte(filter.getMaxPrice());
+            }
+            criteria.add(price);
+        }
+        if (filter.isInStock()) {
+            criteria.add(Criteria.where("quantity").gt(0));
+        }
+        if (after != null && !after.isBlank()) {
+            criteria.add(afterCursor(sortKey, after));
+        }
+
+        Query query = criteria.isEmpty()
+                ? new Query()
+                : new Query(new Criteria().andOperator(criteria));
+        return query.with(sortKey.sort()).limit(limit);
+    }
+
+    /**
+     * Keyset condition selecting rows that sort after a cursor.
+     *
+     * @param sortKey the sort order
+     * @param after   the cursor
+     * @return the condition
+     */
+    private static Criteria afterCursor(
+            final SortKey sortKey,
+            final String after) {
+        ByteBuffer cursor = decodeCursor(after, sortKey);
+        byte[] idBytes = new byte[OBJECT_ID_LENGTH];
+        cursor.get(idBytes);
+        String id = new ObjectId(idBytes).toHexString();
+        if (sortKey.field == null) {
+            return Criteria.where("_id").gt(id);
+        }
+
+        Object value = sortKey.fromBits(cursor.getLong());
+        Criteria past = Criteria.where(sortKey.field);
+        Criteria tieId = Criteria.where("_id");
+        if (sortKey.descending) {
+            past.lt(value);
+            tieId.lt(id);
+        } else {
+            past.gt(value);
+            tieId.gt(id);
+        }
+        return new Criteria().orOperator(past,
+                new Criteria().andOperator(
+                        Criteria.where(sortKey.field).is(value), tieId));
+    }
+
+    /**
+     * Listing sort orders. Each has a matching index on Product, with
+     * {@code _id} as the tie breaker.
+     */
+    private enum SortKey {
+        /**
+         * Insertion order.
+         */
+        ID(null, false),
+        /**
+         * Cheapest first.
+         */
+        PRICE("price", false),
+        /**
+         * Most expensive first.
+         */
+        PRICE_DESC("price", true),
+        /**
+         * Oldest first.
+         */
+        CREATED_AT("createdAt", false),
+        /**
+         * Newest first.
+         */
+        CREATED_AT_DESC("createdAt", true),
+        /**
+         * Least viewed first.
+         */
+        VIEW_COUNT("viewCount", false),
+        /**
+         * Most viewed first.
+         */
+        VIEW_COUNT_DESC("viewCount", true);
+
+        /**
+         * Sort field, or null for {@code _id} alone.
+         */
+        private final String field;
+
+        /**
+         * Whether the order is descending.
+         */
+        private final boolean descending;
+
+        SortKey(final String field, final boolean descending) {
+            this.field = field;
+            this.descending = descending;
+        }
+
+        /**
+         * Parse the {@code sort} request parameter.
+         *
+         * @param sort e.g. {@code price} or {@code -createdAt}
+         * @return the sort key
+         */
+        static SortKey parse(final String sort) {
+            if (sort == null || sort.isBlank()) {
+                return ID;
+            }
+            boolean desc = sort.startsWith("-");
+            String field = desc ? sort.substring(1) : sort;
+            for (SortKey key : values()) {
+                if (field.equals(key.field) && key.descending == desc) {
+                    return key;
+                }
+            }
+            throw new IllegalArgumentException("Invalid sort: " + sort
+                    + " (expected price, createdAt or viewCount,"
+                    + " optionally prefixed with -)");
+        }
+
+        /**
+         * Spring Data sort for this key.
+         *
+         * @return the sort
+         */
+        Sort sort() {
+            if (field == null) {
+                return Sort.by(Sort.Direction.ASC, "_id");
+            }
+            Sort.Direction direction = descending
+                    ? Sort.Direction.DESC
+                    : Sort.Direction.ASC;
+            return Sort.by(direction, field).and(Sort.by(direction, "_id"));
+        }
+
+        /**
+         * Sort field value of a product as 64 bits for a cursor.
+         *
+         * @param product the product
+         * @return the value bits
+         */
+        long toBits(final Product product) {
+            switch (field) {
+                case "price":
+                    return Double.doubleToLongBits(product.getPrice());
+                case "viewCount":
+                    return product.getViewCount();
+                default:
+                    return product.getCreatedAt().toInstant(ZoneOffset.UTC)
+                            .toEpochMilli();
+            }
+        }
+
+        /**
+         * Sort field value stored in a cursor.
+         *
+         * @param bits the value bits
+         * @return the value to compare against
+         */
+        Object fromBits(final long bits) {
+            switch (field) {
+                case "price":
+                    return Double.longBitsToDouble(bits);
+                case "viewCount":
+                    return bits;
+                default:
+                    return LocalDateTime.ofInstant(
+                            Instant.ofEpochMilli(bits), ZoneOffset.UTC);
+            }
+        }
+    }
+
+    /**
+     * Get products changed and deleted since a cursor.
+     * Both streams page on (timestamp, {@code _id}) with their own
+     * index. Rows newer than a short settle window are held back so a
+     * write that commits late cannot land behind a cursor that has
+     * already moved past it.
+     *
+     * @param since cursor from the previous poll, or null to start over
+     * @param limit maximum changes per stream, clamped to [1, 1000]
+     * @return the changes and the next cursor
+     */
+    public ProductChangesResponse getChanges(
+            final String since,
+            final int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_CHANGES_PAGE_SIZE));
+        ChangeCursor cursor = since == null || since.isBlank()
+                ? null
+                : ChangeCursor.decode(since);
+        if (cursor != null
+                && cursor.deletedAt.isBefore(productTombstones.horizon())) {
+            return ProductChangesResponse.builder()
+                    .changed(List.of())
+                    .deleted(List.of())
+                    .resyncRequired(true)
+                    .build();
+        }
+        LocalDateTime bound = ProductOutbox.now()
+                .minus(CHANGES_SETTLE_TIME)
+                .truncatedTo(ChronoUnit.MILLIS);
+
+        List<Product> products = mongoTemplate.find(changesQuery(
+                "updatedAt",
+                cursor == null ? null : cursor.updatedAt,
+                cursor == null ? null : cursor.productId,
+                bound, pageSize + 1), Product.class);
+        List<ProductTombstone> tombstones = mongoTemplate.find(changesQuery(
+                "deletedAt",
+                cursor == null ? null : cursor.deletedAt,
+                cursor == null ? null : cursor.tombstoneId,
+                bound, pageSize + 1), ProductTombstone.class);
+
+        boolean moreProducts = products.size() > pageSize;
+        boolean moreTombstones = tombstones.size() > pageSize;
+        if (moreProducts) {
+            products = products.subList(0, pageSize);
+        }
+        if (moreTombstones) {
+            tombstones = tombstones.subList(0, pageSize);
+        }
+
+        // A stream that was read to the end resumes after the bound
+        ChangeCursor next = new ChangeCursor(
+                moreProducts
+                        ? products.get(pageSize - 1).getUpdatedAt()
+                        : bound,
+                moreProducts
+                        ? products.get(pageSize - 1).getId()
+                        : ChangeCursor.MAX_ID,
+                moreTombstones
+                        ? tombstones.get(pageSize - 1).getDeletedAt()
+                        : bound,
+                moreTombstones
+                        ? tombstones.get(pageSize - 1).getId()
+                        : ChangeCursor.MAX_ID);
+
+        return ProductChangesResponse.builder()
+                .changed(products.stream()
+                        .map(this::toProductResponse)
+                        .collect(Collectors.toList()))
+                .deleted(tombstones.stream()
+                        .map(ProductTombstone::getId)
+                        .collect(Collectors.toList()))
+                .nextCursor(next.encode())
+                .hasMore(moreProducts || moreTombstones)
+                .build();
+    }
+
+    /**
+     * Keyset query over (timestamp, {@code _id}) up to a bound.
+     *
+     * @param field   the timestamp field
+     * @param afterAt timestamp of the last row seen, or null
+     * @param afterId id of the last row seen, or null
+     * @param bound   newest timestamp to include
+     * @param limit   maximum rows
+     * @return the query
+     */
+    private static Query changesQuery(
+            final String field,
+            final LocalDateTime afterAt,
+            final String afterId,
+            final LocalDateTime bound,
+            final int limit) {
+        Criteria criteria = Criteria.where(field).lte(bound);
+        if (afterAt != null) {
+            criteria = new Criteria().andOperator(criteria,
+                    new Criteria().orOperator(
+                            Criteria.where(field).gt(afterAt),
+                            Criteria.where(field).is(afterAt)
+                                    .and("_id").gt(afterId)));
+        }
+        return new Query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, field, "_id"))
+                .limit(limit);
+    }
+
+    /**
+     * Position in the change feed: the last product change and the last
+     * deletion seen.
+     */
+    private static final class ChangeCursor {
+
+        /**
+         * Largest possible ObjectId, sorting after any real id.
+         */
+        static final String MAX_ID = "ffffffffffffffffffffffff";
+
+        /**
+         * Encoded length: two timestamps and two ObjectIds.
+         */
+        private static final int LENGTH =
+                2 * (Long.BYTES + OBJECT_ID_LENGTH);
+
+        /**
+         * Update time of the last product seen.
+         */
+        private final LocalDateTime updatedAt;
+
+        /**
+         * ID of the last product seen.
+         */
+        private final String productId;
+
+        /**
+         * Deletion time of the last tombstone seen.
+         */
+        private final LocalDateTime deletedAt;
+
+        /**
+         * ID of the last tombstone seen.
+         */
+        private final String tombstoneId;
+
+        /**
+         * Create a cursor.
+         *
+         * @param updatedAt   update time of the last product seen
+         * @param productId   ID of the last product seen
+         * @param deletedAt   deletion time of the last tombstone seen
+         * @param tombstoneId ID of the last tombstone seen
+         */
+        ChangeCursor(final LocalDateTime updatedAt,
+                     final String productId,
+                     final LocalDateTime deletedAt,
+                     final String tombstoneId) {
+            this.updatedAt = updatedAt;
+            this.productId = productId;
+            this.deletedAt = deletedAt;
+            this.tombstoneId = tombstoneId;
+        }
+
+        /**
+         * Encode as an opaque, URL-safe string.
+         *
+         * @return the cursor
+         */
+        String encode() {
+            ByteBuffer buffer = ByteBuffer.allocate(LENGTH);
+            buffer.putLong(toMillis(updatedAt));
+            buffer.put(new ObjectId(productId).toByteArray());
+            buffer.putLong(toMillis(deletedAt));
+            buffer.put(new ObjectId(tombstoneId).toByteArray());
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(buffer.array());
+        }
+
+        /**
+         * Decode a cursor produced by {@link #encode()}.
+         *
+         * @param cursor the cursor
+         * @return the decoded cursor
+         */
+        static ChangeCursor decode(final String cursor) {
+            try {
+                byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+                if (bytes.length != LENGTH) {
+                    throw new IllegalArgumentException();
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                LocalDateTime updatedAt = fromMillis(buffer.getLong());
+                String productId = readObjectId(buffer);
+                LocalDateTime deletedAt = fromMillis(buffer.getLong());
+                String tombstoneId = readObjectId(buffer);
+                return new ChangeCursor(updatedAt, productId,
+                        deletedAt, tombstoneId);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(
+                        "Invalid cursor: " + cursor);
+            }
+        }
+
+        /**
+         * Read an ObjectId from the buffer.
+         *
+         * @param buffer the buffer
+         * @return the id as hex
+         */
+        private static String readObjectId(final ByteBuffer buffer) {
+            byte[] id = new byte[OBJECT_ID_LENGTH];
+            buffer.get(id);
+            return new ObjectId(id).toHexString();
+        }
+
+        /**
+         * Convert a UTC timestamp to epoch milliseconds.
+         *
+         * @param time the timestamp
+         * @return epoch milliseconds
+         */
+        private static long toMillis(final LocalDateTime time) {
+            return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+        }
+
+        /**
+         * Convert epoch milliseconds to a UTC timestamp.
+         *
+         * @param millis epoch milliseconds
+         * @return the timestamp
+         */
+        private static LocalDateTime fromMillis(final long millis) {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis),
+                    ZoneOffset.UTC);
+        }
+    }
+
+    /**
+     * Full-text search over product name and description.
+     *
+     * @param query  free-text query
+     * @param page   zero-based page number
+     * @param size   requested page size, clamped to [1, 100]
+     * @param fields comma-separated response properties, or null for all
+     * @return the page of matching products, best match first
+     */
+    public ProductSearchResponse searchProducts(
+            final String query,
+            final int page,
+            final int size,
+            final String fields) {
+        ProductFieldSet fieldSet = ProductFieldSet.parse(fields);
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        int pageNumber = Math.max(0, page);
+        int offset;
+        try {
+            offset = Math.multiplyExact(pageNumber, pageSize);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(
+                    "Page out of range: " + page);
+        }
+        ProductSearchIndex.SearchHits hits = searchIndex.search(
+                query, offset, pageSize);
+
+        // One $in query, then restore the ranking order
+        Query byIds = new Query(Criteria.where("_id")
+                .in(hits.getProductIds()));
+        if (fieldSet != null) {
+            fieldSet.project(byIds);
+        }
+        Map<String, Product> byId = mongoTemplate.find(byIds, Product.class)
+                .stream()
+                .collect(Collectors.toMap(Product::getId,
+                        Function.identity()));
+        List<ProductResponse> items = hits.getProductIds().stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .map(p -> toProductResponse(p, fieldSet))
                 .collect(Collectors.toList());
+
+        return ProductSearchResponse.builder()
+                .items(items)
+                .total(hits.getTotal())
+                .page(pageNumber)
+                .size(pageSize)
+                .build();
+    }
+
+    /**
+     * Stream the catalog as newline-delimited JSON.
+     * Documents are read through a Mongo cursor and written one line at
+     * a time, so memory use does not depend on catalog size.
+     *
+     * @param since only export products updated at or after this instant,
+     *              or null for the whole catalog
+     * @param fields comma-separated response properties, or null for all
+     * @param out   the output stream to write to
+     * @throws IOException if writing to the output fails
+     */
+    public void exportProducts(
+            final Instant since,
+            final String fields,
+            final OutputStream out) throws IOException {
+        ProductFieldSet fieldSet = ProductFieldSet.parse(fields);
+        Query query = new Query().cursorBatchSize(EXPORT_BATCH_SIZE);
+        if (since != null) {
+            query.addCriteria(Criteria.where("updatedAt")
+                    .gte(LocalDateTime.ofInstant(since, ZoneOffset.UTC)));
+        }
+        if (fieldSet != null) {
+            fieldSet.project(query);
+        }
+        ObjectWriter writer = objectMapper.writerFor(ProductResponse.class);
+        try (Stream<Product> products =
+                mongoTemplate.stream(query, Product.class)) {
+            Iterator<Product> it = products.iterator();
+            int written = 0;
+            while (it.hasNext()) {
+                out.write(writer.writeValueAsBytes(
+                        toProductResponse(it.next(), fieldSet)));
+                out.write('\n');
+                if (++written % EXPORT_FLUSH_INTERVAL == 0) {
+                    out.flush();
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Get product by ID with only the requested fields.
+     * Sparse requests are trimmed from the full cached copy rather than
+     * read with a projection, so they share cache entries with full
+     * reads.
+     *
+     * @param id     the product ID
+     * @param fields comma-separated response properties, or null for all
+     * @return the product response
+     */
+    public ProductResponse getProductById(
+            final String id,
+            final String fields) {
+        ProductFieldSet fieldSet = ProductFieldSet.parse(fields);
+        ProductResponse response = getProductById(id);
+        viewCounter.record(id);
+        return fieldSet == null ? response : fieldSet.trim(response);
+    }
+
+    /**
+     * Get many products by id.
+     * Cached products are served from the cache; the rest are loaded
+     * with one $in query and cached.
+     *
+     * @param ids    product IDs; duplicates are returned once
+     * @param fields comma-separated response properties, or null for all
+     * @return found products and missing ids, both in request order
+     */
+    public ProductBatchResponse getProductsByIds(
+            final List<String> ids,
+            final String fields) {
+        if (ids == null || ids.isEmpty()) {
+            throw new IllegalArgumentException("No product ids given");
+        }
+        if (ids.size() > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("At most " + MAX_PAGE_SIZE
+                    + " products can be fetched at once");
+        }
+        ProductFieldSet fieldSet = ProductFieldSet.parse(fields);
+        Set<String> requested = ids.stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        Map<String, ProductResponse> found = new HashMap<>();
+        List<String> uncached = new ArrayList<>();
+        for (String id : requested) {
+            ProductResponse cached = productCache.get(id);
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                uncached.add(id);
+            }
+        }
+        if (!uncached.isEmpty()) {
+            long generation = productCache.generation();
+            for (Product product : productRepository.findAllById(uncached)) {
+                ProductResponse response = toProductResponse(product);
+                productCache.put(product.getId(), response, generation);
+                found.put(product.getId(), response);
+            }
+        }
+
+        List<ProductResponse> items = new ArrayList<>(found.size());
+        List<String> missing = new ArrayList<>();
+        for (String id : requested) {
+            ProductResponse response = found.get(id);
+            if (response == null) {
+                missing.add(id);
+            } else {
+                items.add(fieldSet == null
+                        ? response
+                        : fieldSet.trim(response));
+            }
+        }
+        return ProductBatchResponse.builder()
+                .items(items)
+                .missing(missing)
+                .build();
+    }
+
+    /**
+     * Get the most viewed products, weighted towards recent views.
+     *
+     * @param limit  maximum number of products, clamped to [1, 100]
+     * @param fields comma-separated response properties, or null for all
+     * @return products, most popular first
+     */
+    public List<ProductResponse> getTrendingProducts(
+            final int limit,
+            final String fields) {
+        List<String> ids = trending.top(
+                Math.max(1, Math.min(limit, ProductTrending.MAX_TOP)));
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return getProductsByIds(ids, fields).getItems();
+    }
+
+    /**
+     * Get the products most similar to a product, from the list
+     * precomputed by {@link ProductSimilarityJob}.
+     *
+     * @param id     the product ID
+     * @param limit  maximum number of products, clamped to [1, 100]
+     * @param fields comma-separated response properties, or null for all
+     * @return products, most similar first; empty until the job has
+     *         processed the product
+     */
+    public List<ProductResponse> getSimilarProducts(
+            final String id,
+            final int limit,
+            final String fields) {
+        ProductSimilarity similarity =
+                mongoTemplate.findById(id, ProductSimilarity.class);
+        if (similarity == null) {
+            if (!productRepository.existsById(id)) {
+                throw new ResourceNotFoundException(
+                        "Product not found with id: " + id);
+            }
+            return List.of();
+        }
+        List<String> ids = similarity.getSimilar().stream()
+                .limit(Math.max(1, Math.min(limit, MAX_PAGE_SIZE)))
+                .map(ProductSimilarity.Neighbour::getId)
+                .toList();
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return getProductsByIds(ids, fields).getItems();
     }
 
     /**
@@ -87,10 +902,17 @@ public final class ProductService {
      * @return the product response
      */
     public ProductResponse getProductById(final String id) {
+        ProductResponse cached = productCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = productCache.generation();
         Product product = productRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException(
                         "Product not found with id: " + id));
-        return toProductResponse(product);
+        ProductResponse response = toProductResponse(product);
+        productCache.put(id, response, generation);
+        return response;
     }
 
     /**
@@ -114,7 +936,9 @@ public final class ProductService {
                 .updatedAt(now.toLocalDateTime())
                 .build();
         Product saved = productRepository.save(product);
-        return toProductResponse(saved);
+        ProductResponse response = toProductResponse(saved);
+        productEvents.changed(ProductEvents.CREATED, response);
+        return response;
     }
 
     /**
@@ -129,21 +953,28 @@ public final class ProductService {
             final String id,
             final ProductRequest request,
             final String userId) {
-        Product product = productRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException(
-                        "Product not found with id: " + id));
-        if (!product.getUserId().equals(userId)) {
-            throw new UnauthorizedException(
+        // $set only the edited fields, so counters maintained with $inc
+        // (stock reservations, view counts) are never overwritten
+        Product saved = mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(id)
+                        .and("userId").is(userId)),
+                new Update()
+                        .set("name", request.getName())
+                        .set("description", request.getDescription())
+                        .set("price", request.getPrice())
+                        .set("quantity", request.getQuantity())
+                        .set("updatedAt", ZonedDateTime.now(ZoneOffset.UTC)
+                                .toLocalDateTime()),
+                FindAndModifyOptions.options().returnNew(true),
+                Product.class);
+        if (saved == null) {
+            throw productNotFoundOrForbidden(id,
                     "You do not have permission to update this product");
         }
-        product.setName(request.getName());
-        product.setDescription(request.getDescription());
-        product.setPrice(request.getPrice());
-        product.setQuantity(request.getQuantity());
-        product.setUpdatedAt(
-                ZonedDateTime.now(ZoneOffset.UTC).toLocalDateTime());
-        Product saved = productRepository.save(product);
-        return toProductResponse(saved);
+        productCache.evict(id);
+        ProductResponse response = toProductResponse(saved);
+        productEvents.changed(ProductEvents.UPDATED, response);
+        return response;
     }
 
     /**
@@ -162,23 +993,7 @@ public final class ProductService {
             throw new UnauthorizedException(
                     "You do not have permission to delete this product");
         }
-        List<String> mediaIds = product.getMediaIds();
-        productRepository.delete(product);
-        // Publish Kafka event for product deletion
-        try {
-            ObjectNode node = objectMapper.createObjectNode();
-            node.put("id", id);
-            ArrayNode arr = node.putArray("mediaIds");
-            if (mediaIds != null) {
-                for (String m : mediaIds) {
-                    arr.add(m);
-                }
-            }
-            kafkaTemplate.send("product.deleted",
-                    objectMapper.writeValueAsString(node));
-        } catch (Exception e) {
-            kafkaTemplate.send("product.deleted", id);
-        }
+        deleteWithOutbox(product);
     }
 
     /**
@@ -193,15 +1008,7 @@ public final class ProductService {
             final String productId,
             final String mediaId,
             final String userId) {
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new ResourceNotFoundException(
-                        "Product not found with id: " + productId));
-        if (!product.getUserId().equals(userId)) {
-            throw new UnauthorizedException(
-                    "You do not have permission to modify this product");
-        }
-        product.getMediaIds().add(mediaId);
-        Product saved = productRepository.save(product);
+        Product saved = addMediaIds(productId, List.of(mediaId), userId);
 
         // Call Media Service to update the productId in the media record
         try {
@@ -218,6 +1025,94 @@ public final class ProductService {
         return toProductResponse(saved);
     }
 
+    /**
+     * Associate several media with a product in one update.
+     *
+     * @param productId the product ID
+     * @param mediaIds  the media IDs
+     * @param userId    the user ID
+     * @return the updated product response
+     */
+    public ProductResponse associateMediaBatch(
+            final String productId,
+            final List<String> mediaIds,
+            final String userId) {
+        if (mediaIds == null || mediaIds.isEmpty()) {
+            throw new IllegalArgumentException("No media IDs given");
+        }
+        if (mediaIds.size() > MAX_MEDIA_BATCH) {
+            throw new IllegalArgumentException("At most " + MAX_MEDIA_BATCH
+                    + " media IDs can be attached at once");
+        }
+        Product saved = addMediaIds(productId, mediaIds, userId);
+
+        // One Media Service call for the whole gallery
+        try {
+            String url = mediaServiceUrl + "/images/product/" + productId
+                    + "?userId=" + userId;
+            restTemplate.put(url, mediaIds);
+        } catch (Exception e) {
+            // Log the error but don't fail the product update
+            log.warn("Failed to update media productId for product {}",
+                    productId, e);
+        }
+
+        return toProductResponse(saved);
+    }
+
+    /**
+     * Atomically add media IDs to a product the user owns.
+     * Ownership is part of the update filter, so the check and the
+     * write are one round trip and concurrent uploads cannot overwrite
+     * each other.
+     *
+     * @param productId the product ID
+     * @param mediaIds  the media IDs to add
+     * @param userId    the user ID
+     * @return the product after the update
+     */
+    private Product addMediaIds(
+            final String productId,
+            final List<String> mediaIds,
+            final String userId) {
+        Product saved = mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(productId)
+                        .and("userId").is(userId)),
+                new Update()
+                        .addToSet("mediaIds").each(mediaIds.toArray())
+                        .set("updatedAt", ZonedDateTime.now(ZoneOffset.UTC)
+                                .toLocalDateTime()),
+                FindAndModifyOptions.options().returnNew(true),
+                Product.class);
+        if (saved == null) {
+            throw productNotFoundOrForbidden(productId,
+                    "You do not have permission to modify this product");
+        }
+        productCache.evict(productId);
+        productEvents.changed(ProductEvents.UPDATED,
+                toProductResponse(saved));
+        return saved;
+    }
+
+    /**
+     * Build the exception for a filtered update that matched nothing.
+     * Only runs on the failure path, so the extra lookup does not cost
+     * the common case anything.
+     *
+     * @param productId the product ID
+     * @param message   the message used when the product exists
+     * @return not found if the product is missing, otherwise forbidden
+     */
+    private RuntimeException productNotFoundOrForbidden(
+            final String productId,
+            final String message) {
+        if (productRepository.existsById(productId)) {
+            return new UnauthorizedException(message);
+        }
+        return new ResourceNotFoundException(
+                "Product not found with id: " + productId);
+    }
+
     /**
      * Remove media ID from product's mediaIds array.
      * Called by Media Service when media is deleted.
@@ -228,69 +1123,196 @@ public final class ProductService {
     public void removeMediaFromProduct(
             final String productId,
             final String mediaId) {
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new RuntimeException(
-                        "Product not found"));
-
-        product.getMediaIds().remove(mediaId);
-        productRepository.save(product);
+        UpdateResult result = mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(productId)),
+                new Update()
+                        .pull("mediaIds", mediaId)
+                        .set("updatedAt", ZonedDateTime.now(ZoneOffset.UTC)
+                                .toLocalDateTime()),
+                Product.class);
+        if (result.getMatchedCount() == 0) {
+            throw new RuntimeException("Product not found");
+        }
+        productCache.evict(productId);
+        productEvents.changed(ProductEvents.UPDATED, productId);
     }
 
     /**
      * Clean up all orphaned media IDs from products.
-     * This removes media IDs that no longer exist in the media database.
+     * Products are read in keyset pages with only mediaIds loaded. Each
+     * page's media IDs are checked against Media Service in parallel
+     * batches, and dead references are removed with one $pullAll
+     * update per page.
      *
      * @return cleanup result message
      */
     public String cleanupOrphanedMedia() {
-        List<Product> products = productRepository.findAll();
+        ExecutorService executor =
+                Executors.newFixedThreadPool(CLEANUP_PARALLELISM);
         int totalCleaned = 0;
-
-        for (Product product : products) {
-            List<String> validMediaIds = new ArrayList<>();
-
-            // Check each media ID to see if it still exists
-            for (String mediaId : product.getMediaIds()) {
-                try {
-                    // Try to call media service to check if media exists
-                    String url = mediaServiceUrl + "/images/" + mediaId;
-                    restTemplate.headForHeaders(url);
-                    // If no exception, media exists
-                    validMediaIds.add(mediaId);
-                } catch (org.springframework.web.client.HttpClientErrorException e) {
-                    // Media doesn't exist or forbidden - remove it
-                    if (e.getStatusCode().value() == HTTP_NOT_FOUND
-                            || e.getStatusCode().value() == HTTP_FORBIDDEN) {
-                        System.out.println(
-                                "Removing orphaned/inaccessible media ID: "
-                                        + mediaId + " from product: "
-                                        + product.getId());
-                        totalCleaned++;
-                    } else {
-                        // Other error - keep the media ID
-                        validMediaIds.add(mediaId);
-                    }
-                } catch (Exception e) {
-                    // Unknown error - keep the media ID to be safe
-                    validMediaIds.add(mediaId);
+        try {
+            String afterId = null;
+            List<Product> page;
+            do {
+                Query query = new Query(
+                        Criteria.where("mediaIds.0").exists(true))
+                        .with(Sort.by(Sort.Direction.ASC, "_id"))
+                        .limit(CLEANUP_PAGE_SIZE);
+                if (afterId != null) {
+                    query.addCriteria(Criteria.where("_id").gt(afterId));
                 }
+                query.fields().include("mediaIds");
+                page = mongoTemplate.find(query, Product.class);
+                if (!page.isEmpty()) {
+                    totalCleaned += cleanupPage(page, executor);
+                    afterId = page.get(page.size() - 1).getId();
+                }
+            } while (page.size() == CLEANUP_PAGE_SIZE);
+        } finally {
+            executor.shutdown();
+        }
+
+        return "Cleaned up " + totalCleaned
+                + " orphaned media references from products";
+    }
+
+    /**
+     * Remove dead media references from one page of products.
+     *
+     * @param page     products with id and mediaIds loaded
+     * @param executor pool for the parallel existence checks
+     * @return number of references removed
+     */
+    private int cleanupPage(
+            final List<Product> page,
+            final ExecutorService executor) {
+        List<String> mediaIds = page.stream()
+                .flatMap(p -> p.getMediaIds().stream())
+                .distinct()
+                .collect(Collectors.toList());
+
+        List<CompletableFuture<Set<String>>> checks = new ArrayList<>();
+        for (int i = 0; i < mediaIds.size(); i += CLEANUP_BATCH_SIZE) {
+            List<String> chunk = mediaIds.subList(i,
+                    Math.min(i + CLEANUP_BATCH_SIZE, mediaIds.size()));
+            checks.add(CompletableFuture.supplyAsync(
+                    () -> findExistingMedia(chunk), executor));
+        }
+        Set<String> existing = new HashSet<>();
+        checks.forEach(check -> existing.addAll(check.join()));
+
+        Set<String> missing = new HashSet<>(mediaIds);
+        missing.removeAll(existing);
+        if (missing.isEmpty()) {
+            return 0;
+        }
+
+        List<String> affected = new ArrayList<>();
+        int removed = 0;
+        for (Product product : page) {
+            int count = (int) product.getMediaIds().stream()
+                    .filter(missing::contains).count();
+            if (count > 0) {
+                affected.add(product.getId());
+                removed += count;
+                log.debug("Cleaned product {}: removed {} orphaned media IDs",
+                        product.getId(), count);
             }
+        }
+        mongoTemplate.updateMulti(
+                new Query(Criteria.where("_id").in(affected)),
+                new Update()
+                        .pullAll("mediaIds", missing.toArray())
+                        .set("updatedAt", ZonedDateTime.now(ZoneOffset.UTC)
+                                .toLocalDateTime()),
+                Product.class);
+        productCache.evictAll(affected);
+        productEvents.changed(ProductEvents.UPDATED, affected);
+        return removed;
+    }
 
-            // Update product if any media IDs were removed
-            if (validMediaIds.size() != product.getMediaIds().size()) {
-                int removedCount = product.getMediaIds().size()
-                        - validMediaIds.size();
-                product.setMediaIds(validMediaIds);
-                productRepository.save(product);
-                System.out.println(
-                        "Cleaned product: " + product.getId()
-                                + " - Removed " + removedCount
-                                + " orphaned media IDs");
+    /**
+     * Ask Media Service which of the given media IDs still exist.
+     * On any failure every ID is treated as existing, so nothing is
+     * removed on the strength of a failed call.
+     *
+     * @param mediaIds the media IDs to check
+     * @return the IDs that exist
+     */
+    private Set<String> findExistingMedia(final List<String> mediaIds) {
+        try {
+            String[] existing = restTemplate.postForObject(
+                    mediaServiceUrl + "/images/exists",
+                    mediaIds, String[].class);
+            return existing == null
+                    ? new HashSet<>(mediaIds)
+                    : new HashSet<>(Arrays.asList(existing));
+        } catch (Exception e) {
+            log.warn("Media existence check failed, keeping {} media IDs",
+                    mediaIds.size(), e);
+            return new HashSet<>(mediaIds);
+        }
+    }
+
+    /**
+     * Encode the last row of a page as an opaque, URL-safe cursor:
+     * the product id, followed by the sort field value for non-id sorts.
+     *
+     * @param sortKey the sort order
+     * @param product the last product on the page
+     * @return the cursor
+     */
+    private static String encodeCursor(
+            final SortKey sortKey,
+            final Product product) {
+        ByteBuffer cursor = ByteBuffer.allocate(sortKey.field == null
+                ? OBJECT_ID_LENGTH
+                : OBJECT_ID_LENGTH + Long.BYTES);
+        cursor.put(new ObjectId(product.getId()).toByteArray());
+        if (sortKey.field != null) {
+            cursor.putLong(sortKey.toBits(product));
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(cursor.array());
+    }
+
+    /**
+     * Decode a page cursor and check it belongs to the sort order.
+     *
+     * @param cursor  the cursor
+     * @param sortKey the sort order
+     * @return the cursor bytes
+     */
+    private static ByteBuffer decodeCursor(
+            final String cursor,
+            final SortKey sortKey) {
+        int expected = sortKey.field == null
+                ? OBJECT_ID_LENGTH
+                : OBJECT_ID_LENGTH + Long.BYTES;
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+            if (bytes.length != expected) {
+                throw new IllegalArgumentException();
             }
+            return ByteBuffer.wrap(bytes);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
         }
+    }
 
-        return "Cleaned up " + totalCleaned
-                + " orphaned media references from products";
+    /**
+     * Convert a possibly projected Product to a response holding only
+     * the requested fields.
+     *
+     * @param product  the product entity
+     * @param fieldSet requested fields, or null for all
+     * @return the product response DTO
+     */
+    private ProductResponse toProductResponse(
+            final Product product,
+            final ProductFieldSet fieldSet) {
+        ProductResponse response = toProductResponse(product);
+        return fieldSet == null ? response : fieldSet.trim(response);
     }
 
     /**
@@ -301,7 +1323,10 @@ public final class ProductService {
      */
     private ProductResponse toProductResponse(final Product product) {
         // Convert mediaIds to image URLs using public URL
-        List<String> imageUrls = product.getMediaIds().stream()
+        List<String> mediaIds = product.getMediaIds() != null
+                ? product.getMediaIds()
+                : List.of();
+        List<String> imageUrls = mediaIds.stream()
                 .map(mediaId -> mediaPublicUrl + "/images/" + mediaId)
                 .collect(Collectors.toList());
 
@@ -314,6 +1339,8 @@ public final class ProductService {
                 .sellerId(product.getUserId())
                 .mediaIds(product.getMediaIds())
                 .imageUrls(imageUrls)
+                .imageUrl(imageUrls.isEmpty() ? null : imageUrls.get(0))
+                .viewCount(product.getViewCount())
                 .createdAt(product.getCreatedAt() != null
                         ? product.getCreatedAt()
                                 .atZone(ZoneOffset.UTC).toString()
@@ -325,30 +1352,83 @@ public final class ProductService {
                 .build();
     }
 
+    /**
+     * Delete a product and queue its product.deleted event.
+     * The outbox row is written first so a crash after the delete can
+     * never lose the event; if the delete fails the row is discarded.
+     *
+     * @param product the product to delete
+     */
+    private void deleteWithOutbox(final Product product) {
+        OutboxEvent event = productOutbox.productDeleted(
+                product.getId(), product.getMediaIds());
+        try {
+            productRepository.delete(product);
+        } catch (RuntimeException e) {
+            productOutbox.discard(event);
+            throw e;
+        }
+        productTombstones.record(List.of(product.getId()));
+        productCache.evict(product.getId());
+        productEvents.changed(ProductEvents.DELETED, product.getId());
+    }
+
     /**
      * Delete all products for a user and publish product.deleted events.
+     * Products are read once with only their ids and media ids, and one
+     * batch event is queued per chunk. Each chunk is then removed by
+     * id, so a product created meanwhile is never deleted without its
+     * event.
      *
      * @param userId the user ID
      */
     public void deleteProductsByUserId(final String userId) {
-        List<Product> products = productRepository.findByUserId(userId);
-        for (Product product : products) {
-            List<String> mediaIds = product.getMediaIds();
-            productRepository.delete(product);
-            try {
-                ObjectNode node = objectMapper.createObjectNode();
-                node.put("id", product.getId());
-                ArrayNode arr = node.putArray("mediaIds");
-                if (mediaIds != null) {
-                    for (String m : mediaIds) {
-                        arr.add(m);
-                    }
+        Query query = new Query(Criteria.where("userId").is(userId));
+        query.fields().include("_id").include("mediaIds");
+        query.cursorBatchSize(CASCADE_CHUNK_SIZE);
+
+        List<List<String>> chunks = new ArrayList<>();
+        List<OutboxEvent> events = new ArrayList<>();
+        try (Stream<Product> products =
+                     mongoTemplate.stream(query, Product.class)) {
+            List<String> chunkIds = new ArrayList<>(CASCADE_CHUNK_SIZE);
+            List<String> chunkMedia = new ArrayList<>();
+            Iterator<Product> it = products.iterator();
+            while (it.hasNext()) {
+                Product product = it.next();
+                chunkIds.add(product.getId());
+                if (product.getMediaIds() != null) {
+                    chunkMedia.addAll(product.getMediaIds());
+                }
+                if (chunkIds.size() == CASCADE_CHUNK_SIZE || !it.hasNext()) {
+                    events.add(productOutbox.productsDeleted(
+                            userId, chunkIds, chunkMedia));
+                    chunks.add(chunkIds);
+                    chunkIds = new ArrayList<>(CASCADE_CHUNK_SIZE);
+                    chunkMedia = new ArrayList<>();
                 }
-                kafkaTemplate.send("product.deleted",
-                        objectMapper.writeValueAsString(node));
-            } catch (Exception e) {
-                kafkaTemplate.send("product.deleted", product.getId());
             }
         }
+
+        int deleted = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            List<String> chunkIds = chunks.get(i);
+            try {
+                mongoTemplate.remove(
+                        new Query(Criteria.where("_id").in(chunkIds)),
+                        Product.class);
+            } catch (RuntimeException e) {
+                events.subList(i, events.size())
+                        .forEach(productOutbox::discard);
+                throw e;
+            }
+            productTombstones.record(chunkIds);
+            productCache.evictAll(chunkIds);
+            productEvents.changed(ProductEvents.DELETED, chunkIds);
+            deleted += chunkIds.size();
+        }
+        if (deleted > 0) {
+            log.info("Deleted {} products of user {}", deleted, userId);
+        }
     }
 }
@@ -0,0 +1,517 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.model.Product;
+import ax.gritlab.buy_01.product.model.ProductSimilarity;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Background job precomputing similar products.
+ * Each run builds TF-IDF vectors over name and description, then
+ * recomputes neighbour lists only for products whose updatedAt moved,
+ * plus the products whose lists those changes can affect. Vectors and
+ * neighbour searches are computed in a dedicated fork-join pool;
+ * neighbours are found with sparse dot products over an inverted index,
+ * so only products sharing a term are ever scored.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public final class ProductSimilarityJob {
+
+    /**
+     * Name tokens count this many times as description tokens.
+     */
+    private static final int NAME_WEIGHT = 2;
+
+    /**
+     * Terms in more than this share of products are skipped during
+     * neighbour search; their IDF is too low to matter.
+     */
+    private static final double MAX_TERM_SHARE = 0.5;
+
+    /**
+     * Similarity lists written per bulk operation.
+     */
+    private static final int WRITE_BATCH_SIZE = 1000;
+
+    /**
+     * Mongo template.
+     */
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Neighbours stored per product.
+     */
+    @Value("${products.similar.top-n:20}")
+    private int topN;
+
+    /**
+     * Threads used for vector building and neighbour search.
+     */
+    @Value("${products.similar.parallelism:0}")
+    private int parallelism;
+
+    /**
+     * Interval between full recomputations, which pick up IDF drift.
+     */
+    @Value("${products.similar.full-rebuild-interval:P1D}")
+    private Duration fullRebuildInterval;
+
+    /**
+     * Pool for parallel work.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * Prevents overlapping runs.
+     */
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * Time of the last full recomputation.
+     */
+    private Instant lastFullRebuild = Instant.EPOCH;
+
+    /**
+     * Create the worker pool.
+     */
+    @PostConstruct
+    public void init() {
+        pool = new ForkJoinPool(parallelism > 0
+                ? parallelism
+                : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Stop the worker pool.
+     */
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Bring stored similarity lists up to date.
+     */
+    @Scheduled(initialDelayString = "${products.similar.initial-delay:PT1M}",
+            fixedDelayString = "${products.similar.interval:PT5M}")
+    public void run() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            recompute();
+        } catch (RuntimeException e) {
+            log.error("Similar products job failed", e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * One incremental run.
+     */
+    private void recompute() {
+        long started = System.currentTimeMillis();
+        List<Product> products = loadProducts();
+        Map<String, ProductSimilarity> stored = loadStored();
+        boolean full = stored.isEmpty() || Instant.now()
+                .isAfter(lastFullRebuild.plus(fullRebuildInterval));
+
+        Corpus corpus = pool.submit(() -> new Corpus(products)).join();
+        int n = products.size();
+        Map<String, Integer> index = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            index.put(products.get(i).getId(), i);
+        }
+
+        // Products that changed, are new, or list a deleted product
+        Set<String> deleted = new HashSet<>(stored.keySet());
+        deleted.removeAll(index.keySet());
+        Set<Integer> dirty = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            Product product = products.get(i);
+            ProductSimilarity previous = stored.get(product.getId());
+            if (full || previous == null || !Objects.equals(
+                    previous.getSourceUpdatedAt(), product.getUpdatedAt())) {
+                dirty.add(i);
+            }
+        }
+        Map<String, List<Integer>> listedBy = new HashMap<>();
+        double[] thresholds = new double[n];
+        for (ProductSimilarity previous : stored.values()) {
+            Integer owner = index.get(previous.getId());
+            if (owner == null) {
+                continue;
+            }
+            List<ProductSimilarity.Neighbour> similar = previous.getSimilar();
+            thresholds[owner] = similar.size() < topN
+                    ? 0
+                    : similar.get(similar.size() - 1).getScore();
+            for (ProductSimilarity.Neighbour neighbour : similar) {
+                if (deleted.contains(neighbour.getId())) {
+                    dirty.add(owner);
+                }
+                listedBy.computeIfAbsent(neighbour.getId(),
+                        k -> new ArrayList<>()).add(owner);
+            }
+        }
+
+        // Recompute changed products; note unchanged products whose
+        // list a changed product enters or leaves
+        Set<Integer> affected = ConcurrentHashMap.newKeySet();
+        Map<Integer, List<ProductSimilarity.Neighbour>> results =
+                pool.submit(() -> dirty.parallelStream()
+                        .collect(Collectors.toConcurrentMap(i -> i,
+                                i -> corpus.neighbours(i, topN, products,
+                                        full ? null : thresholds,
+                                        affected))))
+                        .join();
+        if (!full) {
+            for (int i : dirty) {
+                affected.addAll(listedBy.getOrDefault(
+                        products.get(i).getId(), List.of()));
+            }
+            affected.removeAll(dirty);
+            results.putAll(pool.submit(() -> affected.parallelStream()
+                    .collect(Collectors.toConcurrentMap(i -> i,
+                            i -> corpus.neighbours(i, topN, products,
+                                    null, null))))
+                    .join());
+        }
+
+        write(results, products);
+        if (!deleted.isEmpty()) {
+            mongoTemplate.remove(new Query(Criteria.where("_id").in(deleted)),
+                    ProductSimilarity.class);
+        }
+        if (full) {
+            lastFullRebuild = Instant.now();
+        }
+        if (!results.isEmpty() || !deleted.isEmpty()) {
+            log.info("Similar products: recomputed {} of {} ({}), removed {}"
+                            + " in {} ms", results.size(), n,
+                    full ? "full" : "incremental", deleted.size(),
+                    System.currentTimeMillis() - started);
+        }
+    }
+
+    /**
+     * Load every product with only the fields the job needs.
+     *
+     * @return the products
+     */
+    private List<Product> loadProducts() {
+        Query query = new Query();
+        query.fields().include("name").include("description")
+                .include("updatedAt");
+        try (Stream<Product> stream =
+                     mongoTemplate.stream(query, Product.class)) {
+            return stream.toList();
+        }
+    }
+
+    /**
+     * Load every stored similarity list.
+     *
+     * @return similarity lists by product ID
+     */
+    private Map<String, ProductSimilarity> loadStored() {
+        Query query = new Query();
+        query.fields().include("similar").include("sourceUpdatedAt");
+        try (Stream<ProductSimilarity> stream =
+                     mongoTemplate.stream(query, ProductSimilarity.class)) {
+            return stream.collect(Collectors.toMap(
+                    ProductSimilarity::getId, s -> s));
+        }
+    }
+
+    /**
+     * Upsert recomputed lists in unordered bulk writes.
+     *
+     * @param results  neighbour lists by product index
+     * @param products the products
+     */
+    private void write(
+            final Map<Integer, List<ProductSimilarity.Neighbour>> results,
+            final List<Product> products) {
+        LocalDateTime now = ProductOutbox.now();
+        BulkOperations ops = null;
+        int queued = 0;
+        for (Map.Entry<Integer, List<ProductSimilarity.Neighbour>> entry
+                : results.entrySet()) {
+            if (ops == null) {
+                ops = mongoTemplate.bulkOps(
+                        BulkOperations.BulkMode.UNORDERED,
+                        ProductSimilarity.class);
+            }
+            Product product = products.get(entry.getKey());
+            ops.upsert(new Query(Criteria.where("_id").is(product.getId())),
+                    new Update()
+                            .set("similar", entry.getValue())
+                            .set("sourceUpdatedAt", product.getUpdatedAt())
+                            .set("computedAt", now));
+            if (++queued == WRITE_BATCH_SIZE) {
+                ops.execute();
+                ops = null;
+                queued = 0;
+            }
+        }
+        if (ops != null) {
+            ops.execute();
+        }
+    }
+
+    /**
+     * L2-normalised TF-IDF vectors with an inverted index.
+     * Immutable once built, so neighbour searches can run in parallel.
+     */
+    private static final class Corpus {
+
+        /**
+         * Term ids per product, one entry per distinct term.
+         */
+        private final int[][] docTerms;
+
+        /**
+         * Weights matching {@link #docTerms}.
+         */
+        private final float[][] docWeights;
+
+        /**
+         * Product indexes per term.
+         */
+        private final int[][] postingDocs;
+
+        /**
+         * Weights matching {@link #postingDocs}.
+         */
+        private final float[][] postingWeights;
+
+        /**
+         * Longest posting list scanned during neighbour search.
+         */
+        private final int maxPostings;
+
+        /**
+         * Per-thread scratch space for score accumulation.
+         */
+        private final ThreadLocal<Scratch> scratch;
+
+        /**
+         * Build vectors for all products. Tokenization runs in the
+         * calling fork-join pool.
+         *
+         * @param products the products
+         */
+        Corpus(final List<Product> products) {
+            int n = products.size();
+            List<Map<String, Integer>> termFreqs = products.parallelStream()
+                    .map(Corpus::termFrequencies)
+                    .toList();
+
+            Map<String, Integer> termIds = new HashMap<>();
+            List<Integer> docFreqs = new ArrayList<>();
+            for (Map<String, Integer> tf : termFreqs) {
+                for (String term : tf.keySet()) {
+                    Integer id = termIds.putIfAbsent(term, termIds.size());
+                    if (id == null) {
+                        docFreqs.add(1);
+                    } else {
+                        docFreqs.set(id, docFreqs.get(id) + 1);
+                    }
+                }
+            }
+
+            docTerms = new int[n][];
+            docWeights = new float[n][];
+            int[] postingSizes = new int[termIds.size()];
+            for (int d = 0; d < n; d++) {
+                Map<String, Integer> tf = termFreqs.get(d);
+                int[] terms = new int[tf.size()];
+                float[] weights = new float[tf.size()];
+                double norm = 0;
+                int k = 0;
+                for (Map.Entry<String, Integer> e : tf.entrySet()) {
+                    int term = termIds.get(e.getKey());
+                    double idf = Math.log((double) n / docFreqs.get(term));
+                    double w = (1 + Math.log(e.getValue())) * idf;
+                    terms[k] = term;
+                    weights[k] = (float) w;
+                    norm += w * w;
+                    k++;
+                }
+                norm = Math.sqrt(norm);
+                for (int i = 0; i < k; i++) {
+                    weights[i] = norm == 0 ? 0 : (float) (weights[i] / norm);
+                    if (weights[i] > 0) {
+                        postingSizes[terms[i]]++;
+                    }
+                }
+                docTerms[d] = terms;
+                docWeights[d] = weights;
+            }
+
+            postingDocs = new int[postingSizes.length][];
+            postingWeights = new float[postingSizes.length][];
+            for (int t = 0; t < postingSizes.length; t++) {
+                postingDocs[t] = new int[postingSizes[t]];
+                postingWeights[t] = new float[postingSizes[t]];
+            }
+            int[] fill = new int[postingSizes.length];
+            for (int d = 0; d < n; d++) {
+                for (int i = 0; i < docTerms[d].length; i++) {
+                    if (docWeights[d][i] > 0) {
+                        int t = docTerms[d][i];
+                        postingDocs[t][fill[t]] = d;
+                        postingWeights[t][fill[t]] = docWeights[d][i];
+                        fill[t]++;
+                    }
+                }
+            }
+            maxPostings = Math.max(1, (int) (n * MAX_TERM_SHARE));
+            scratch = ThreadLocal.withInitial(() -> new Scratch(n));
+        }
+
+        /**
+         * Find the most similar products to one product.
+         *
+         * @param doc        the product index
+         * @param limit      number of neighbours
+         * @param products   the products, for ids
+         * @param thresholds per product, the lowest score on its stored
+         *                   list; null to skip affected tracking
+         * @param affected   receives products whose stored list this
+         *                   product now qualifies for
+         * @return neighbours, best first
+         */
+        List<ProductSimilarity.Neighbour> neighbours(
+                final int doc,
+                final int limit,
+                final List<Product> products,
+                final double[] thresholds,
+                final Set<Integer> affected) {
+            Scratch s = scratch.get();
+            int touched = 0;
+            for (int i = 0; i < docTerms[doc].length; i++) {
+                int t = docTerms[doc][i];
+                float wq = docWeights[doc][i];
+                if (wq == 0 || postingDocs[t].length > maxPostings) {
+                    continue;
+                }
+                int[] docs = postingDocs[t];
+                float[] weights = postingWeights[t];
+                for (int j = 0; j < docs.length; j++) {
+                    int d = docs[j];
+                    if (s.scores[d] == 0) {
+                        s.touched[touched++] = d;
+                    }
+                    s.scores[d] += wq * weights[j];
+                }
+            }
+
+            PriorityQueue<ProductSimilarity.Neighbour> heap =
+                    new PriorityQueue<>(limit + 1, (a, b) ->
+                            Double.compare(a.getScore(), b.getScore()));
+            for (int i = 0; i < touched; i++) {
+                int d = s.touched[i];
+                double score = s.scores[d];
+                s.scores[d] = 0;
+                if (d == doc) {
+                    continue;
+                }
+                if (thresholds != null && score > thresholds[d]) {
+                    affected.add(d);
+                }
+                if (heap.size() < limit || score > heap.peek().getScore()) {
+                    heap.offer(new ProductSimilarity.Neighbour(
+                            products.get(d).getId(), score));
+                    if (heap.size() > limit) {
+                        heap.poll();
+                    }
+                }
+            }
+            ProductSimilarity.Neighbour[] ranked =
+                    new ProductSimilarity.Neighbour[heap.size()];
+            for (int i = ranked.length - 1; i >= 0; i--) {
+                ranked[i] = heap.poll();
+            }
+            return Arrays.asList(ranked);
+        }
+
+        /**
+         * Count terms of a product, name tokens weighted up.
+         *
+         * @param product the product
+         * @return term frequencies
+         */
+        private static Map<String, Integer> termFrequencies(
+                final Product product) {
+            Map<String, Integer> tf = new HashMap<>();
+            for (String token : ProductSearchIndex.tokenize(
+                    product.getName())) {
+                tf.merge(token, NAME_WEIGHT, Integer::sum);
+            }
+            for (String token : ProductSearchIndex.tokenize(
+                    product.getDescription())) {
+                tf.merge(token, 1, Integer::sum);
+            }
+            return tf;
+        }
+    }
+
+    /**
+     * Reusable accumulation arrays for one worker thread.
+     */
+    private static final class Scratch {
+
+        /**
+         * Partial dot product per product; all zero between searches.
+         */
+        private final double[] scores;
+
+        /**
+         * Products with a non-zero score in the current search.
+         */
+        private final int[] touched;
+
+        /**
+         * Allocate scratch space.
+         *
+         * @param size number of products
+         */
+        Scratch(final int size) {
+            scores = new double[size];
+            touched = new int[size];
+        }
+    }
+}
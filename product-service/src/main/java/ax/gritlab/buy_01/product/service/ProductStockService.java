@@ -0,0 +1,548 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.dto.StockDelta;
+import ax.gritlab.buy_01.product.dto.StockDeltaResponse;
+import ax.gritlab.buy_01.product.dto.StockLine;
+import ax.gritlab.buy_01.product.dto.StockReservationResponse;
+import ax.gritlab.buy_01.product.exception.ConflictException;
+import ax.gritlab.buy_01.product.exception.InsufficientStockException;
+import ax.gritlab.buy_01.product.exception.ResourceNotFoundException;
+import ax.gritlab.buy_01.product.model.Product;
+import ax.gritlab.buy_01.product.model.StockReservation;
+import ax.gritlab.buy_01.product.repository.ProductRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Service for reserving and releasing product stock.
+ * Every line is a single conditional findAndModify, so concurrent
+ * checkouts of the same product are serialised by the database
+ * document lock rather than by application locks, and stock can never
+ * go negative. Inventory deltas are applied in bulk instead, one
+ * unordered write per batch with the same conditions.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public final class ProductStockService {
+
+    /**
+     * Field holding the last delta batches applied to a product.
+     */
+    private static final String STOCK_BATCHES = "stockBatches";
+
+    /**
+     * Delta batches remembered per product; enough for the read-back
+     * to find its own batch under any realistic contention.
+     */
+    private static final int STOCK_BATCHES_KEPT = 16;
+
+    /**
+     * Product repository.
+     */
+    private final ProductRepository productRepository;
+
+    /**
+     * Mongo template for conditional updates.
+     */
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Cache to invalidate for products whose stock changed.
+     */
+    private final ProductCache productCache;
+
+    /**
+     * Live change events for stream subscribers.
+     */
+    private final ProductEvents productEvents;
+
+    /**
+     * Registry for stock metrics.
+     */
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Lines reserved.
+     */
+    private Counter reserved;
+
+    /**
+     * Lines rejected because too little stock was left.
+     */
+    private Counter rejectedInsufficient;
+
+    /**
+     * Lines rejected because the product does not exist.
+     */
+    private Counter rejectedNotFound;
+
+    /**
+     * Lines put back after a later line of the same cart failed.
+     */
+    private Counter compensations;
+
+    /**
+     * Time per conditional update; grows when many requests contend
+     * for the same document.
+     */
+    private Timer reserveTimer;
+
+    /**
+     * Register metrics.
+     */
+    @PostConstruct
+    public void init() {
+        reserved = Counter.builder("product.stock.reservations")
+                .tag("outcome", "reserved").register(meterRegistry);
+        rejectedInsufficient = Counter.builder("product.stock.reservations")
+                .tag("outcome", "insufficient").register(meterRegistry);
+        rejectedNotFound = Counter.builder("product.stock.reservations")
+                .tag("outcome", "not_found").register(meterRegistry);
+        compensations = Counter.builder("product.stock.compensations")
+                .register(meterRegistry);
+        reserveTimer = Timer.builder("product.stock.reserve.latency")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reserve stock for every line, or for none of them.
+     * Totals are checked against the stock read with one query before
+     * anything is written, so an oversized cart fails without touching
+     * the products. Lines are then applied in order; if one fails, the
+     * lines already reserved are released again before the error is
+     * thrown. The reserved units are recorded so that only they can be
+     * released.
+     *
+     * @param lines  the cart lines
+     * @param userId the ID of the user reserving
+     * @return the reservation ID and remaining stock per product
+     */
+    public StockReservationResponse reserve(
+            final List<StockLine> lines,
+            final String userId) {
+        Map<String, Integer> quantities = coalesce(lines);
+        checkAvailable(quantities);
+        List<StockReservationResponse.Line> done =
+                new ArrayList<>(quantities.size());
+
+        for (Map.Entry<String, Integer> line : quantities.entrySet()) {
+            try {
+                done.add(reserveOne(line.getKey(), line.getValue()));
+            } catch (RuntimeException e) {
+                compensate(done);
+                throw e;
+            }
+        }
+
+        StockReservation reservation = StockReservation.builder()
+                .userId(userId)
+                .lines(done.stream()
+                        .map(line -> StockReservation.Line.builder()
+                                .productId(line.getProductId())
+                                .quantity(line.getQuantity())
+                                .build())
+                        .toList())
+                .status(StockReservation.Status.RESERVED)
+                .createdAt(now())
+                .build();
+        try {
+            reservation = mongoTemplate.insert(reservation);
+        } catch (RuntimeException e) {
+            compensate(done);
+            throw e;
+        }
+        return StockReservationResponse.builder()
+                .reservationId(reservation.getId())
+                .lines(done)
+                .build();
+    }
+
+    /**
+     * Give back the stock of a reservation.
+     * The reservation is marked released before any stock is changed,
+     * so each reservation is released at most once. Products deleted
+     * since the reservation are skipped.
+     *
+     * @param reservationId the reservation ID
+     * @param userId        the ID of the user who reserved
+     * @return remaining stock per product
+     */
+    public StockReservationResponse release(
+            final String reservationId,
+            final String userId) {
+        StockReservation reservation = mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(reservationId)
+                        .and("userId").is(userId)
+                        .and("status").is(StockReservation.Status.RESERVED)),
+                new Update()
+                        .set("status", StockReservation.Status.RELEASED)
+                        .set("releasedAt", now()),
+                FindAndModifyOptions.options().returnNew(true),
+                StockReservation.class);
+        if (reservation == null) {
+            StockReservation existing = mongoTemplate.findById(
+                    reservationId, StockReservation.class);
+            if (existing == null || !userId.equals(existing.getUserId())) {
+                throw new ResourceNotFoundException(
+                        "Reservation not found with id: " + reservationId);
+            }
+            throw new ConflictException(
+                    "Reservation already released: " + reservationId);
+        }
+
+        List<StockReservationResponse.Line> done =
+                new ArrayList<>(reservation.getLines().size());
+        for (StockReservation.Line line : reservation.getLines()) {
+            Product product = increment(line.getProductId(),
+                    line.getQuantity());
+            if (product == null) {
+                log.warn("Product {} of reservation {} no longer exists",
+                        line.getProductId(), reservationId);
+                continue;
+            }
+            done.add(line(product, line.getQuantity()));
+        }
+        return StockReservationResponse.builder()
+                .reservationId(reservationId)
+                .lines(done)
+                .build();
+    }
+
+    /**
+     * Apply a batch of stock deltas to the seller's products.
+     * Deltas for the same product are summed first and owners and
+     * stock are read with one query. Every owned product is then changed
+     * by one unordered bulk write whose filters only match while the
+     * stock covers a negative delta, so stock never goes below zero and
+     * a delta is applied whole or not at all. Each update also tags the
+     * product with this batch, and the new levels and tags are read back
+     * with one query, which tells applied lines from ones that lost a
+     * race. The cache and stream subscribers get one message each.
+     *
+     * @param deltas the stock changes
+     * @param userId the seller's user ID
+     * @return per-product results in first-seen order
+     */
+    public StockDeltaResponse applyDeltas(
+            final List<StockDelta> deltas,
+            final String userId) {
+        if (deltas == null || deltas.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "At least one delta is required");
+        }
+        Map<String, Integer> totals = new LinkedHashMap<>();
+        for (StockDelta delta : deltas) {
+            try {
+                totals.merge(delta.getProductId(), delta.getDelta(),
+                        Math::addExact);
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException(
+                        "Delta out of range for product: "
+                                + delta.getProductId());
+            }
+        }
+
+        // Ownership and stock pre-read
+        Query owners = new Query(Criteria.where("_id").in(totals.keySet()));
+        owners.fields().include("userId").include("quantity");
+        Map<String, Product> current = mongoTemplate.find(owners,
+                Product.class).stream()
+                .collect(Collectors.toMap(Product::getId, product -> product));
+
+        Map<String, StockDeltaResponse.Status> statuses = new HashMap<>();
+        List<String> queued = new ArrayList<>();
+        String batch = new ObjectId().toHexString();
+        BulkOperations ops = mongoTemplate.bulkOps(
+                BulkOperations.BulkMode.UNORDERED, Product.class);
+        LocalDateTime now = now();
+        for (Map.Entry<String, Integer> total : totals.entrySet()) {
+            String id = total.getKey();
+            int delta = total.getValue();
+            Product product = current.get(id);
+            if (product == null) {
+                statuses.put(id, StockDeltaResponse.Status.NOT_FOUND);
+            } else if (!userId.equals(product.getUserId())) {
+                statuses.put(id, StockDeltaResponse.Status.FORBIDDEN);
+            } else if (delta < 0 && stock(product) < -delta) {
+                statuses.put(id, StockDeltaResponse.Status.INSUFFICIENT);
+            } else if (delta != 0) {
+                Criteria criteria = Criteria.where("_id").is(id)
+                        .and("userId").is(userId);
+                if (delta < 0) {
+                    criteria = criteria.and("quantity").gte(-delta);
+                }
+                Update update = new Update()
+                        .inc("quantity", delta)
+                        .set("updatedAt", now);
+                update.push(STOCK_BATCHES).slice(-STOCK_BATCHES_KEPT)
+                        .each(batch);
+                ops.updateOne(new Query(criteria), update);
+                queued.add(id);
+            }
+        }
+        if (!queued.isEmpty()) {
+            ops.execute();
+        }
+
+        // Post-read of the new levels and of which updates matched
+        Map<String, Integer> levels = new LinkedHashMap<>();
+        Set<String> changed = new HashSet<>();
+        List<String> owned = totals.keySet().stream()
+                .filter(id -> !statuses.containsKey(id))
+                .toList();
+        if (!owned.isEmpty()) {
+            Query query = new Query(Criteria.where("_id").in(owned));
+            query.fields().include("quantity").include(STOCK_BATCHES);
+            for (Document doc : mongoTemplate.find(query, Document.class,
+                    mongoTemplate.getCollectionName(Product.class))) {
+                String id = doc.get("_id").toString();
+                levels.put(id, doc.getInteger("quantity", 0));
+                List<?> batches = doc.getList(STOCK_BATCHES, Object.class);
+                if (batches != null && batches.contains(batch)) {
+                    changed.add(id);
+                }
+            }
+        }
+
+        List<StockDeltaResponse.Result> results =
+                new ArrayList<>(totals.size());
+        Map<String, Integer> published = new LinkedHashMap<>();
+        int applied = 0;
+        for (Map.Entry<String, Integer> total : totals.entrySet()) {
+            String id = total.getKey();
+            StockDeltaResponse.Result.ResultBuilder result =
+                    StockDeltaResponse.Result.builder()
+                            .productId(id)
+                            .delta(total.getValue());
+            StockDeltaResponse.Status status = statuses.get(id);
+            if (status == null && !levels.containsKey(id)) {
+                // Deleted between the pre-read and the write
+                status = StockDeltaResponse.Status.NOT_FOUND;
+            } else if (status == null && total.getValue() != 0
+                    && !changed.contains(id)) {
+                // Stock taken by a concurrent request
+                status = StockDeltaResponse.Status.INSUFFICIENT;
+            }
+            if (status == null) {
+                applied++;
+                result.status(StockDeltaResponse.Status.APPLIED)
+                        .quantity(levels.get(id));
+                if (changed.contains(id)) {
+                    published.put(id, levels.get(id));
+                }
+            } else {
+                result.status(status);
+            }
+            results.add(result.build());
+        }
+
+        if (!published.isEmpty()) {
+            productCache.evictAll(published.keySet());
+            productEvents.stock(published);
+        }
+        return StockDeltaResponse.builder()
+                .applied(applied)
+                .failed(results.size() - applied)
+                .results(results)
+                .build();
+    }
+
+    /**
+     * Read a product's stock, treating a missing value as none.
+     *
+     * @param product the product
+     * @return the stock
+     */
+    private static int stock(final Product product) {
+        return product.getQuantity() == null ? 0 : product.getQuantity();
+    }
+
+    /**
+     * Reject a cart asking for more than a product has, or for a
+     * product that does not exist, with one read of the current stock.
+     * The conditional updates still guard against stock taken between
+     * this read and the write.
+     *
+     * @param quantities product ID to total quantity
+     */
+    private void checkAvailable(final Map<String, Integer> quantities) {
+        Query query = new Query(Criteria.where("_id").in(quantities.keySet()));
+        query.fields().include("quantity");
+        Map<String, Integer> stock = new HashMap<>();
+        for (Product product : mongoTemplate.find(query, Product.class)) {
+            stock.put(product.getId(), product.getQuantity());
+        }
+        for (Map.Entry<String, Integer> line : quantities.entrySet()) {
+            Integer available = stock.get(line.getKey());
+            if (available == null) {
+                rejectedNotFound.increment();
+                throw new ResourceNotFoundException(
+                        "Product not found with id: " + line.getKey());
+            }
+            if (line.getValue() > available) {
+                rejectedInsufficient.increment();
+                throw new InsufficientStockException(
+                        "Insufficient stock for product: " + line.getKey());
+            }
+        }
+    }
+
+    /**
+     * Reserve stock for a single product with one conditional update.
+     *
+     * @param productId the product ID
+     * @param quantity  the number of units
+     * @return the reserved line
+     */
+    private StockReservationResponse.Line reserveOne(
+            final String productId,
+            final int quantity) {
+        Query query = new Query(Criteria.where("_id").is(productId)
+                .and("quantity").gte(quantity));
+        Update update = new Update()
+                .inc("quantity", -quantity)
+                .set("updatedAt", now());
+
+        Product product = reserveTimer.record(() ->
+                mongoTemplate.findAndModify(query, update,
+                        FindAndModifyOptions.options().returnNew(true),
+                        Product.class));
+
+        if (product == null) {
+            if (!productRepository.existsById(productId)) {
+                rejectedNotFound.increment();
+                throw new ResourceNotFoundException(
+                        "Product not found with id: " + productId);
+            }
+            rejectedInsufficient.increment();
+            throw new InsufficientStockException(
+                    "Insufficient stock for product: " + productId);
+        }
+
+        reserved.increment();
+        productCache.evict(productId);
+        productEvents.stock(productId, product.getQuantity());
+        return line(product, quantity);
+    }
+
+    /**
+     * Release lines that were reserved earlier in a failed cart.
+     *
+     * @param done the lines to put back
+     */
+    private void compensate(final List<StockReservationResponse.Line> done) {
+        for (StockReservationResponse.Line line : done) {
+            try {
+                increment(line.getProductId(), line.getQuantity());
+                compensations.increment();
+            } catch (RuntimeException e) {
+                log.error("Failed to release {} units of product {}",
+                        line.getQuantity(), line.getProductId(), e);
+            }
+        }
+    }
+
+    /**
+     * Add stock back to a product.
+     *
+     * @param productId the product ID
+     * @param quantity  the number of units
+     * @return the updated product, or null if it does not exist
+     */
+    private Product increment(final String productId, final int quantity) {
+        Product product = mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(productId)),
+                new Update()
+                        .inc("quantity", quantity)
+                        .set("updatedAt", now()),
+                FindAndModifyOptions.options().returnNew(true),
+                Product.class);
+        if (product != null) {
+            productCache.evict(productId);
+            productEvents.stock(productId, product.getQuantity());
+        }
+        return product;
+    }
+
+    /**
+     * Merge lines for the same product, keeping first-seen order.
+     *
+     * @param lines the request lines
+     * @return product ID to total quantity
+     */
+    private static Map<String, Integer> coalesce(final List<StockLine> lines) {
+        if (lines == null || lines.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "At least one line is required");
+        }
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (StockLine line : lines) {
+            if (line.getQuantity() == null || line.getQuantity() < 1) {
+                throw new IllegalArgumentException(
+                        "Quantity must be at least 1 for product: "
+                                + line.getProductId());
+            }
+            try {
+                quantities.merge(line.getProductId(), line.getQuantity(),
+                        Math::addExact);
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException(
+                        "Quantity out of range for product: "
+                                + line.getProductId());
+            }
+        }
+        return quantities;
+    }
+
+    /**
+     * Build a response line.
+     *
+     * @param product  the updated product
+     * @param quantity the units moved
+     * @return the line
+     */
+    private static StockReservationResponse.Line line(
+            final Product product,
+            final int quantity) {
+        return StockReservationResponse.Line.builder()
+                .productId(product.getId())
+                .quantity(quantity)
+                .remaining(product.getQuantity())
+                .build();
+    }
+
+    /**
+     * Current UTC time, matching the timestamps written elsewhere.
+     *
+     * @return now
+     */
+    private static LocalDateTime now() {
+        return ZonedDateTime.now(ZoneOffset.UTC).toLocalDateTime();
+    }
+}
@@ -0,0 +1,77 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.config.MongoIndexInitializer;
+import ax.gritlab.buy_01.product.model.ProductTombstone;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Deletion log for the change feed.
+ * Entries expire through a TTL index after the retention period;
+ * clients whose cursor is older than that must resync.
+ */
+@Component
+@RequiredArgsConstructor
+public final class ProductTombstones {
+
+    /**
+     * Mongo template.
+     */
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * How long deletions are remembered.
+     */
+    @Value("${products.changes.retention:P30D}")
+    private Duration retention;
+
+    /**
+     * Create the tombstone indexes.
+     */
+    @PostConstruct
+    public void init() {
+        MongoIndexInitializer.ensureIndexes(mongoTemplate,
+                ProductTombstone.class);
+        mongoTemplate.indexOps(ProductTombstone.class).createIndex(new Index()
+                .on("deletedAt", Sort.Direction.ASC)
+                .expire(retention));
+    }
+
+    /**
+     * Record deleted products.
+     *
+     * @param productIds IDs of the deleted products
+     */
+    public void record(final Collection<String> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = ProductOutbox.now();
+        List<ProductTombstone> tombstones = productIds.stream()
+                .map(id -> ProductTombstone.builder()
+                        .id(id)
+                        .deletedAt(now)
+                        .build())
+                .toList();
+        mongoTemplate.insertAll(tombstones);
+    }
+
+    /**
+     * Oldest deletion time the log is guaranteed to still hold.
+     *
+     * @return the retention horizon
+     */
+    public LocalDateTime horizon() {
+        return ProductOutbox.now().minus(retention);
+    }
+}
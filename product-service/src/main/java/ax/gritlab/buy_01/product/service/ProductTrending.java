@@ -0,0 +1,159 @@
+package ax.gritlab.buy_01.product.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Time-decayed popularity ranking.
+ * Uses forward decay: a view at time t adds {@code 2^((t - L) / h)}
+ * to the product's score, where L is a landmark and h the half-life.
+ * Older scores never need updating, because every score would decay by
+ * the same factor; the landmark only moves to keep weights in range.
+ * Only the view counter's flush thread writes; readers get an
+ * immutable snapshot of the top products.
+ */
+@Component
+public final class ProductTrending {
+
+    /**
+     * Largest number of products kept in the ranking.
+     */
+    static final int MAX_TOP = 100;
+
+    /**
+     * Move the landmark once weights grow past 2 to this power.
+     */
+    private static final double RESCALE_EXPONENT = 64;
+
+    /**
+     * Scores below this many current views are forgotten.
+     */
+    private static final double MIN_SCORE = 0.01;
+
+    /**
+     * Half-life of a view.
+     */
+    private final long halfLifeMillis;
+
+    /**
+     * Decay landmark in epoch milliseconds.
+     */
+    private long landmark = System.currentTimeMillis();
+
+    /**
+     * Forward-decayed score per product, relative to the landmark.
+     */
+    private final Map<String, Double> scores = new HashMap<>();
+
+    /**
+     * Top products, best first.
+     */
+    private volatile List<String> top = List.of();
+
+    /**
+     * Create the ranking.
+     *
+     * @param halfLife how long until a view counts half
+     */
+    public ProductTrending(
+            @Value("${products.trending.half-life:PT1H}")
+            final Duration halfLife) {
+        this.halfLifeMillis = halfLife.toMillis();
+    }
+
+    /**
+     * Add views seen at a given time.
+     *
+     * @param productId the product ID
+     * @param views     number of views
+     * @param now       time of the views in epoch milliseconds
+     */
+    synchronized void add(final String productId, final long views,
+                          final long now) {
+        if (exponent(now) > RESCALE_EXPONENT) {
+            rescale(now);
+        }
+        scores.merge(productId, views * weight(now), Double::sum);
+    }
+
+    /**
+     * Drop faded scores and rebuild the top list with a size-bounded
+     * min-heap.
+     *
+     * @param now current time in epoch milliseconds
+     */
+    synchronized void refresh(final long now) {
+        double floor = MIN_SCORE * weight(now);
+        PriorityQueue<Map.Entry<String, Double>> heap =
+                new PriorityQueue<>(MAX_TOP + 1, Map.Entry.comparingByValue());
+        Iterator<Map.Entry<String, Double>> it = scores.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Double> entry = it.next();
+            if (entry.getValue() < floor) {
+                it.remove();
+                continue;
+            }
+            heap.offer(entry);
+            if (heap.size() > MAX_TOP) {
+                heap.poll();
+            }
+        }
+        List<String> ranked = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            ranked.add(heap.poll().getKey());
+        }
+        Collections.reverse(ranked);
+        top = List.copyOf(ranked);
+    }
+
+    /**
+     * Most popular products right now.
+     *
+     * @param limit maximum number of products
+     * @return product IDs, most popular first
+     */
+    public List<String> top(final int limit) {
+        List<String> snapshot = top;
+        return snapshot.subList(0, Math.min(limit, snapshot.size()));
+    }
+
+    /**
+     * Move the landmark to now, scaling all scores down to match.
+     *
+     * @param now current time in epoch milliseconds
+     */
+    private void rescale(final long now) {
+        double factor = weight(now);
+        scores.replaceAll((id, score) -> score / factor);
+        landmark = now;
+    }
+
+    /**
+     * Weight of a view at a given time.
+     *
+     * @param now time in epoch milliseconds
+     * @return the weight
+     */
+    private double weight(final long now) {
+        return Math.pow(2, exponent(now));
+    }
+
+    /**
+     * Number of half-lives since the landmark.
+     *
+     * @param now time in epoch milliseconds
+     * @return the exponent
+     */
+    private double exponent(final long now) {
+        return (double) (now - landmark) / halfLifeMillis;
+    }
+}
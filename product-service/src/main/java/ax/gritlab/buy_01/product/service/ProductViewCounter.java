@@ -0,0 +1,135 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.model.Product;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts product views in memory and flushes them to Mongo.
+ * Recording a view is a map lookup and a {@link LongAdder} increment:
+ * no lock, and no allocation once the product has a counter. A
+ * scheduled flush writes all deltas with one unordered bulk $inc and
+ * feeds them to the trending ranking.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public final class ProductViewCounter {
+
+    /**
+     * Mongo template for bulk updates.
+     */
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Trending ranking fed by each flush.
+     */
+    private final ProductTrending trending;
+
+    /**
+     * Registry for view metrics.
+     */
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Views not yet flushed, per product. Counters stay in the map
+     * across flushes and are only removed after an idle interval.
+     */
+    private final Map<String, LongAdder> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Views written to Mongo.
+     */
+    private Counter flushed;
+
+    /**
+     * Register metrics and give legacy products a view count, so
+     * popularity sorting can page past them.
+     */
+    @PostConstruct
+    public void init() {
+        flushed = Counter.builder("product.views.flushed")
+                .register(meterRegistry);
+        long migrated = mongoTemplate.updateMulti(
+                new Query(Criteria.where("viewCount").is(null)),
+                new Update().set("viewCount", 0L),
+                Product.class).getModifiedCount();
+        if (migrated > 0) {
+            log.info("Initialized viewCount on {} products", migrated);
+        }
+    }
+
+    /**
+     * Flush what is left on shutdown.
+     */
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Record one view of a product.
+     *
+     * @param productId the product ID
+     */
+    public void record(final String productId) {
+        LongAdder views = pending.get(productId);
+        if (views == null) {
+            views = pending.computeIfAbsent(productId, id -> new LongAdder());
+        }
+        views.increment();
+    }
+
+    /**
+     * Write pending views to Mongo with one bulk $inc.
+     * A counter idle for a whole interval is removed; a view racing
+     * with that removal may be lost, which is fine for popularity.
+     */
+    @Scheduled(fixedDelayString = "${products.views.flush-interval:PT10S}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        BulkOperations ops = mongoTemplate.bulkOps(
+                BulkOperations.BulkMode.UNORDERED, Product.class);
+        long now = System.currentTimeMillis();
+        long total = 0;
+        for (Map.Entry<String, LongAdder> entry : pending.entrySet()) {
+            long delta = entry.getValue().sumThenReset();
+            if (delta == 0) {
+                pending.remove(entry.getKey(), entry.getValue());
+                continue;
+            }
+            ops.updateOne(
+                    new Query(Criteria.where("_id").is(entry.getKey())),
+                    new Update().inc("viewCount", delta));
+            trending.add(entry.getKey(), delta, now);
+            total += delta;
+        }
+        if (total == 0) {
+            return;
+        }
+        try {
+            ops.execute();
+            flushed.increment(total);
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush {} product views", total, e);
+        }
+        trending.refresh(now);
+    }
+}
@@ -0,0 +1,93 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.dto.BulkProductResponse;
+import ax.gritlab.buy_01.product.dto.BulkProductResult;
+import ax.gritlab.buy_01.product.dto.ProductRequest;
+import ax.gritlab.buy_01.product.model.Product;
+import com.mongodb.bulk.BulkWriteResult;
+import jakarta.validation.Validation;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks how bulk upsert results are reported.
+ */
+public class ProductBulkServiceTest {
+
+    private static final String KEPT = new ObjectId().toHexString();
+    private static final String GONE = new ObjectId().toHexString();
+
+    private MongoTemplate mongoTemplate;
+    private BulkOperations ops;
+    private ProductBulkService bulkService;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        ops = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED,
+                Product.class)).thenReturn(ops);
+        bulkService = new ProductBulkService(mongoTemplate,
+                Validation.buildDefaultValidatorFactory().getValidator(),
+                mock(ProductCache.class), mock(ProductEvents.class));
+    }
+
+    private static ProductRequest update(final String id) {
+        return ProductRequest.builder().id(id).name("Chair")
+                .description("Oak").price(10.0).quantity(1).build();
+    }
+
+    private static Product owned(final String id) {
+        return Product.builder().id(id).userId("seller").build();
+    }
+
+    @Test
+    public void updateDeletedBeforeTheWriteIsNotFound() {
+        when(mongoTemplate.find(any(Query.class), eq(Product.class)))
+                // Owners read before the write
+                .thenReturn(List.of(owned(KEPT), owned(GONE)))
+                // Re-read after the write found one match short
+                .thenReturn(List.of(owned(KEPT)));
+        when(ops.execute()).thenReturn(
+                BulkWriteResult.acknowledged(0, 1, 0, 1, List.of(),
+                        List.of()));
+
+        BulkProductResponse response = bulkService.upsertProducts(
+                List.of(update(KEPT), update(GONE)), "seller");
+
+        assertEquals(1, response.getUpdated());
+        assertEquals(1, response.getFailed());
+        assertEquals(BulkProductResult.Status.UPDATED,
+                response.getResults().get(0).getStatus());
+        assertEquals(BulkProductResult.Status.NOT_FOUND,
+                response.getResults().get(1).getStatus());
+    }
+
+    @Test
+    public void fullyMatchedUpdatesSkipTheReRead() {
+        when(mongoTemplate.find(any(Query.class), eq(Product.class)))
+                .thenReturn(List.of(owned(KEPT), owned(GONE)))
+                .thenThrow(new AssertionError("unexpected re-read"));
+        when(ops.execute()).thenReturn(
+                BulkWriteResult.acknowledged(0, 2, 0, 2, List.of(),
+                        List.of()));
+
+        BulkProductResponse response = bulkService.upsertProducts(
+                List.of(update(KEPT), update(GONE)), "seller");
+
+        assertEquals(2, response.getUpdated());
+        assertEquals(0, response.getFailed());
+    }
+}
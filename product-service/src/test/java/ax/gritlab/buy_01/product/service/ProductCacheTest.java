@@ -0,0 +1,117 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.dto.ProductResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Checks that reads racing an invalidation never repopulate the cache.
+ */
+public class ProductCacheTest {
+
+    private KafkaTemplate<String, String> kafkaTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private ProductCache cache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        kafkaTemplate = mock(KafkaTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new ProductCache(kafkaTemplate, meterRegistry);
+        ReflectionTestUtils.setField(cache, "maxSize", 2);
+        cache.init();
+    }
+
+    private static ProductResponse product(final String id) {
+        return ProductResponse.builder().id(id).name("Chair").build();
+    }
+
+    @Test
+    public void putAtTheCurrentGenerationIsCached() {
+        ProductResponse response = product("p1");
+
+        cache.put("p1", response, cache.generation());
+
+        assertSame(response, cache.get("p1"));
+        assertNull(cache.get("p2"));
+        assertEquals(1, meterRegistry.get("product.cache.requests")
+                .tag("result", "hit").counter().count());
+        assertEquals(1, meterRegistry.get("product.cache.requests")
+                .tag("result", "miss").counter().count());
+    }
+
+    @Test
+    public void readThatRacedAnEvictionIsDropped() {
+        long before = cache.generation();
+        // The product changes while the caller is reading the database
+        cache.evict("p1");
+
+        cache.put("p1", product("p1"), before);
+
+        assertNull(cache.get("p1"));
+        verify(kafkaTemplate).send(ProductCache.INVALIDATION_TOPIC,
+                "p1", "p1");
+    }
+
+    @Test
+    public void remoteInvalidationAlsoFencesInFlightReads() {
+        cache.put("p1", product("p1"), cache.generation());
+        long before = cache.generation();
+
+        cache.onInvalidation("p1,p2");
+        cache.put("p2", product("p2"), before);
+
+        assertNull(cache.get("p1"));
+        assertNull(cache.get("p2"));
+        assertEquals(1, meterRegistry.get("product.cache.evictions")
+                .tag("cause", "invalidation").counter().count());
+    }
+
+    @Test
+    public void evictAllBroadcastsOnce() {
+        cache.put("p1", product("p1"), cache.generation());
+        cache.put("p2", product("p2"), cache.generation());
+
+        cache.evictAll(List.of("p1", "p2"));
+        cache.evictAll(List.of());
+
+        assertNull(cache.get("p1"));
+        assertNull(cache.get("p2"));
+        verify(kafkaTemplate).send(ProductCache.INVALIDATION_TOPIC,
+                "p1,p2", "p1,p2");
+        verify(kafkaTemplate, times(1)).send(anyString(), anyString(),
+                anyString());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvictedAtTheBound() {
+        cache.put("p1", product("p1"), cache.generation());
+        cache.put("p2", product("p2"), cache.generation());
+        cache.get("p1");
+
+        cache.put("p3", product("p3"), cache.generation());
+
+        assertNull(cache.get("p2"));
+        assertEquals("p1", cache.get("p1").getId());
+        assertEquals("p3", cache.get("p3").getId());
+        assertEquals(1, meterRegistry.get("product.cache.evictions")
+                .tag("cause", "size").counter().count());
+        verify(kafkaTemplate, never()).send(anyString(), anyString(),
+                anyString());
+    }
+}
@@ -0,0 +1,94 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.dto.ProductResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that each replica applies every product event exactly once,
+ * its own events locally and other replicas' events from the topic.
+ */
+public class ProductEventsTest {
+
+    private KafkaTemplate<String, String> kafkaTemplate;
+    private ProductEventBroadcaster broadcaster;
+    private ProductFacetService facets;
+    private ProductSearchIndex searchIndex;
+    private ProductEvents events;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        kafkaTemplate = mock(KafkaTemplate.class);
+        broadcaster = mock(ProductEventBroadcaster.class);
+        facets = mock(ProductFacetService.class);
+        searchIndex = mock(ProductSearchIndex.class);
+        events = new ProductEvents(kafkaTemplate, new ObjectMapper(),
+                broadcaster, facets, searchIndex);
+    }
+
+    private static ProductResponse product() {
+        return ProductResponse.builder()
+                .id("p1").name("Red chair").description("Oak").build();
+    }
+
+    @Test
+    public void failedSendStillUpdatesTheLocalIndex() {
+        when(kafkaTemplate.send(anyString(), anyString(), anyString()))
+                .thenThrow(new IllegalStateException("broker down"));
+
+        events.changed(ProductEvents.CREATED, product());
+
+        verify(searchIndex).index("p1", "Red chair", "Oak");
+        verify(facets).invalidate();
+    }
+
+    @Test
+    public void ownEventFromTheTopicIsOnlyBroadcast() {
+        events.changed(ProductEvents.DELETED, List.of("p1", "p2"));
+        ArgumentCaptor<String> sent = ArgumentCaptor.forClass(String.class);
+        verify(kafkaTemplate).send(eq(ProductEvents.EVENTS_TOPIC),
+                eq("p1"), sent.capture());
+
+        events.onEvent(sent.getValue());
+
+        verify(searchIndex, times(1)).remove("p1");
+        verify(searchIndex, times(1)).remove("p2");
+        verify(facets, times(1)).invalidate();
+        verify(broadcaster).broadcast(ProductEvents.DELETED, sent.getValue());
+    }
+
+    @Test
+    public void remoteEventIsApplied() {
+        String message = "{\"type\":\"updated\",\"ids\":[\"p1\"],"
+                + "\"origin\":\"another-replica\"}";
+
+        events.onEvent(message);
+
+        verify(searchIndex).refresh(List.of("p1"));
+        verify(facets).invalidate();
+        verify(broadcaster).broadcast(ProductEvents.UPDATED, message);
+    }
+
+    @Test
+    public void stockEventsLeaveFacetsAlone() {
+        events.stock("p1", 3);
+        events.onEvent("{\"type\":\"stock\",\"id\":\"p1\",\"stock\":3,"
+                + "\"origin\":\"another-replica\"}");
+
+        verify(facets, never()).invalidate();
+    }
+}
@@ -0,0 +1,64 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.dto.ProductFacetsResponse;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks how $bucket output is mapped to facet ranges.
+ */
+public class ProductFacetServiceTest {
+
+    private static final double[] BOUNDARIES = {0, 10, 25};
+
+    private static Document bucket(final Object id, final int count) {
+        return new Document("_id", id).append("count", count);
+    }
+
+    @Test
+    public void lastRangeIsClosedByInfinity() {
+        Document stage = ProductFacetService.bucket("price", BOUNDARIES)
+                .toDocument(Aggregation.DEFAULT_CONTEXT)
+                .get("$bucket", Document.class);
+
+        assertEquals(List.of(0.0, 10.0, 25.0, Double.POSITIVE_INFINITY),
+                stage.getList("boundaries", Object.class));
+        assertEquals("other", stage.get("default"));
+    }
+
+    @Test
+    public void bucketsMapToRangesIncludingEmptyOnes() {
+        Document result = new Document("price", List.of(
+                bucket(0, 3), bucket(25.0, 2), bucket("other", 4)));
+
+        List<ProductFacetsResponse.Bucket> buckets =
+                ProductFacetService.buckets(result, "price", BOUNDARIES);
+
+        assertEquals(3, buckets.size());
+        assertEquals(0.0, buckets.get(0).getMin());
+        assertEquals(10.0, buckets.get(0).getMax());
+        assertEquals(3, buckets.get(0).getCount());
+        assertEquals(10.0, buckets.get(1).getMin());
+        assertEquals(0, buckets.get(1).getCount());
+        assertEquals(25.0, buckets.get(2).getMin());
+        assertNull(buckets.get(2).getMax());
+        assertEquals(2, buckets.get(2).getCount());
+    }
+
+    @Test
+    public void valuesOutsideEveryRangeAreReportedApart() {
+        Document result = new Document("price", List.of(
+                bucket(25L, 2), bucket("other", 4)));
+
+        assertEquals(4, ProductFacetService.other(result, "price"));
+        assertEquals(2, ProductFacetService.buckets(result, "price",
+                BOUNDARIES).get(2).getCount());
+        assertEquals(0, ProductFacetService.other(new Document(), "price"));
+    }
+}
@@ -0,0 +1,93 @@
+package ax.gritlab.buy_01.product.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that skipping rows on resume numbers them exactly like reading
+ * them would.
+ */
+public class ProductImportReaderTest {
+
+    private static ProductImportReader reader(
+            final String upload, final ProductImportReader.Format format) {
+        return new ProductImportReader(new StringReader(upload), format,
+                new ObjectMapper());
+    }
+
+    @Test
+    public void csvSkipCountsQuotedAndBlankLinesLikeNext() throws IOException {
+        String upload = "name,price,quantity\n"
+                + "Chair,10,1\n"
+                + "\n"
+                + "\"Sofa\nbed\",20,2\n"
+                + "Lamp,5,3\n";
+        ProductImportReader rows =
+                reader(upload, ProductImportReader.Format.CSV);
+
+        assertEquals(2, rows.skip(2));
+
+        ProductImportReader.Row row = rows.next();
+        assertEquals(3, row.number());
+        assertEquals("Lamp", row.request().getName());
+        assertNull(rows.next());
+    }
+
+    @Test
+    public void ndjsonSkipResumesAtTheNextRow() throws IOException {
+        String upload = "{\"name\":\"Chair\",\"price\":10,\"quantity\":1}\n"
+                + "not json\n"
+                + "\n"
+                + "{\"name\":\"Lamp\",\"price\":5,\"quantity\":3}";
+        ProductImportReader rows =
+                reader(upload, ProductImportReader.Format.NDJSON);
+
+        assertEquals(2, rows.skip(2));
+
+        ProductImportReader.Row row = rows.next();
+        assertEquals(3, row.number());
+        assertEquals("Lamp", row.request().getName());
+    }
+
+    @Test
+    public void overlongRowsAreSkippedAsOneRow() throws IOException {
+        String longName = "x".repeat(ProductImportReader.MAX_RECORD_LENGTH);
+        String upload = "name,price,quantity\n"
+                + "\"" + longName + "\n,still quoted\",1,1\n"
+                + "Lamp,5,3\n";
+
+        ProductImportReader read =
+                reader(upload, ProductImportReader.Format.CSV);
+        assertNotNull(read.next().error());
+        assertEquals("Lamp", read.next().request().getName());
+
+        ProductImportReader skipped =
+                reader(upload, ProductImportReader.Format.CSV);
+        assertEquals(1, skipped.skip(1));
+        assertEquals(2, skipped.next().number());
+    }
+
+    @Test
+    public void skipStopsAtTheEndOfInput() throws IOException {
+        ProductImportReader rows = reader("name,price,quantity\nChair,10,1\n",
+                ProductImportReader.Format.CSV);
+
+        assertEquals(1, rows.skip(5));
+        assertNull(rows.next());
+    }
+
+    @Test
+    public void skipChecksTheCsvHeader() {
+        assertThrows(IllegalArgumentException.class,
+                () -> reader("name,price\nChair,10\n",
+                        ProductImportReader.Format.CSV).skip(1));
+    }
+}
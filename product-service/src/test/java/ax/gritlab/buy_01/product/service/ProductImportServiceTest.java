@@ -0,0 +1,143 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.model.Product;
+import ax.gritlab.buy_01.product.model.ProductImport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.UpdateResult;
+import jakarta.validation.Validation;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that a resumed import skips committed rows and does not count
+ * rows written before the interruption twice.
+ */
+public class ProductImportServiceTest {
+
+    private static final String UPLOAD = "name,price,quantity\n"
+            + "Chair,10,1\n"
+            + "Table,20,2\n"
+            + "Sofa,30,3\n"
+            + "Lamp,5,4\n";
+
+    private MongoTemplate mongoTemplate;
+    private BulkOperations ops;
+    private ProductEvents productEvents;
+    private ProductImportService importService;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        ops = mock(BulkOperations.class);
+        productEvents = mock(ProductEvents.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED,
+                Product.class)).thenReturn(ops);
+        when(mongoTemplate.updateFirst(any(Query.class),
+                any(UpdateDefinition.class), eq(ProductImport.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        importService = new ProductImportService(mongoTemplate,
+                Validation.buildDefaultValidatorFactory().getValidator(),
+                new ObjectMapper(), productEvents);
+        ReflectionTestUtils.setField(importService, "leaseTimeout",
+                Duration.ofMinutes(5));
+    }
+
+    private static ProductImport state(final long rowsCommitted) {
+        return ProductImport.builder().id("imp1").userId("seller")
+                .runId("run").status(ProductImport.Status.RUNNING)
+                .rowsCommitted(rowsCommitted).build();
+    }
+
+    private void claimReturns(final ProductImport state) {
+        when(mongoTemplate.findAndModify(any(Query.class),
+                any(UpdateDefinition.class), any(FindAndModifyOptions.class),
+                eq(ProductImport.class))).thenReturn(state);
+        when(mongoTemplate.findById("imp1", ProductImport.class))
+                .thenReturn(state);
+    }
+
+    private static BulkOperationException duplicateAt(final int index) {
+        BulkWriteError error = new BulkWriteError(11000, "duplicate key",
+                new BsonDocument(), index);
+        return new BulkOperationException("duplicate key",
+                new MongoBulkWriteException(
+                        BulkWriteResult.acknowledged(1, 0, 0, 0, List.of(),
+                                List.of()),
+                        List.of(error), null, new ServerAddress(), Set.of()));
+    }
+
+    @Test
+    public void resumeSkipsCommittedRowsAndKeepsRowNumbers() {
+        claimReturns(state(2));
+
+        importService.importProducts("imp1", "text/csv",
+                new ByteArrayInputStream(
+                        UPLOAD.getBytes(StandardCharsets.UTF_8)), "seller");
+
+        ArgumentCaptor<Product> inserted =
+                ArgumentCaptor.forClass(Product.class);
+        verify(ops, times(2)).insert(inserted.capture());
+        List<Product> products = inserted.getAllValues();
+        assertEquals("Sofa", products.get(0).getName());
+        assertEquals(3L, products.get(0).getImportRow());
+        assertEquals("Lamp", products.get(1).getName());
+        assertEquals(4L, products.get(1).getImportRow());
+        assertEquals("imp1", products.get(1).getImportId());
+    }
+
+    @Test
+    public void rowsWrittenBeforeTheInterruptionAreNotAnnouncedAgain() {
+        claimReturns(state(2));
+        // Sofa was inserted before the upload broke off
+        when(ops.execute()).thenThrow(duplicateAt(0));
+
+        importService.importProducts("imp1", "text/csv",
+                new ByteArrayInputStream(
+                        UPLOAD.getBytes(StandardCharsets.UTF_8)), "seller");
+
+        ArgumentCaptor<Product> inserted =
+                ArgumentCaptor.forClass(Product.class);
+        verify(ops, times(2)).insert(inserted.capture());
+        verify(productEvents).changed(ProductEvents.CREATED,
+                List.of(inserted.getAllValues().get(1).getId()));
+
+        ArgumentCaptor<UpdateDefinition> updates =
+                ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, times(2)).updateFirst(any(Query.class),
+                updates.capture(), eq(ProductImport.class));
+        Document progress = updates.getAllValues().get(0).getUpdateObject();
+        assertEquals(4L, progress.get("$set", Document.class)
+                .get("rowsCommitted"));
+        // Its creation was never counted, so it counts now
+        assertEquals(2, progress.get("$inc", Document.class).get("created"));
+        assertEquals(0, progress.get("$inc", Document.class).get("failed"));
+    }
+}
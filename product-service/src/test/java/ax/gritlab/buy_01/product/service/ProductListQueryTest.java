@@ -0,0 +1,117 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.dto.ProductFilter;
+import ax.gritlab.buy_01.product.dto.ProductPageResponse;
+import ax.gritlab.buy_01.product.model.Product;
+import ax.gritlab.buy_01.product.repository.ProductRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that sorted listing cursors carry the sort value and that the
+ * next page query breaks ties on equal values by id.
+ */
+public class ProductListQueryTest {
+
+    private static final String FIRST = new ObjectId().toHexString();
+    private static final String SECOND = new ObjectId().toHexString();
+    private static final String THIRD = new ObjectId().toHexString();
+    private static final LocalDateTime CREATED =
+            LocalDateTime.of(2024, 5, 1, 12, 30, 15);
+
+    private MongoTemplate mongoTemplate;
+    private ProductService productService;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        productService = new ProductService(mock(ProductRepository.class),
+                mongoTemplate, mock(RestTemplate.class), new ObjectMapper(),
+                mock(ProductSearchIndex.class), mock(ProductCache.class),
+                mock(ProductOutbox.class), mock(ProductTombstones.class),
+                mock(ProductEvents.class), mock(ProductViewCounter.class),
+                mock(ProductTrending.class));
+    }
+
+    private static Product product(final String id, final double price) {
+        return Product.builder().id(id).price(price).createdAt(CREATED)
+                .viewCount(7L).build();
+    }
+
+    private String nextCursor(final ProductFilter filter,
+                              final List<Product> rows, final int limit) {
+        when(mongoTemplate.find(any(Query.class), eq(Product.class)))
+                .thenReturn(rows);
+        ProductPageResponse page = productService.getProducts(filter,
+                null, limit, null);
+        assertEquals(Math.min(limit, rows.size()), page.getItems().size());
+        return page.getNextCursor();
+    }
+
+    @Test
+    public void ascendingCursorBreaksTiesById() {
+        ProductFilter filter = ProductFilter.builder().sort("price").build();
+        String cursor = nextCursor(filter, List.of(product(FIRST, 19.5),
+                product(SECOND, 19.5), product(THIRD, 19.5)), 2);
+
+        Query next = ProductService.listQuery(filter, cursor, 3);
+
+        Document or = new Document("$or", List.of(
+                new Document("price", new Document("$gt", 19.5)),
+                new Document("$and", List.of(
+                        new Document("price", 19.5),
+                        new Document("_id", new Document("$gt", SECOND))))));
+        assertEquals(new Document("$and", List.of(or)),
+                next.getQueryObject());
+        assertEquals(new Document("price", 1).append("_id", 1),
+                next.getSortObject());
+    }
+
+    @Test
+    public void descendingCursorKeepsTheTimestampAndDescends() {
+        ProductFilter filter = ProductFilter.builder()
+                .sort("-createdAt").build();
+        String cursor = nextCursor(filter, List.of(product(FIRST, 1),
+                product(SECOND, 1), product(THIRD, 1)), 2);
+
+        Query next = ProductService.listQuery(filter, cursor, 3);
+
+        Document or = new Document("$or", List.of(
+                new Document("createdAt", new Document("$lt", CREATED)),
+                new Document("$and", List.of(
+                        new Document("createdAt", CREATED),
+                        new Document("_id", new Document("$lt", SECOND))))));
+        assertEquals(new Document("$and", List.of(or)),
+                next.getQueryObject());
+        assertEquals(new Document("createdAt", -1).append("_id", -1),
+                next.getSortObject());
+    }
+
+    @Test
+    public void cursorFromAnotherSortIsRejected() {
+        String idCursor = nextCursor(new ProductFilter(), List.of(
+                product(FIRST, 1), product(SECOND, 2), product(THIRD, 3)), 2);
+        assertNotNull(idCursor);
+
+        ProductFilter byPrice = ProductFilter.builder().sort("price").build();
+        assertThrows(IllegalArgumentException.class,
+                () -> ProductService.listQuery(byPrice, idCursor, 3));
+    }
+}
@@ -0,0 +1,212 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.model.OutboxEvent;
+import ax.gritlab.buy_01.product.model.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks how the relay claims outbox rows and settles each one after
+ * publishing.
+ */
+public class ProductOutboxRelayTest {
+
+    private MongoTemplate mongoTemplate;
+    private KafkaTemplate<String, String> kafkaTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private ProductOutboxRelay relay;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        kafkaTemplate = mock(KafkaTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        when(mongoTemplate.indexOps(OutboxEvent.class))
+                .thenReturn(mock(IndexOperations.class));
+        relay = new ProductOutboxRelay(mongoTemplate, kafkaTemplate,
+                meterRegistry);
+        ReflectionTestUtils.setField(relay, "batchSize", 10);
+        ReflectionTestUtils.setField(relay, "gracePeriod",
+                Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(relay, "retention", Duration.ofDays(7));
+        relay.init();
+    }
+
+    private static OutboxEvent event(final String id, final String product,
+                                     final Duration age) {
+        return OutboxEvent.builder().id(id)
+                .topic(ProductOutbox.PRODUCT_DELETED_TOPIC)
+                .key(product).payload("{\"id\":\"" + product + "\"}")
+                .productIds(List.of(product))
+                .status(OutboxEvent.Status.PENDING)
+                .createdAt(ProductOutbox.now().minus(age))
+                .build();
+    }
+
+    private static OutboxEvent id(final String id) {
+        return OutboxEvent.builder().id(id).build();
+    }
+
+    // Candidate read, read-back of won claims, product existence check
+    private void stubBatch(final List<OutboxEvent> candidates,
+                           final List<OutboxEvent> claimed,
+                           final List<String> existing) {
+        when(mongoTemplate.find(any(Query.class), eq(OutboxEvent.class)))
+                .thenReturn(candidates)
+                .thenReturn(claimed)
+                .thenReturn(List.of());
+        when(mongoTemplate.find(any(Query.class), eq(Product.class)))
+                .thenReturn(existing.stream()
+                        .map(p -> Product.builder().id(p).build())
+                        .toList());
+    }
+
+    // Every updateMulti issued on the outbox, as query and update
+    private List<Document[]> updates() {
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<UpdateDefinition> changes =
+                ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, atLeastOnce()).updateMulti(queries.capture(),
+                changes.capture(), eq(OutboxEvent.class));
+        List<Document[]> calls = new ArrayList<>();
+        for (int i = 0; i < queries.getAllValues().size(); i++) {
+            calls.add(new Document[] {
+                    queries.getAllValues().get(i).getQueryObject(),
+                    changes.getAllValues().get(i).getUpdateObject()});
+        }
+        return calls;
+    }
+
+    private static List<Object> inIds(final Document query) {
+        Document id = query.get("_id", Document.class);
+        return new ArrayList<>((Collection<?>) id.get("$in"));
+    }
+
+    private static Object set(final Document update, final String field) {
+        Document set = update.get("$set", Document.class);
+        return set == null ? null : set.get(field);
+    }
+
+    @Test
+    public void onlyRowsWhoseClaimWasWonArePublished() {
+        stubBatch(List.of(id("e1"), id("e2")),
+                // Another relay claimed e2 between the read and the update
+                List.of(event("e1", "p1", Duration.ZERO)),
+                List.of());
+        when(kafkaTemplate.send(anyString(), anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        relay.relay();
+
+        List<Document[]> calls = updates();
+        Document claimQuery = calls.get(0)[0];
+        Document claimUpdate = calls.get(0)[1];
+        List<?> clauses = claimQuery.getList("$and", Object.class);
+        assertEquals(List.of("e1", "e2"), inIds((Document) clauses.get(0)));
+        Document claimable = (Document) clauses.get(1);
+        assertEquals(OutboxEvent.Status.PENDING, claimable.get("status"));
+        assertTrue(claimable.getList("$or", Document.class).stream()
+                .anyMatch(c -> c.get("leaseUntil") instanceof Document d
+                        && d.containsKey("$lt")),
+                "expired leases must be claimable");
+        assertNotNull(set(claimUpdate, "owner"));
+        assertNotNull(set(claimUpdate, "leaseUntil"));
+
+        verify(kafkaTemplate).send(ProductOutbox.PRODUCT_DELETED_TOPIC,
+                "p1", "{\"id\":\"p1\"}");
+        verify(kafkaTemplate, never()).send(anyString(), eq("p2"),
+                anyString());
+        assertEquals(List.of("e1"), inIds(calls.get(1)[0]));
+        assertEquals(OutboxEvent.Status.SENT, set(calls.get(1)[1], "status"));
+    }
+
+    @Test
+    public void eachRowIsSentDiscardedOrReleased() {
+        OutboxEvent gone = event("sent", "p1", Duration.ZERO);
+        OutboxEvent pending = event("retry", "p2", Duration.ofMinutes(1));
+        OutboxEvent stale = event("stale", "p3", Duration.ofMinutes(10));
+        OutboxEvent broken = event("failed", "p4", Duration.ZERO);
+        stubBatch(List.of(id("sent"), id("retry"), id("stale"),
+                        id("failed")),
+                List.of(gone, pending, stale, broken),
+                List.of("p2", "p3"));
+        when(kafkaTemplate.send(anyString(), eq("p1"), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(kafkaTemplate.send(anyString(), eq("p4"), anyString()))
+                .thenReturn(CompletableFuture.failedFuture(
+                        new IllegalStateException("broker down")));
+
+        relay.relay();
+
+        verify(kafkaTemplate).flush();
+        verify(kafkaTemplate, never()).send(anyString(), eq("p2"),
+                anyString());
+        verify(kafkaTemplate, never()).send(anyString(), eq("p3"),
+                anyString());
+
+        List<Document[]> calls = updates();
+        assertEquals(5, calls.size());
+        // calls.get(0) is the claim
+        assertEquals(List.of("sent"), inIds(calls.get(1)[0]));
+        assertEquals(OutboxEvent.Status.SENT, set(calls.get(1)[1], "status"));
+        assertEquals(List.of("stale"), inIds(calls.get(2)[0]));
+        assertEquals(OutboxEvent.Status.DISCARDED,
+                set(calls.get(2)[1], "status"));
+        assertEquals(List.of("retry"), inIds(calls.get(3)[0]));
+        assertNull(calls.get(3)[1].get("$inc"));
+        assertTrue(calls.get(3)[1].get("$unset", Document.class)
+                .containsKey("leaseUntil"));
+        assertEquals(List.of("failed"), inIds(calls.get(4)[0]));
+        assertEquals(new Document("attempts", 1),
+                calls.get(4)[1].get("$inc"));
+
+        assertEquals(1, counter("sent"));
+        assertEquals(1, counter("discarded"));
+        assertEquals(1, counter("failed"));
+    }
+
+    @Test
+    public void emptyOutboxClaimsNothing() {
+        stubBatch(List.of(), List.of(), List.of());
+
+        relay.relay();
+
+        verify(mongoTemplate, never()).updateMulti(any(Query.class),
+                any(UpdateDefinition.class), eq(OutboxEvent.class));
+        verify(kafkaTemplate, never()).flush();
+    }
+
+    private double counter(final String result) {
+        return meterRegistry.get("product.outbox.events")
+                .tag("result", result).counter().count();
+    }
+}
@@ -0,0 +1,89 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.config.MongoIndexInitializer;
+import ax.gritlab.buy_01.product.dto.ProductFilter;
+import ax.gritlab.buy_01.product.model.Product;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Checks that every listing filter and sort is served by an index.
+ * Runs against a throwaway MongoDB container, so it needs Docker.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+public class ProductQueryPlanTest {
+
+    @Container
+    private static final MongoDBContainer MONGO =
+            new MongoDBContainer("mongo:6.0");
+
+    private static MongoClient client;
+    private static MongoTemplate template;
+
+    @BeforeAll
+    static void setUp() {
+        client = MongoClients.create(MONGO.getConnectionString());
+        template = new MongoTemplate(client, "product_query_plan_test");
+        template.dropCollection(Product.class);
+        MongoIndexInitializer.ensureIndexes(template, Product.class);
+
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            products.add(Product.builder()
+                    .name("Product " + i)
+                    .price((double) (i % 50))
+                    .quantity(i % 3)
+                    .userId("seller-" + (i % 5))
+                    .createdAt(LocalDateTime.now().minusMinutes(i))
+                    .build());
+        }
+        template.insertAll(products);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        template.getDb().drop();
+        client.close();
+    }
+
+    @Test
+    public void listingQueriesNeverScanTheCollection() {
+        List<ProductFilter> filters = new ArrayList<>();
+        for (String sort : new String[] {null, "price", "-price",
+                "createdAt", "-createdAt", "viewCount", "-viewCount"}) {
+            filters.add(ProductFilter.builder().sort(sort).build());
+            filters.add(ProductFilter.builder().sort(sort)
+                    .sellerId("seller-1").build());
+            filters.add(ProductFilter.builder().sort(sort)
+                    .minPrice(10.0).maxPrice(20.0).build());
+            filters.add(ProductFilter.builder().sort(sort)
+                    .sellerId("seller-2").minPrice(5.0).inStock(true).build());
+        }
+
+        for (ProductFilter filter : filters) {
+            Query query = ProductService.listQuery(filter, null, 21);
+            Document plan = template.getCollection("products")
+                    .find(query.getQueryObject())
+                    .sort(query.getSortObject())
+                    .limit(21)
+                    .explain();
+            assertFalse(plan.toJson().contains("COLLSCAN"),
+                    "Collection scan for " + filter + ": " + plan.toJson());
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Checks BM25 ranking, paging and compaction of the search index.
+ */
+public class ProductSearchIndexTest {
+
+    private ProductSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ProductSearchIndex(mock(ProductRepository.class),
+                mock(MongoTemplate.class));
+    }
+
+    private List<String> search(final String query) {
+        return index.search(query, 0, 100).getProductIds();
+    }
+
+    @Test
+    public void tokenizerDropsStopWordsAndShortTokens() {
+        assertEquals(List.of("red", "oak", "chair", "42"),
+                ProductSearchIndex.tokenize("The RED oak-chair, a 42 x"));
+    }
+
+    @Test
+    public void nameMatchesOutrankDescriptionMatches() {
+        index.index("desc", "Table", "Goes well with a chair");
+        index.index("name", "Chair", "Solid wood");
+
+        assertEquals(List.of("name", "desc"), search("chair"));
+    }
+
+    @Test
+    public void shorterDocumentsRankHigherForTheSameFrequency() {
+        index.index("long", "Lamp", "lamp with shade bulb cable switch base");
+        index.index("short", "Lamp", "lamp");
+
+        assertEquals(List.of("short", "long"), search("lamp"));
+    }
+
+    @Test
+    public void rareTermsWeighMoreThanCommonOnes() {
+        for (int i = 0; i < 10; i++) {
+            index.index("common-" + i, "Chair", "plain");
+        }
+        index.index("rare", "Stool", "walnut");
+        index.index("both", "Chair", "plain");
+
+        // One match on a rare term beats one match on a common term
+        List<String> hits = search("chair walnut");
+        assertEquals("rare", hits.get(0));
+        assertEquals(12, index.search("chair walnut", 0, 1).getTotal());
+    }
+
+    @Test
+    public void equalScoresKeepIndexingOrder() {
+        index.index("first", "Desk", null);
+        index.index("second", "Desk", null);
+        index.index("third", "Desk", null);
+
+        assertEquals(List.of("first", "second", "third"), search("desk"));
+    }
+
+    @Test
+    public void pagesSliceTheRanking() {
+        for (int i = 0; i < 5; i++) {
+            index.index("p" + i, "Sofa", "sofa ".repeat(5 - i));
+        }
+
+        ProductSearchIndex.SearchHits page = index.search("sofa", 2, 2);
+        assertEquals(List.of("p2", "p3"), page.getProductIds());
+        assertEquals(5, page.getTotal());
+        assertTrue(index.search("sofa", 10, 2).getProductIds().isEmpty());
+        assertTrue(index.search("sofa", Integer.MAX_VALUE, 100)
+                .getProductIds().isEmpty());
+        assertThrows(IllegalArgumentException.class,
+                () -> index.search("sofa", -1, 2));
+    }
+
+    @Test
+    public void reindexingReplacesTheOldText() {
+        index.index("p1", "Red chair", null);
+        index.index("p1", "Blue table", null);
+
+        assertTrue(search("red").isEmpty());
+        assertEquals(List.of("p1"), search("blue"));
+        assertEquals(1, index.search("blue", 0, 10).getTotal());
+    }
+
+    @Test
+    public void compactionKeepsSurvivorsSearchable() {
+        int docs = 3000;
+        for (int i = 0; i < docs; i++) {
+            index.index("p" + i, "Shelf", "item" + i);
+        }
+        // More tombstones than live documents, and above the threshold
+        List<String> kept = new ArrayList<>();
+        for (int i = 0; i < docs; i++) {
+            if (i % 3 == 0) {
+                kept.add("p" + i);
+            } else {
+                index.remove("p" + i);
+            }
+        }
+
+        assertTrue(docCount() < docs, "index was not compacted");
+        assertEquals(kept.subList(0, 100), search("shelf"));
+        assertEquals(kept.size(), index.search("shelf", 0, 1).getTotal());
+        assertEquals(List.of("p2997"), search("item2997"));
+        assertTrue(search("item2998").isEmpty());
+
+        index.index("p1", "Shelf", "item1");
+        assertEquals(List.of("p1"), search("item1"));
+        assertEquals(kept.size() + 1, index.search("shelf", 0, 1).getTotal());
+    }
+
+    private int docCount() {
+        Object state = ReflectionTestUtils.getField(index, "state");
+        return (Integer) ReflectionTestUtils.getField(state, "docCount");
+    }
+}
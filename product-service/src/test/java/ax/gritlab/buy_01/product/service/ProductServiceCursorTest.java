@@ -0,0 +1,91 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.dto.ProductFilter;
+import ax.gritlab.buy_01.product.dto.ProductPageResponse;
+import ax.gritlab.buy_01.product.model.Product;
+import ax.gritlab.buy_01.product.repository.ProductRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that the id-ordered listing cursor round-trips into the next
+ * page query.
+ */
+public class ProductServiceCursorTest {
+
+    private static final String FIRST = new ObjectId().toHexString();
+    private static final String SECOND = new ObjectId().toHexString();
+    private static final String THIRD = new ObjectId().toHexString();
+
+    private MongoTemplate mongoTemplate;
+    private ProductService productService;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        productService = new ProductService(mock(ProductRepository.class),
+                mongoTemplate, mock(RestTemplate.class), new ObjectMapper(),
+                mock(ProductSearchIndex.class), mock(ProductCache.class),
+                mock(ProductOutbox.class), mock(ProductTombstones.class),
+                mock(ProductEvents.class), mock(ProductViewCounter.class),
+                mock(ProductTrending.class));
+    }
+
+    private static Product product(final String id, final double price) {
+        return Product.builder().id(id).price(price).build();
+    }
+
+    private String nextCursor(final ProductFilter filter,
+                              final List<Product> rows, final int limit) {
+        when(mongoTemplate.find(any(Query.class), eq(Product.class)))
+                .thenReturn(rows);
+        ProductPageResponse page = productService.getProducts(filter,
+                null, limit, null);
+        assertEquals(Math.min(limit, rows.size()), page.getItems().size());
+        return page.getNextCursor();
+    }
+
+    @Test
+    public void lastPageHasNoCursor() {
+        assertNull(nextCursor(new ProductFilter(),
+                List.of(product(FIRST, 1), product(SECOND, 2)), 2));
+    }
+
+    @Test
+    public void idCursorResumesAfterTheLastId() {
+        String cursor = nextCursor(new ProductFilter(), List.of(
+                product(FIRST, 1), product(SECOND, 2), product(THIRD, 3)), 2);
+
+        Document query = ProductService.listQuery(new ProductFilter(),
+                cursor, 3).getQueryObject();
+
+        assertEquals(new Document("$and", List.of(
+                new Document("_id", new Document("$gt", SECOND)))), query);
+    }
+
+    @Test
+    public void malformedCursorIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> ProductService.listQuery(new ProductFilter(),
+                        "not a cursor!", 3));
+        assertThrows(IllegalArgumentException.class,
+                () -> ProductService.listQuery(new ProductFilter(),
+                        "AAAA", 3));
+    }
+}
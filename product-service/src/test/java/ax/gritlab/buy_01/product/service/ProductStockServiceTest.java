@@ -0,0 +1,175 @@
+package ax.gritlab.buy_01.product.service;
+
+import ax.gritlab.buy_01.product.dto.StockDelta;
+import ax.gritlab.buy_01.product.dto.StockDeltaResponse;
+import ax.gritlab.buy_01.product.dto.StockLine;
+import ax.gritlab.buy_01.product.exception.InsufficientStockException;
+import ax.gritlab.buy_01.product.model.Product;
+import ax.gritlab.buy_01.product.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that reservations are validated before any stock is written
+ * and that deltas are applied with one bulk write.
+ */
+public class ProductStockServiceTest {
+
+    private MongoTemplate mongoTemplate;
+    private ProductCache productCache;
+    private ProductEvents productEvents;
+    private ProductStockService stockService;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        productCache = mock(ProductCache.class);
+        productEvents = mock(ProductEvents.class);
+        stockService = new ProductStockService(mock(ProductRepository.class),
+                mongoTemplate, productCache, productEvents,
+                new SimpleMeterRegistry());
+        stockService.init();
+    }
+
+    private static StockLine line(final String productId, final int qty) {
+        return StockLine.builder().productId(productId).quantity(qty).build();
+    }
+
+    @Test
+    public void overflowingTotalIsRejectedBeforeMongo() {
+        List<StockLine> lines = List.of(
+                line("p1", Integer.MAX_VALUE),
+                line("p1", Integer.MAX_VALUE));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> stockService.reserve(lines, "buyer"));
+
+        verifyNoInteractions(mongoTemplate, productCache, productEvents);
+    }
+
+    @Test
+    public void nonPositiveQuantityIsRejectedBeforeMongo() {
+        assertThrows(IllegalArgumentException.class,
+                () -> stockService.reserve(List.of(line("p1", -5)), "buyer"));
+
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    public void totalAboveStockIsRejectedWithoutAnUpdate() {
+        Product product = Product.builder().id("p1").quantity(10).build();
+        when(mongoTemplate.find(any(Query.class), eq(Product.class)))
+                .thenReturn(List.of(product));
+
+        assertThrows(InsufficientStockException.class,
+                () -> stockService.reserve(
+                        List.of(line("p1", 6), line("p1", 6)), "buyer"));
+
+        verify(mongoTemplate, never()).findAndModify(any(Query.class),
+                any(Update.class), any(FindAndModifyOptions.class),
+                eq(Product.class));
+        verifyNoInteractions(productCache, productEvents);
+    }
+
+    @Test
+    public void deltasAreOneBulkWriteAndOneMessageEach() {
+        when(mongoTemplate.find(any(Query.class), eq(Product.class)))
+                .thenReturn(List.of(
+                        Product.builder().id("p1").userId("seller")
+                                .quantity(5).build(),
+                        Product.builder().id("p2").userId("seller")
+                                .quantity(5).build(),
+                        Product.builder().id("p3").userId("seller")
+                                .quantity(1).build(),
+                        Product.builder().id("p4").userId("other")
+                                .quantity(5).build()));
+        BulkOperations ops = mock(BulkOperations.class);
+        List<Update> updates = new ArrayList<>();
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED,
+                Product.class)).thenReturn(ops);
+        when(ops.updateOne(any(Query.class), any(Update.class)))
+                .thenAnswer(invocation -> {
+                    updates.add(invocation.getArgument(1));
+                    return ops;
+                });
+        when(mongoTemplate.getCollectionName(Product.class))
+                .thenReturn("products");
+        when(mongoTemplate.find(any(Query.class), eq(Document.class),
+                anyString())).thenAnswer(invocation -> {
+                    Matcher batch = Pattern.compile("[0-9a-f]{24}")
+                            .matcher(updates.get(0).toString());
+                    batch.find();
+                    return List.of(
+                            new Document("_id", "p1").append("quantity", 8)
+                                    .append("stockBatches",
+                                            List.of(batch.group())),
+                            // Lost a race after the pre-read
+                            new Document("_id", "p2").append("quantity", 0)
+                                    .append("stockBatches", List.of()));
+                });
+
+        StockDeltaResponse response = stockService.applyDeltas(List.of(
+                delta("p1", 1), delta("p2", -4), delta("p1", 2),
+                delta("p3", -2), delta("p4", 1), delta("p5", 1)),
+                "seller");
+
+        verify(ops, times(2)).updateOne(any(Query.class), any(Update.class));
+        verify(ops, times(1)).execute();
+        verify(mongoTemplate, never()).findAndModify(any(Query.class),
+                any(Update.class), any(FindAndModifyOptions.class),
+                eq(Product.class));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<String>> evicted =
+                ArgumentCaptor.forClass(Collection.class);
+        verify(productCache).evictAll(evicted.capture());
+        assertEquals(List.of("p1"), List.copyOf(evicted.getValue()));
+        verify(productEvents).stock(Map.of("p1", 8));
+
+        assertEquals(1, response.getApplied());
+        assertEquals(4, response.getFailed());
+        List<StockDeltaResponse.Result> results = response.getResults();
+        assertEquals(StockDeltaResponse.Status.APPLIED,
+                results.get(0).getStatus());
+        assertEquals(3, results.get(0).getDelta());
+        assertEquals(8, results.get(0).getQuantity());
+        assertEquals(StockDeltaResponse.Status.INSUFFICIENT,
+                results.get(1).getStatus());
+        assertEquals(StockDeltaResponse.Status.INSUFFICIENT,
+                results.get(2).getStatus());
+        assertEquals(StockDeltaResponse.Status.FORBIDDEN,
+                results.get(3).getStatus());
+        assertEquals(StockDeltaResponse.Status.NOT_FOUND,
+                results.get(4).getStatus());
+    }
+
+    private static StockDelta delta(final String productId, final int d) {
+        return StockDelta.builder().productId(productId).delta(d).build();
+    }
+}